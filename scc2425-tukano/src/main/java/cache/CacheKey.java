@@ -0,0 +1,206 @@
+package cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.params.SetParams;
+import utils.JSON;
+import utils.Metrics;
+import utils.Metrics.Timer;
+
+/**
+ * The kinds of keys cached in Redis: their prefix, how long they live and how large
+ * their values may be. Every cached key is written through its kind, so that nothing
+ * cached lives forever and memory use stays bounded.
+ *
+ * TTLs are jittered by CACHE_TTL_JITTER (a fraction, up or down), so that keys cached
+ * at the same time, eg, after a restart, do not all expire at the same time.
+ * Values larger than their kind's maximum are not cached at all.
+ *
+ * Keys that are state rather than cache (the likes_dirty set and flags, celebrities, blob
+ * reference counts, locks...) are not kinds, and have no TTL; thus, with a volatile-*
+ * maxmemory-policy, Redis only ever evicts cache keys.
+ *
+ * The defaults can be overridden with CACHE_TTL_<KIND>_MS and CACHE_MAX_BYTES_<KIND>.
+ */
+public enum CacheKey {
+	USER("user:", minutes(10), 4 * 1024),
+	SHORT("short:", minutes(10), 4 * 1024),
+	USER_SHORTS("user_shorts:", minutes(5), 256 * 1024),
+	FOLLOWERS("followers:", minutes(5), 256 * 1024),
+	LIKES("likes:", minutes(5), 256 * 1024),
+	LIKES_COUNT("likes_count:", minutes(24 * 60), 64),
+	TIMELINE("timeline:", minutes(24 * 60), Long.MAX_VALUE),
+	POSTS("posts:", minutes(24 * 60), Long.MAX_VALUE),
+	FOLLOWEES("followees:", minutes(60), Long.MAX_VALUE),
+	BLOB_DIGEST("blob_digest:", minutes(24 * 60), 1024),
+	OTHER("", minutes(10), 64 * 1024);
+
+	static final double JITTER = Double.parseDouble(System.getProperty("CACHE_TTL_JITTER", "0.1"));
+
+	private static final Timer GET = Metrics.BACKEND.labels("redis", "cache_get");
+	private static final Timer SET = Metrics.BACKEND.labels("redis", "cache_set");
+
+	// Longest prefixes first, so that the most specific kind is found
+	private static final List<CacheKey> BY_PREFIX = Arrays.stream(values())
+			.sorted((a, b) -> b.prefix.length() - a.prefix.length())
+			.toList();
+
+	/**
+	 * The number of lookups, writes... of the keys of a kind.
+	 */
+	public record Stats(String kind, String prefix, long ttl, long maxBytes, long hits, long misses, long writes, long oversized,
+			long evictions, long invalidations) {
+	}
+
+	private final String prefix;
+	private final long ttl;
+	private final long maxBytes;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder writes = new LongAdder();
+	private final LongAdder oversized = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	CacheKey(String prefix, long ttl, long maxBytes) {
+		this.prefix = prefix;
+		this.ttl = Long.parseLong(System.getProperty("CACHE_TTL_" + name() + "_MS", Long.toString(ttl)));
+		this.maxBytes = Long.parseLong(System.getProperty("CACHE_MAX_BYTES_" + name(), Long.toString(maxBytes)));
+	}
+
+	/**
+	 * The kind of the given key; OTHER if it has no registered prefix.
+	 */
+	public static CacheKey of(String key) {
+		for (var kind : BY_PREFIX)
+			if (key.startsWith(kind.prefix))
+				return kind;
+		return OTHER;
+	}
+
+	/**
+	 * The stats of every kind of key.
+	 */
+	public static List<Stats> allStats() {
+		return Arrays.stream(values()).map(CacheKey::stats).toList();
+	}
+
+	/**
+	 * The key of the given id.
+	 */
+	public String key(String id) {
+		return prefix + id;
+	}
+
+	public String prefix() {
+		return prefix;
+	}
+
+	/**
+	 * The TTL for a key being written now, in ms, jittered.
+	 */
+	public long ttl() {
+		var jitter = JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+		return Math.max(1, Math.round(ttl * (1 + jitter)));
+	}
+
+	/**
+	 * The TTL of the kind, in ms, without jitter.
+	 */
+	public long baseTtl() {
+		return ttl;
+	}
+
+	public long maxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Serializes the value, or returns null if it is too large to be cached.
+	 */
+	public byte[] encode(Object value) {
+		var bytes = JSON.encodeBytes(value);
+		if (bytes.length > maxBytes) {
+			oversized.increment();
+			return null;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Reads the value of the given id, directly from Redis.
+	 */
+	public <T> T get(Jedis jedis, String id, TypeReference<T> type) {
+		var bytes = GET.time(() -> jedis.get(key(id).getBytes(StandardCharsets.UTF_8)));
+		if (bytes == null) {
+			miss();
+			return null;
+		}
+		hit();
+		return JSON.decode(bytes, type);
+	}
+
+	/**
+	 * Writes the value of the given id, directly into Redis, unless it is too large.
+	 */
+	public void set(Jedis jedis, String id, Object value) {
+		var bytes = encode(value);
+		if (bytes != null) {
+			SET.time(() -> jedis.set(key(id).getBytes(StandardCharsets.UTF_8), bytes, params()));
+			written();
+		}
+	}
+
+	/**
+	 * The parameters to SET a key of this kind with, ie, its TTL.
+	 */
+	public SetParams params() {
+		return SetParams.setParams().px(ttl());
+	}
+
+	public Stats stats() {
+		return new Stats(name(), prefix, ttl, maxBytes, hits.sum(), misses.sum(), writes.sum(), oversized.sum(), evictions.sum(),
+				invalidations.sum());
+	}
+
+	/**
+	 * Counts a lookup of a key of this kind that found it cached.
+	 */
+	public void hit() {
+		hits.increment();
+	}
+
+	/**
+	 * Counts a lookup of a key of this kind that did not find it cached.
+	 */
+	public void miss() {
+		misses.increment();
+	}
+
+	/**
+	 * Counts a write of a key of this kind.
+	 */
+	public void written() {
+		writes.increment();
+	}
+
+	void evicted() {
+		evictions.increment();
+	}
+
+	void invalidated() {
+		invalidations.increment();
+	}
+
+	private static long minutes(long minutes) {
+		return minutes * 60_000;
+	}
+}
@@ -0,0 +1,596 @@
+package cache;
+
+import static tukano.api.Result.ok;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.params.SetParams;
+import tukano.api.Result;
+import tukano.api.Result.ErrorCode;
+import utils.JSON;
+import utils.Metrics;
+import utils.Metrics.Timer;
+
+/**
+ * Two-tier cache: a bounded, in-process map (L1) in front of Redis (L2).
+ *
+ * L1 entries are evicted by size (least recently used first) and by age. Replicas
+ * keep their L1 coherent by publishing the keys they invalidate on a Redis channel;
+ * every replica, including the publisher, drops those keys from its L1.
+ *
+ * Values kept in L1 are shared between callers and must not be modified.
+ *
+ * Values read through getOrLoad are protected against stampedes when they expire or are
+ * invalidated: they are kept in Redis for CACHE_STALE_MS past their TTL, during which they
+ * are still served while being reloaded in the background (stale-while-revalidate); a
+ * little before they expire, they may be reloaded early, with a probability that grows
+ * as expiry nears and with the time loads take (probabilistic early refresh); and loads
+ * of missing values are coalesced, within and across replicas, by a SingleFlight. Loads
+ * through getOrLoadAsync, which do not block, are only coalesced within the replica.
+ *
+ * How long values live in Redis, and how large they may be, is set by the CacheKey of
+ * their key, which also counts the hits, misses... of each kind of key.
+ */
+public class NearCache {
+	private static Logger Log = Logger.getLogger(NearCache.class.getName());
+
+	static final String CHANNEL = "invalidations";
+
+	static final int MAX_ENTRIES = Integer.parseInt(System.getProperty("NEAR_CACHE_MAX_ENTRIES", "10000"));
+	static final long TTL = Long.parseLong(System.getProperty("NEAR_CACHE_TTL_MS", "5000"));
+	static final long RESUBSCRIBE_DELAY = 1000;
+	static final int STAMPS = 4096;
+
+	static final long STALE = Long.parseLong(System.getProperty("CACHE_STALE_MS", "30000"));
+	static final double BETA = Double.parseDouble(System.getProperty("CACHE_EARLY_REFRESH_BETA", "1.0"));
+	static final int REFRESHERS = Integer.parseInt(System.getProperty("CACHE_REFRESHERS", "4"));
+	static final int LOOKUPS = Integer.parseInt(System.getProperty("CACHE_ASYNC_LOOKUPS", "16"));
+
+	private static final Timer GET = Metrics.BACKEND.labels("redis", "cache_get");
+	private static final Timer SET = Metrics.BACKEND.labels("redis", "cache_set");
+	private static final Timer INVALIDATE = Metrics.BACKEND.labels("redis", "cache_invalidate");
+
+	private record Entry(Object value, long expires) {
+	}
+
+	private static NearCache instance;
+
+	synchronized public static NearCache getInstance() {
+		if (instance == null)
+			instance = new NearCache();
+		return instance;
+	}
+
+	private final Map<String, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			var full = size() > MAX_ENTRIES;
+			if (full) {
+				evictions.increment();
+				CacheKey.of(eldest.getKey()).evicted();
+			}
+			return full;
+		}
+	};
+
+	// Bumped on every invalidation. The generation of the last invalidation of a key is
+	// kept in its stamp (keys share stamps by hash), so that a value read from Redis
+	// concurrently with an invalidation of that key is not kept in L1; other keys are unaffected
+	private final AtomicLong generation = new AtomicLong();
+	private final long[] stamps = new long[STAMPS];
+	private long cleared;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder redisHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	private final LongAdder staleHits = new LongAdder();
+	private final LongAdder refreshes = new LongAdder();
+
+	private final SingleFlight flights = new SingleFlight();
+	private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+	// Average time loads take, in ms, per key prefix
+	private final Map<String, Double> loadTimes = new ConcurrentHashMap<>();
+	private final ExecutorService refresher = Executors.newFixedThreadPool(REFRESHERS, daemon("near-cache-refresh"));
+	private final ExecutorService lookups = Executors.newFixedThreadPool(LOOKUPS, daemon("near-cache-lookup"));
+	private final Map<String, CompletableFuture<?>> loading = new ConcurrentHashMap<>();
+
+	private NearCache() {
+		var subscriber = new Thread(this::subscribe, "near-cache-invalidations");
+		subscriber.setDaemon(true);
+		subscriber.start();
+	}
+
+	/**
+	 * Returns the value of the given key, from L1 or else from Redis, or null if it is not cached.
+	 */
+	public <T> T get(String key, Class<T> type) {
+		var value = peek(key, type);
+		if (value == null)
+			miss(key);
+		return value;
+	}
+
+	/**
+	 * Returns the value of the given key, from L1 or else from Redis, loading (and caching)
+	 * it with the loader if it is not cached. Values that are stale, or about to expire, are
+	 * returned and reloaded in the background.
+	 */
+	public <T> Result<T> getOrLoad(String key, Class<T> type, Supplier<Result<T>> loader) {
+		var local = getLocal(key, type);
+		if (local != null)
+			return ok(local);
+
+		var cached = lookup(key, type, loader);
+		if (cached != null)
+			return ok(cached);
+
+		miss(key);
+		return flights.runLocked(key, () -> {
+			var value = peek(key, type);
+			return value == null ? null : ok(value);
+		}, () -> load(key, loader));
+	}
+
+	/**
+	 * As getOrLoad, with a loader that does not block, without blocking the caller unless the
+	 * value is in L1. Redis is read on a bounded pool of LOOKUPS threads.
+	 */
+	public <T> CompletableFuture<Result<T>> getOrLoadAsync(String key, Class<T> type, Supplier<CompletableFuture<Result<T>>> loader) {
+		var local = getLocal(key, type);
+		if (local != null)
+			return CompletableFuture.completedFuture(ok(local));
+
+		Supplier<Result<T>> reloader = () -> loader.get().join();
+		return CompletableFuture.supplyAsync(() -> lookup(key, type, reloader), lookups).thenCompose(cached -> {
+			if (cached != null)
+				return CompletableFuture.completedFuture(ok(cached));
+
+			miss(key);
+			return loadAsync(key, loader);
+		});
+	}
+
+	/**
+	 * Returns the values of the given keys, in the same order, with null for those not cached.
+	 * Keys missing from L1 are read from Redis in a single round-trip.
+	 */
+	public <T> List<T> getAll(List<String> keys, Class<T> type) {
+		var values = new ArrayList<T>(keys.size());
+		var missing = new ArrayList<Integer>();
+
+		var now = System.currentTimeMillis();
+		synchronized (entries) {
+			for (var key : keys) {
+				var e = entries.get(key);
+				if (e != null && e.expires() > now && type.isInstance(e.value())) {
+					hit(key);
+					values.add(type.cast(e.value()));
+				} else {
+					missing.add(values.size());
+					values.add(null);
+				}
+			}
+		}
+		if (missing.isEmpty())
+			return values;
+
+		var gen = generation.get();
+		var found = RedisBatch.get(missing.stream().map(keys::get).toList());
+		for (int i = 0; i < found.size(); i++) {
+			var index = missing.get(i);
+			if (found.get(i) == null) {
+				miss(keys.get(index));
+				continue;
+			}
+			redisHit(keys.get(index));
+			var value = JSON.decode(found.get(i), type);
+			if (value != null) {
+				values.set(index, value);
+				putLocal(keys.get(index), value, gen);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Caches the values in Redis, in a single round-trip, and in L1.
+	 * Values too large for their kind of key are not cached.
+	 */
+	public void putAll(Map<String, ?> values) {
+		var gen = generation.get();
+		var encoded = new HashMap<String, byte[]>();
+		values.forEach((key, value) -> {
+			var bytes = CacheKey.of(key).encode(value);
+			if (bytes != null)
+				encoded.put(key, bytes);
+		});
+		RedisBatch.set(encoded);
+		encoded.keySet().forEach(key -> putLocal(key, values.get(key), gen));
+	}
+
+	/**
+	 * Caches the value in Redis and in L1, unless it is too large for its kind of key.
+	 */
+	public void put(String key, Object value) {
+		var gen = generation.get();
+		var kind = CacheKey.of(key);
+		var bytes = kind.encode(value);
+		if (bytes == null)
+			return;
+
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			SET.time(() -> jedis.set(key.getBytes(StandardCharsets.UTF_8), bytes, kind.params()));
+		}
+		kind.written();
+		putLocal(key, value, gen);
+	}
+
+	/**
+	 * Replaces the value in Redis and in L1, dropping the previous one from the L1 of every
+	 * other replica. Values too large for their kind of key are invalidated instead.
+	 */
+	public void replace(String key, Object value) {
+		var kind = CacheKey.of(key);
+		var bytes = kind.encode(value);
+		if (bytes == null) {
+			invalidate(key);
+			return;
+		}
+
+		evict(key);
+		var gen = generation.get();
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var pipeline = jedis.pipelined();
+			pipeline.set(key.getBytes(StandardCharsets.UTF_8), bytes, kind.params());
+			pipeline.publish(CHANNEL, key);
+			SET.time(pipeline::sync);
+		}
+		kind.written();
+		putLocal(key, value, gen);
+	}
+
+	/**
+	 * Removes the keys from Redis and from the L1 of every replica.
+	 */
+	public void invalidate(String... keys) {
+		if (keys.length == 0)
+			return;
+
+		evict(keys);
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var pipeline = jedis.pipelined();
+			RedisBatch.unlink(pipeline, Arrays.asList(keys));
+			for (var key : keys)
+				pipeline.publish(CHANNEL, key);
+			INVALIDATE.time(pipeline::sync);
+		}
+	}
+
+	public long hits() {
+		return hits.sum();
+	}
+
+	public long redisHits() {
+		return redisHits.sum();
+	}
+
+	public long misses() {
+		return misses.sum();
+	}
+
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	public long invalidations() {
+		return invalidations.sum();
+	}
+
+	public long staleHits() {
+		return staleHits.sum();
+	}
+
+	public long refreshes() {
+		return refreshes.sum();
+	}
+
+	public SingleFlight flights() {
+		return flights;
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("NearCache[size=%d, hits=%d, redisHits=%d, misses=%d, evictions=%d, invalidations=%d, staleHits=%d, refreshes=%d, loads=%d, coalesced=%d]",
+				size(), hits(), redisHits(), misses(), evictions(), invalidations(), staleHits(), refreshes(), flights.loads(), flights.coalesced());
+	}
+
+	private <T> T getLocal(String key, Class<T> type) {
+		var now = System.currentTimeMillis();
+		synchronized (entries) {
+			var e = entries.get(key);
+			if (e != null && e.expires() > now && type.isInstance(e.value())) {
+				hit(key);
+				return type.cast(e.value());
+			}
+		}
+		return null;
+	}
+
+	private void hit(String key) {
+		hits.increment();
+		CacheKey.of(key).hit();
+	}
+
+	private void redisHit(String key) {
+		redisHits.increment();
+		CacheKey.of(key).hit();
+	}
+
+	private void miss(String key) {
+		misses.increment();
+		CacheKey.of(key).miss();
+	}
+
+	/*
+	 * As get, but a value that is not cached is not counted as a miss; for polling.
+	 */
+	private <T> T peek(String key, Class<T> type) {
+		var local = getLocal(key, type);
+		if (local != null)
+			return local;
+
+		var gen = generation.get();
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var json = GET.time(() -> jedis.get(key.getBytes(StandardCharsets.UTF_8)));
+			if (json == null)
+				return null;
+
+			redisHit(key);
+			var value = JSON.decode(json, type);
+			if (value != null)
+				putLocal(key, value, gen);
+			return value;
+		}
+	}
+
+	/*
+	 * The value of the key in Redis, also kept in L1, or null if it is not there. Values that
+	 * are stale, or about to expire, are reloaded in the background.
+	 */
+	private <T> T lookup(String key, Class<T> type, Supplier<Result<T>> loader) {
+		var gen = generation.get();
+		byte[] json;
+		long ttl;
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var bytes = key.getBytes(StandardCharsets.UTF_8);
+			var pipeline = jedis.pipelined();
+			var value = pipeline.get(bytes);
+			var pttl = pipeline.pttl(bytes);
+			GET.time(pipeline::sync);
+			json = value.get();
+			ttl = pttl.get();
+		}
+		if (json == null)
+			return null;
+
+		redisHit(key);
+		var value = JSON.decode(json, type);
+		if (value != null) {
+			if (mustRefresh(key, ttl))
+				refresh(key, loader);
+			putLocal(key, value, gen);
+		}
+		return value;
+	}
+
+	/*
+	 * Loads the value, caching it in Redis for the TTL of its kind, plus STALE, and in L1.
+	 */
+	private <T> Result<T> load(String key, Supplier<Result<T>> loader) {
+		var gen = generation.get();
+		var start = System.nanoTime();
+		return loaded(key, loader.get(), gen, start);
+	}
+
+	/*
+	 * As load, without blocking; concurrent loads of the same key share the first one.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<Result<T>> loadAsync(String key, Supplier<CompletableFuture<Result<T>>> loader) {
+		var mine = new CompletableFuture<Result<T>>();
+		var inflight = (CompletableFuture<Result<T>>) loading.putIfAbsent(key, mine);
+		if (inflight != null)
+			return inflight;
+
+		var gen = generation.get();
+		var start = System.nanoTime();
+		try {
+			loader.get().whenComplete((res, x) -> {
+				loading.remove(key, mine);
+				if (x != null)
+					mine.completeExceptionally(x);
+				else
+					try {
+						mine.complete(loaded(key, res, gen, start));
+					} catch (RuntimeException e) {
+						Log.warning(() -> String.format("load : %s, %s\n", key, e.getMessage()));
+						mine.complete(res);
+					}
+			});
+		} catch (RuntimeException x) {
+			loading.remove(key, mine);
+			mine.completeExceptionally(x);
+		}
+		return mine;
+	}
+
+	/*
+	 * Caches a loaded value, started at the given generation and time.
+	 */
+	private <T> Result<T> loaded(String key, Result<T> res, long gen, long start) {
+		var elapsed = (System.nanoTime() - start) / 1_000_000.0;
+		loadTimes.merge(prefixOf(key), elapsed, (avg, t) -> 0.8 * avg + 0.2 * t);
+
+		var kind = CacheKey.of(key);
+		var bytes = res.isOK() ? kind.encode(res.value()) : null;
+		if (bytes != null) {
+			try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+				SET.time(() -> jedis.set(key.getBytes(StandardCharsets.UTF_8), bytes, SetParams.setParams().px(kind.ttl() + STALE)));
+			}
+			kind.written();
+			putLocal(key, res.value(), gen);
+		}
+		return res;
+	}
+
+	/*
+	 * Whether a value, with the given time left in Redis, is to be reloaded: if stale or, with
+	 * probability increasing as expiry nears, if about to expire (XFetch, Vattani et al.).
+	 * Values without expiry are never reloaded.
+	 */
+	private boolean mustRefresh(String key, long ttl) {
+		if (ttl == -1)
+			return false;
+
+		var fresh = ttl - STALE;
+		if (fresh <= 0) {
+			staleHits.increment();
+			return true;
+		}
+		var delta = loadTimes.getOrDefault(prefixOf(key), 0.0);
+		return delta * BETA * -Math.log(ThreadLocalRandom.current().nextDouble()) >= fresh;
+	}
+
+	/*
+	 * Reloads the value in the background, unless it is already being reloaded, here or elsewhere.
+	 */
+	private <T> void refresh(String key, Supplier<Result<T>> loader) {
+		if (!refreshing.add(key))
+			return;
+
+		try {
+			refresher.execute(() -> {
+				try {
+					if (flights.tryRun(key, () -> {
+						var res = load(key, loader);
+						if (res.error() == ErrorCode.NOT_FOUND)
+							invalidate(key);
+					}))
+						refreshes.increment();
+				} catch (RuntimeException x) {
+					Log.warning(() -> String.format("refresh : %s, %s\n", key, x.getMessage()));
+				} finally {
+					refreshing.remove(key);
+				}
+			});
+		} catch (RejectedExecutionException x) {
+			refreshing.remove(key);
+		}
+	}
+
+	private static String prefixOf(String key) {
+		return key.substring(0, key.indexOf(':') + 1);
+	}
+
+	private static int stampOf(String key) {
+		return key.hashCode() & (STAMPS - 1);
+	}
+
+	private static ThreadFactory daemon(String name) {
+		return r -> {
+			var t = new Thread(r, name);
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	private void putLocal(String key, Object value, long gen) {
+		var e = new Entry(value, System.currentTimeMillis() + TTL);
+		synchronized (entries) {
+			if (cleared <= gen && stamps[stampOf(key)] <= gen)
+				entries.put(key, e);
+		}
+	}
+
+	private void evict(String... keys) {
+		synchronized (entries) {
+			var gen = generation.incrementAndGet();
+			for (var key : keys) {
+				entries.remove(key);
+				stamps[stampOf(key)] = gen;
+			}
+		}
+		invalidations.add(keys.length);
+		for (var key : keys)
+			CacheKey.of(key).invalidated();
+	}
+
+	private void clear() {
+		synchronized (entries) {
+			cleared = generation.incrementAndGet();
+			entries.clear();
+		}
+	}
+
+	/*
+	 * Listens for invalidations from other replicas. While not subscribed, invalidations
+	 * may be missed, so L1 is cleared whenever a (new) subscription starts.
+	 */
+	private void subscribe() {
+		var listener = new JedisPubSub() {
+			@Override
+			public void onSubscribe(String channel, int subscribedChannels) {
+				clear();
+			}
+
+			@Override
+			public void onMessage(String channel, String key) {
+				evict(key);
+			}
+		};
+
+		for (;;) {
+			try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+				jedis.subscribe(listener, CHANNEL);
+			} catch (Exception x) {
+				Log.warning(() -> String.format("Invalidation channel lost: %s\n", x.getMessage()));
+			}
+			clear();
+			try {
+				Thread.sleep(RESUBSCRIBE_DELAY);
+			} catch (InterruptedException x) {
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import utils.Metrics;
+import utils.Metrics.Timer;
+
+/**
+ * Multi-key reads, writes and deletes, each done in a single round-trip to Redis.
+ *
+ * Keys are sent in chunks of at most REDIS_BATCH_SIZE per command, so that a large
+ * batch does not hold Redis up for long, but all chunks are pipelined together.
+ * Deletes use UNLINK, which reclaims the memory of the values in the background.
+ */
+public class RedisBatch {
+
+	static final int BATCH_SIZE = Integer.parseInt(System.getProperty("REDIS_BATCH_SIZE", "500"));
+
+	private static final Timer GET = Metrics.BACKEND.labels("redis", "batch_get");
+	private static final Timer SET = Metrics.BACKEND.labels("redis", "batch_set");
+	private static final Timer UNLINK = Metrics.BACKEND.labels("redis", "batch_unlink");
+
+	/**
+	 * Returns the values of the keys, in the same order, with null for the missing ones.
+	 */
+	public static List<byte[]> get(List<String> keys) {
+		if (keys.isEmpty())
+			return List.of();
+
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var pipeline = jedis.pipelined();
+			var responses = new ArrayList<Response<List<byte[]>>>();
+			for (int i = 0; i < keys.size(); i += BATCH_SIZE)
+				responses.add(pipeline.mget(bytes(keys.subList(i, Math.min(keys.size(), i + BATCH_SIZE)))));
+			GET.time(pipeline::sync);
+
+			var values = new ArrayList<byte[]>(keys.size());
+			for (var response : responses)
+				values.addAll(response.get());
+			return values;
+		}
+	}
+
+	/**
+	 * Sets the values of the keys, each with the TTL of its kind.
+	 */
+	public static void set(Map<String, byte[]> values) {
+		if (values.isEmpty())
+			return;
+
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var pipeline = jedis.pipelined();
+			values.forEach((key, value) -> {
+				var kind = CacheKey.of(key);
+				pipeline.set(key.getBytes(StandardCharsets.UTF_8), value, kind.params());
+				kind.written();
+			});
+			SET.time(pipeline::sync);
+		}
+	}
+
+	/**
+	 * Deletes the keys.
+	 */
+	public static void unlink(Collection<String> keys) {
+		if (keys.isEmpty())
+			return;
+
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var pipeline = jedis.pipelined();
+			unlink(pipeline, keys);
+			UNLINK.time(pipeline::sync);
+		}
+	}
+
+	/**
+	 * Queues the deletion of the keys into the pipeline, for it to be sent along with other commands.
+	 */
+	public static void unlink(Pipeline pipeline, Collection<String> keys) {
+		var list = List.copyOf(keys);
+		for (int i = 0; i < list.size(); i += BATCH_SIZE)
+			pipeline.unlink(bytes(list.subList(i, Math.min(list.size(), i + BATCH_SIZE))));
+	}
+
+	private static byte[][] bytes(List<String> keys) {
+		var bytes = new byte[keys.size()][];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+		return bytes;
+	}
+}
@@ -1,5 +1,7 @@
 package cache;
 
+import java.time.Duration;
+
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
@@ -10,6 +12,9 @@ public class RedisCache {
     private static final int REDIS_PORT = Integer.parseInt(System.getProperty("REDIS_PORT", "6380"));
     private static final int REDIS_TIMEOUT = Integer.parseInt(System.getProperty("REDIS_TIMEOUT", "1000"));
     private static final boolean Redis_USE_TLS = Boolean.parseBoolean(System.getProperty("REDIS_USE_TLS", "true"));
+    // The pool bounds concurrent use of Redis; requests wait for a connection at most REDIS_MAX_WAIT_MS
+    private static final int REDIS_MAX_CONNECTIONS = Integer.parseInt(System.getProperty("REDIS_MAX_CONNECTIONS", "128"));
+    private static final long REDIS_MAX_WAIT = Long.parseLong(System.getProperty("REDIS_MAX_WAIT_MS", System.getProperty("LIMIT_WAIT_MS", "5000")));
 	
 	private static JedisPool instance;
 	
@@ -18,14 +23,15 @@ public class RedisCache {
 			return instance;
 		
 		var poolConfig = new JedisPoolConfig();
-		poolConfig.setMaxTotal(128);
-		poolConfig.setMaxIdle(128);
+		poolConfig.setMaxTotal(REDIS_MAX_CONNECTIONS);
+		poolConfig.setMaxIdle(REDIS_MAX_CONNECTIONS);
 		poolConfig.setMinIdle(16);
 		poolConfig.setTestOnBorrow(true);
 		poolConfig.setTestOnReturn(true);
 		poolConfig.setTestWhileIdle(true);
 		poolConfig.setNumTestsPerEvictionRun(3);
 		poolConfig.setBlockWhenExhausted(true);
+		poolConfig.setMaxWait(Duration.ofMillis(REDIS_MAX_WAIT));
 		instance = new JedisPool(poolConfig, RedisHostname, REDIS_PORT, REDIS_TIMEOUT, RedisKey, Redis_USE_TLS);
 		return instance;
 	}
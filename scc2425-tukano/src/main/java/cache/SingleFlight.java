@@ -0,0 +1,175 @@
+package cache;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.SetParams;
+import utils.Metrics;
+import utils.Metrics.Timer;
+
+/**
+ * Coalesces concurrent loads of the same key, so that when a hot key goes missing
+ * from the cache, it is loaded from the database once, instead of once per request.
+ *
+ * Within a process, callers that find a load of the key in flight wait for it and share
+ * its outcome. Across replicas, the load holds a short-lived lock in Redis; replicas that
+ * find the key locked wait for the value to show up in the cache instead of loading it,
+ * polling for it less and less often (from LOCK_POLL to LOCK_POLL_MAX ms, jittered), so
+ * that waiters do not crowd Redis, or its pool, while the value is loaded. Locks expire after CACHE_LOCK_TTL_MS, so a replica that dies while loading only delays
+ * the others. If Redis cannot be reached, loads go ahead without the lock.
+ */
+public class SingleFlight {
+	private static Logger Log = Logger.getLogger(SingleFlight.class.getName());
+
+	static final String LOCK = "lock:";
+	static final long LOCK_TTL = Long.parseLong(System.getProperty("CACHE_LOCK_TTL_MS", "3000"));
+	static final long LOCK_POLL = 20;
+	static final long LOCK_POLL_MAX = 250;
+
+	private static final Timer LOCKS = Metrics.BACKEND.labels("redis", "lock");
+
+	// Releases the lock only if still held by whoever took it
+	private static final String UNLOCK_SCRIPT = """
+			if redis.call('GET', KEYS[1]) == ARGV[1] then
+				return redis.call('DEL', KEYS[1])
+			end
+			return 0""";
+
+	private final Map<String, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder waits = new LongAdder();
+
+	/**
+	 * Loads the value of the key, unless a load of it is already in flight in this
+	 * process, in which case that load is waited for and its outcome returned.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T run(String key, Supplier<T> load) {
+		var mine = new CompletableFuture<Object>();
+		var flight = flights.putIfAbsent(key, mine);
+		if (flight != null) {
+			coalesced.increment();
+			try {
+				return (T) flight.join();
+			} catch (CompletionException x) {
+				if (x.getCause() instanceof RuntimeException cause)
+					throw cause;
+				throw x;
+			}
+		}
+
+		try {
+			loads.increment();
+			var value = load.get();
+			mine.complete(value);
+			return value;
+		} catch (RuntimeException | Error x) {
+			mine.completeExceptionally(x);
+			throw x;
+		} finally {
+			flights.remove(key, mine);
+		}
+	}
+
+	/**
+	 * As run, but coalescing loads across replicas as well. While another replica holds the
+	 * lock of the key, probe (eg, a cache lookup) is polled, with backoff, until it returns
+	 * non-null; the value is loaded here only if the lock is released, or expires, without
+	 * one. The probe runs on every poll, so it should not count as a cache miss.
+	 */
+	public <T> T runLocked(String key, Supplier<T> probe, Supplier<T> load) {
+		return run(key, () -> {
+			var token = UUID.randomUUID().toString();
+			var deadline = System.currentTimeMillis() + LOCK_TTL;
+			var backoff = LOCK_POLL;
+			for (;;) {
+				if (lock(key, token))
+					try {
+						return load.get();
+					} finally {
+						unlock(key, token);
+					}
+
+				waits.increment();
+				var value = probe.get();
+				if (value != null || System.currentTimeMillis() > deadline)
+					return value != null ? value : load.get();
+
+				try {
+					var remaining = deadline - System.currentTimeMillis();
+					Thread.sleep(Math.max(1, Math.min(remaining, backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1))));
+					backoff = Math.min(LOCK_POLL_MAX, backoff * 2);
+				} catch (InterruptedException x) {
+					Thread.currentThread().interrupt();
+					return load.get();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Runs the load only if no other load of the key is in flight, here or in another
+	 * replica. Returns whether it ran.
+	 */
+	public boolean tryRun(String key, Runnable load) {
+		var mine = new CompletableFuture<Object>();
+		if (flights.putIfAbsent(key, mine) != null)
+			return false;
+
+		var token = UUID.randomUUID().toString();
+		try {
+			if (!lock(key, token))
+				return false;
+			try {
+				loads.increment();
+				load.run();
+				return true;
+			} finally {
+				unlock(key, token);
+			}
+		} finally {
+			mine.complete(null);
+			flights.remove(key, mine);
+		}
+	}
+
+	public long loads() {
+		return loads.sum();
+	}
+
+	public long coalesced() {
+		return coalesced.sum();
+	}
+
+	public long waits() {
+		return waits.sum();
+	}
+
+	private static boolean lock(String key, String token) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			return LOCKS.time(() -> jedis.set(LOCK + key, token, SetParams.setParams().nx().px(LOCK_TTL))) != null;
+		} catch (JedisException x) {
+			Log.warning(() -> String.format("lock : %s, %s\n", key, x.getMessage()));
+			return true;
+		}
+	}
+
+	private static void unlock(String key, String token) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			LOCKS.time(() -> jedis.eval(UNLOCK_SCRIPT, 1, LOCK + key, token));
+		} catch (JedisException x) {
+			Log.warning(() -> String.format("unlock : %s, %s\n", key, x.getMessage()));
+		}
+	}
+}
@@ -1,11 +1,17 @@
 package srv;
 
+import java.util.List;
+
 import jakarta.ws.rs.CookieParam;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import cache.CacheKey;
 import jakarta.ws.rs.core.Cookie;
 import jakarta.ws.rs.core.MediaType;
+import tukano.impl.cleanup.UserCleanup;
+import utils.Metrics;
 
 /**
  * Class with control endpoints.
@@ -15,6 +21,7 @@ public class ControlResource
 {
 
 	private static final String ADMIN = "admin";
+	private static final String USER_ID = "userId";
 
 	/**
 	 * This methods just prints a string. It may be useful to check if the current 
@@ -57,4 +64,52 @@ public class ControlResource
 		return sb.toString();
 	}
 
+	/**
+	 * The status of the cleanup jobs of deleted users, unfinished and recently finished.
+	 */
+	@Path("/jobs")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<UserCleanup.Status> jobs() {
+		Authentication.validateSession(ADMIN);
+
+		return UserCleanup.getInstance().status();
+	}
+
+	/**
+	 * The status of the cleanup jobs of the given deleted user.
+	 */
+	@Path("/jobs/{" + USER_ID + "}")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<UserCleanup.Status> jobs(@PathParam(USER_ID) String userId) {
+		Authentication.validateSession(ADMIN);
+
+		return UserCleanup.getInstance().status(userId);
+	}
+
+	/**
+	 * The hits, misses, writes... of each kind of cached key, in this replica.
+	 */
+	@Path("/cache")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<CacheKey.Stats> cache() {
+		Authentication.validateSession(ADMIN);
+
+		return CacheKey.allStats();
+	}
+
+	/**
+	 * The latencies of the requests and of the calls to the backends, and other metrics of
+	 * this replica, in the Prometheus text format.
+	 *
+	 * Not authenticated, as Prometheus scrapes without a session; nothing in it is private.
+	 */
+	@Path("/metrics")
+	@GET
+	@Produces("text/plain; version=0.0.4")
+	public String metrics() {
+		return Metrics.prometheus();
+	}
 }
@@ -1,5 +1,7 @@
 package tukano.api;
 
+import java.io.InputStream;
+
 /**
  * Interface of blob service for storing short videos media ...
  */
@@ -21,6 +23,14 @@ public interface Blobs {
 	 */
 	Result<Void> upload(String blobId, byte[] bytes, String token);
 
+	/**
+	 * Uploads a short video blob resource, streaming its contents.
+	 * 
+	 * @param in the contents of the blob resource, read until its end
+	 * @return as upload(blobId, bytes, token)
+	 */
+	Result<Void> upload(String blobId, InputStream in, String token);
+
 	/**
 	 * Downloads a short video blob resource in a single byte chunk of bytes.
 	 * 
@@ -31,6 +41,32 @@ public interface Blobs {
 	Result<byte[]> download(String blobId, String token);
 
 
+	/**
+	 * Opens a short video blob resource, for streaming its contents.
+	 * 
+	 * @param blobId the id of the blob;
+	 * @return (OK, stream), if the blob exists, to be closed by the caller;
+	 * 			 NOT_FOUND, if no blob matches the provided blobId
+	 */
+	Result<InputStream> open(String blobId, String token);
+
+	/**
+	 * Opens part of a short video blob resource, for streaming its contents.
+	 * 
+	 * @param offset the position of the first byte
+	 * @param length the maximum number of bytes
+	 * @return as open(blobId, token)
+	 */
+	Result<InputStream> open(String blobId, long offset, long length, String token);
+
+	/**
+	 * Returns the size, in bytes, of a short video blob resource.
+	 * 
+	 * @return (OK, size), if the blob exists;
+	 * 			 NOT_FOUND, if no blob matches the provided blobId
+	 */
+	Result<Long> size(String blobId, String token);
+
 	/**
 	 * Deletes a short video blob resource.
 	 * 
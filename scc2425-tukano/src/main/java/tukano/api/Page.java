@@ -0,0 +1,74 @@
+package tukano.api;
+
+import java.util.List;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A page of the results of a list operation.
+ * 
+ * The next cursor is opaque and must be passed back to obtain the following page;
+ * it is null when there are no more results.
+ *
+ * @param <T> type of the items of the page
+ */
+public class Page<T> {
+
+	public static final int DEFAULT_SIZE = 50;
+	public static final int MAX_SIZE = 1000;
+
+	@JsonProperty("items")
+	private List<T> items;
+
+	@JsonProperty("next")
+	private String next;
+
+	public Page() {}
+
+	public Page(List<T> items, String next) {
+		this.items = items;
+		this.next = next;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	public void setItems(List<T> items) {
+		this.items = items;
+	}
+
+	public String getNext() {
+		return next;
+	}
+
+	public void setNext(String next) {
+		this.next = next;
+	}
+
+	@Override
+	public String toString() {
+		return "Page [items=" + items + ", next=" + next + "]";
+	}
+
+	/**
+	 * Clamps the page size requested by a client, using the default when none was given.
+	 */
+	public static int size(int requested) {
+		return requested <= 0 ? DEFAULT_SIZE : Math.min(requested, MAX_SIZE);
+	}
+
+	/**
+	 * Builds a page out of rows fetched with a limit of pageSize + 1; the extra row,
+	 * if present, only signals that there is a next page.
+	 * 
+	 * @param item maps a row to the item returned to the client
+	 * @param cursor maps the last row of the page to the cursor of the next page
+	 */
+	public static <T, Q> Page<Q> of(List<T> rows, int pageSize, Function<T, Q> item, Function<T, String> cursor) {
+		var items = rows.stream().limit(pageSize).map(item).toList();
+		var next = rows.size() > pageSize ? cursor.apply(rows.get(pageSize - 1)) : null;
+		return new Page<>(items, next);
+	}
+}
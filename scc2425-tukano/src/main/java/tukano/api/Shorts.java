@@ -49,15 +49,27 @@ public interface Shorts {
 	 * 	NOT_FOUND if shortId does not match an existing short
 	 */
 	Result<Short> getShort(String shortId);
-	
-	
+
+	/**
+	 * Retrieves many shorts at once, eg, the ones of a page of a feed.
+	 *
+	 * @param shortIds the identifiers of the shorts, at most Page.MAX_SIZE
+	 * @return (OK,List<Short>) with the shorts that exist, in the order of shortIds;
+	 * 	BAD_REQUEST if shortIds is missing or too long
+	 */
+	Result<List<Short>> hydrateShorts(List<String> shortIds);
+
+
 	/**
-	 * Retrieves the list of identifiers of the shorts created by the given user, with its total likes count updated.
+	 * Retrieves a page of the identifiers of the shorts created by the given user, newest first.
 	 * 
 	 * @param userId the user that owns the requested shorts
-	 * @return (OK, List<String>|empty list) or NOT_FOUND if the user does not exist
+	 * @param cursor the cursor returned with the previous page, or null for the first page
+	 * @param pageSize the maximum number of identifiers to return, or 0 for the default
+	 * @return (OK, Page<String>) or NOT_FOUND if the user does not exist
+	 * BAD_REQUEST if the cursor is not valid
 	 */
-	Result<List<String>> getShorts( String userId );
+	Result<Page<String>> getShorts( String userId, String cursor, int pageSize );
 	
 	/**
 	 * Causes a user to follow the shorts of another user.
@@ -75,14 +87,17 @@ public interface Shorts {
 	Result<Void> follow(String userId1, String userId2, boolean isFollowing, String password);	
 
 	/**
-	 * Retrieves the lost of users following a given user
+	 * Retrieves a page of the users following a given user
 	 * @param userId - the followed user
 	 * @param password - the password of the followed user
-	 * @return (OK, List<String>|empty list) the list of users that follow another user, or empty if the user has no followers 
+	 * @param cursor - the cursor returned with the previous page, or null for the first page
+	 * @param pageSize - the maximum number of users to return, or 0 for the default
+	 * @return (OK, Page<String>) the users that follow another user, or an empty page if the user has no followers 
 	 * NOT_FOUND if the user does not exists
 	 * FORBIDDEN if the password is incorrect
+	 * BAD_REQUEST if the cursor is not valid
 	 */
-	Result<List<String>> followers(String userId, String password);
+	Result<Page<String>> followers(String userId, String password, String cursor, int pageSize);
 	/**
 	 * Adds or removes a like to a short
 	 * 
@@ -99,28 +114,34 @@ public interface Shorts {
 	
 
 	/**
-	 * Returns all the likes of a given short
+	 * Returns a page of the likes of a given short
 	 * 
 	 * @param shortId the identifier of the short
 	 * @param password the password of the owner of the short
-	 * @return (OK,Boolean), 
+	 * @param cursor the cursor returned with the previous page, or null for the first page
+	 * @param pageSize the maximum number of likes to return, or 0 for the default
+	 * @return (OK,Page<String>), 
 	 * NOT_FOUND if there is no Short with the given shortId
 	 * FORBIDDEN if the password is incorrect
+	 * BAD_REQUEST if the cursor is not valid
 	 */
-	Result<List<String>> likes(String shortId, String password);
+	Result<Page<String>> likes(String shortId, String password, String cursor, int pageSize);
 
 
 	/**
-	 * Returns the feed of the user, sorted by age. The feed is the list of shorts made by
+	 * Returns a page of the feed of the user, sorted by age. The feed is the list of shorts made by
 	 * the users followed by the user.
 	 * 
 	 * @param userId user of the requested feed
 	 * @param password the password of the user
-	 * @return (OK,List<PostId>|empty list)
+	 * @param cursor the cursor returned with the previous page, or null for the first page
+	 * @param pageSize the maximum number of shorts to return, or 0 for the default
+	 * @return (OK,Page<PostId>)
 	 * 	NOT_FOUND if the user does not exists
 	 *  FORBIDDEN if the password is incorrect
+	 *  BAD_REQUEST if the cursor is not valid
 	 */
-	Result<List<String>> getFeed(String userId, String password);
+	Result<Page<String>> getFeed(String userId, String password, String cursor, int pageSize);
 
 	Result<Void> deleteAllShorts(String userId, String password, String token);
 }
@@ -11,6 +11,7 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import tukano.api.Page;
 import tukano.api.Short;
 
 @Path(RestShorts.PATH)
@@ -21,10 +22,13 @@ public interface RestShorts {
 	String USER_ID1 = "userId1";
 	String USER_ID2 = "userId2";
 	String SHORT_ID = "shortId";
+	String ID = "id";
 	
 	String PWD = "pwd";
 	String FEED = "/feed";
 	String TOKEN = "token";
+	String CURSOR = "cursor";
+	String SIZE = "size";
 	String LIKES = "/likes";
 	String SHORTS = "/shorts";
 	String FOLLOWERS = "/followers";
@@ -43,10 +47,14 @@ public interface RestShorts {
 	@Produces(MediaType.APPLICATION_JSON)
 	Short getShort(@PathParam(SHORT_ID) String shortId);
 
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	List<Short> hydrateShorts(@QueryParam(ID) List<String> shortIds);
+
 	@GET
 	@Path("/{" + USER_ID + "}" + SHORTS )
 	@Produces(MediaType.APPLICATION_JSON)
-	List<String> getShorts(@PathParam(USER_ID) String userId);
+	Page<String> getShorts(@PathParam(USER_ID) String userId, @QueryParam(CURSOR) String cursor, @QueryParam(SIZE) int pageSize);
 
 	@POST
 	@Path("/{" + USER_ID1 + "}/{" + USER_ID2 + "}" + FOLLOWERS )
@@ -56,7 +64,7 @@ public interface RestShorts {
 	@GET
 	@Path("/{" + USER_ID + "}" + FOLLOWERS )
 	@Produces(MediaType.APPLICATION_JSON)
-	List<String> followers(@PathParam(USER_ID) String userId, @QueryParam(PWD) String password);
+	Page<String> followers(@PathParam(USER_ID) String userId, @QueryParam(PWD) String password, @QueryParam(CURSOR) String cursor, @QueryParam(SIZE) int pageSize);
 
 	@POST
 	@Path("/{" + SHORT_ID + "}/{" + USER_ID + "}" + LIKES )
@@ -66,12 +74,12 @@ public interface RestShorts {
 	@GET
 	@Path("/{" + SHORT_ID + "}" + LIKES )
 	@Produces(MediaType.APPLICATION_JSON)
-	List<String> likes(@PathParam(SHORT_ID) String shortId, @QueryParam(PWD) String password);
+	Page<String> likes(@PathParam(SHORT_ID) String shortId, @QueryParam(PWD) String password, @QueryParam(CURSOR) String cursor, @QueryParam(SIZE) int pageSize);
 
 	@GET
 	@Path("/{" + USER_ID + "}" + FEED )
 	@Produces(MediaType.APPLICATION_JSON)
-	List<String> getFeed( @PathParam(USER_ID) String userId, @QueryParam(PWD) String password);
+	Page<String> getFeed( @PathParam(USER_ID) String userId, @QueryParam(PWD) String password, @QueryParam(CURSOR) String cursor, @QueryParam(SIZE) int pageSize);
 	
 	@DELETE
 	@Path("/{" + USER_ID + "}" + SHORTS)
@@ -0,0 +1,92 @@
+package tukano.db;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.PartitionKey;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import tukano.api.Result;
+import tukano.api.Result.ErrorCode;
+import utils.Limiter;
+import utils.Metrics;
+
+/**
+ * Non-blocking counterpart of CosmosDBLayer: requests are sent without waiting for
+ * their responses, so that independent ones can be in flight at the same time.
+ *
+ * The client is configured as that of CosmosDBLayer, with which it shares its connections,
+ * and requests count against Limiter.DB until they complete, like those of CosmosDBLayer do.
+ *
+ * Futures complete off the Cosmos I/O threads, so callers may block in their continuations.
+ */
+public class CosmosAsyncDBLayer {
+	private static Logger Log = Logger.getLogger(CosmosAsyncDBLayer.class.getName());
+
+	private static CosmosAsyncDBLayer instance;
+
+	public static synchronized CosmosAsyncDBLayer getInstance() {
+		if (instance != null)
+			return instance;
+
+		instance = new CosmosAsyncDBLayer(CosmosDBLayer.builder().buildAsyncClient());
+		return instance;
+	}
+
+	private final CosmosAsyncClient client;
+	private CosmosAsyncContainer usersContainer;
+	private CosmosAsyncContainer shortsContainer;
+
+	public CosmosAsyncDBLayer(CosmosAsyncClient client) {
+		this.client = client;
+	}
+
+	private synchronized void init() {
+		if (usersContainer != null)
+			return;
+		var db = client.getDatabase(CosmosDBLayer.DB_NAME);
+		usersContainer = db.getContainer(CosmosDBLayer.USERS_CONTAINER);
+		shortsContainer = db.getContainer(CosmosDBLayer.SHORTS_CONTAINER);
+	}
+
+	public <T> CompletableFuture<Result<T>> getUser(String id, Class<T> clazz) {
+		init();
+		return toFuture("getUser", () -> usersContainer.readItem(id, new PartitionKey(id), clazz).map(r -> r.getItem()));
+	}
+
+	public <T> CompletableFuture<Result<T>> getShort(String id, Class<T> clazz) {
+		init();
+		return toFuture("getShort", () -> shortsContainer.readItem(id, new PartitionKey(id), clazz).map(r -> r.getItem()));
+	}
+
+	private interface Request<T> {
+		Mono<T> send();
+	}
+
+	/*
+	 * Subscribes to the request, with a permit of Limiter.DB, mapping its outcome to a
+	 * Result; an empty response (eg, of a delete) is ok.
+	 */
+	private static <T> CompletableFuture<Result<T>> toFuture(String op, Request<T> request) {
+		var timer = Metrics.BACKEND.labels("cosmos", op);
+		return Limiter.DB.callAsync(() -> {
+			var start = System.nanoTime();
+			return request.send()
+					.doFinally(__ -> timer.since(start))
+					.map(Result::ok)
+					.defaultIfEmpty(Result.ok())
+					.onErrorResume(x -> {
+						if (x instanceof CosmosException ce)
+							return Mono.just(Result.error(CosmosDBLayer.errorCodeFromStatus(ce.getStatusCode())));
+						Log.warning(() -> String.format("%s : %s\n", op, x));
+						return Mono.just(Result.error(ErrorCode.INTERNAL_ERROR));
+					})
+					.publishOn(Schedulers.boundedElastic())
+					.toFuture();
+		});
+	}
+}
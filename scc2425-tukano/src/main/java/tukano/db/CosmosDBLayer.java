@@ -1,5 +1,6 @@
 package tukano.db;
 
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.function.Supplier;
 
@@ -9,19 +10,25 @@ import com.azure.cosmos.CosmosClientBuilder;
 import com.azure.cosmos.CosmosContainer;
 import com.azure.cosmos.CosmosDatabase;
 import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosItemOperation;
 import com.azure.cosmos.models.CosmosItemRequestOptions;
+import com.azure.cosmos.models.CosmosPatchOperations;
 import com.azure.cosmos.models.CosmosQueryRequestOptions;
 import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.util.CosmosPagedIterable;
 
+import tukano.api.Page;
 import tukano.api.Result;
 import tukano.api.Result.ErrorCode;
+import utils.Limiter;
+import utils.Metrics;
 
 public class CosmosDBLayer {
 	private static final String CONNECTION_URL = System.getProperty("COSMOSDB_URL");
 	private static final String DB_KEY = System.getProperty("COSMOSDB_KEY");
-	private static final String DB_NAME = System.getProperty("COSMOSDB_DATABASE");
-	private static final String USERS_CONTAINER = "users";
-	private static final String SHORTS_CONTAINER = "shorts";
+	static final String DB_NAME = System.getProperty("COSMOSDB_DATABASE");
+	static final String USERS_CONTAINER = "users";
+	static final String SHORTS_CONTAINER = "shorts";
 	private static final String LIKES_CONTAINER = "likes";
 	private static final String FOLLOWS_CONTAINER = "following";
 
@@ -32,16 +39,23 @@ public class CosmosDBLayer {
 		if (instance != null)
 			return instance;
 
-		CosmosClient client = new CosmosClientBuilder()
+		CosmosClient client = builder().buildClient();
+		instance = new CosmosDBLayer(client);
+		return instance;	
+	}
+
+	/*
+	 * The configuration of the clients, shared with CosmosAsyncDBLayer; clients built from it
+	 * share their connections.
+	 */
+	static CosmosClientBuilder builder() {
+		return new CosmosClientBuilder()
 		         .endpoint(CONNECTION_URL)
 		         .key(DB_KEY)
 		         .directMode()
 		         .consistencyLevel(ConsistencyLevel.SESSION)
 		         .connectionSharingAcrossClientsEnabled(true)
-		         .contentResponseOnWriteEnabled(true)
-		         .buildClient();
-		instance = new CosmosDBLayer(client);
-		return instance;	
+		         .contentResponseOnWriteEnabled(true);
 	}
 	
 	private CosmosClient client;
@@ -71,23 +85,23 @@ public class CosmosDBLayer {
 
 	// User functions
 	public <T> Result<T> getUser(String id, Class<T> clazz) {
-		return tryCatch(() -> usersContainer.readItem(id, new PartitionKey(id), clazz).getItem());
+		return tryCatch("getUser", () -> usersContainer.readItem(id, new PartitionKey(id), clazz).getItem());
 	}
 	
 	public <T> Result<?> deleteUser(T obj) {
-		return tryCatch(() -> usersContainer.deleteItem(obj, new CosmosItemRequestOptions()).getItem());
+		return tryCatch("deleteUser", () -> usersContainer.deleteItem(obj, new CosmosItemRequestOptions()).getItem());
 	}
 	
 	public <T> Result<T> updateUser(T obj) {
-		return tryCatch(() -> usersContainer.upsertItem(obj).getItem());
+		return tryCatch("updateUser", () -> usersContainer.upsertItem(obj).getItem());
 	}
 	
 	public <T> Result<T> insertUser(T obj) {
-		return tryCatch(() -> usersContainer.createItem(obj).getItem());
+		return tryCatch("insertUser", () -> usersContainer.createItem(obj).getItem());
 	}
 	
 	public <T> Result<List<T>> queryUsers(Class<T> clazz, String queryStr) {
-		return tryCatch(() -> {
+		return tryCatch("queryUsers", () -> {
 			var res = usersContainer.queryItems(queryStr, new CosmosQueryRequestOptions(), clazz);
 			return res.stream().toList();
 		});
@@ -95,71 +109,134 @@ public class CosmosDBLayer {
 
 	// Shorts functions
 	public <T> Result<T> getShort(String id, Class<T> clazz) {
-		return tryCatch(() -> shortsContainer.readItem(id, new PartitionKey(id), clazz).getItem());
+		return tryCatch("getShort", () -> shortsContainer.readItem(id, new PartitionKey(id), clazz).getItem());
 	}
 	
 	public <T> Result<?> deleteShort(T obj) {
-		return tryCatch(() -> shortsContainer.deleteItem(obj, new CosmosItemRequestOptions()).getItem());
+		return tryCatch("deleteShort", () -> shortsContainer.deleteItem(obj, new CosmosItemRequestOptions()).getItem());
 	}
 	
 	public <T> Result<T> updateShort(T obj) {
-		return tryCatch(() -> shortsContainer.upsertItem(obj).getItem());
+		return tryCatch("updateShort", () -> shortsContainer.upsertItem(obj).getItem());
 	}
 	
+	public <T> Result<T> patchShort(String id, CosmosPatchOperations ops, Class<T> clazz) {
+		return tryCatch("patchShort", () -> shortsContainer.patchItem(id, new PartitionKey(id), ops, clazz).getItem());
+	}
+
 	public <T> Result<T> insertShort(T obj) {
-		return tryCatch(() -> shortsContainer.createItem(obj).getItem());
+		return tryCatch("insertShort", () -> shortsContainer.createItem(obj).getItem());
 	}
 	
 	public <T> Result<List<T>> queryShorts(Class<T> clazz, String queryStr) {
-		return tryCatch(() -> {
+		return tryCatch("queryShorts", () -> {
 			var res = shortsContainer.queryItems(queryStr, new CosmosQueryRequestOptions(), clazz);
 			return res.stream().toList();
 		});
 	}
 
+	public <T> Result<Page<T>> queryShortsPage(Class<T> clazz, String queryStr, String continuation, int pageSize) {
+		return tryCatch("queryShortsPage", () -> page(shortsContainer.queryItems(queryStr, new CosmosQueryRequestOptions(), clazz), continuation, pageSize));
+	}
+
+	public Result<List<ErrorCode>> bulkShorts(List<CosmosItemOperation> ops) {
+		return tryCatch("bulkShorts", () -> bulk(shortsContainer, ops));
+	}
+
 	public <T> Result<T> insertFollow(T obj) {
-		return tryCatch(() -> followsContainer.createItem(obj).getItem());
+		return tryCatch("insertFollow", () -> followsContainer.createItem(obj).getItem());
 	}
 
 	public <T> Result<?> deleteFollow(T obj) {
-		return tryCatch(() -> followsContainer.deleteItem(obj, new CosmosItemRequestOptions()).getItem());
+		return tryCatch("deleteFollow", () -> followsContainer.deleteItem(obj, new CosmosItemRequestOptions()).getItem());
 	}
 	
 	public <T> Result<List<T>> queryFollows(Class<T> clazz, String queryStr) {
-		return tryCatch(() -> {
+		return tryCatch("queryFollows", () -> {
 			var res = followsContainer.queryItems(queryStr, new CosmosQueryRequestOptions(), clazz);
 			return res.stream().toList();
 		});
 	}
 
+	public <T> Result<Page<T>> queryFollowsPage(Class<T> clazz, String queryStr, String continuation, int pageSize) {
+		return tryCatch("queryFollowsPage", () -> page(followsContainer.queryItems(queryStr, new CosmosQueryRequestOptions(), clazz), continuation, pageSize));
+	}
+
+	public Result<List<ErrorCode>> bulkFollows(List<CosmosItemOperation> ops) {
+		return tryCatch("bulkFollows", () -> bulk(followsContainer, ops));
+	}
+
 	public <T> Result<T> insertLike(T obj) {
-		return tryCatch(() -> likesContainer.createItem(obj).getItem());
+		return tryCatch("insertLike", () -> likesContainer.createItem(obj).getItem());
 	}
 
 	public <T> Result<?> deleteLike(T obj) {
-		return tryCatch(() -> likesContainer.deleteItem(obj, new CosmosItemRequestOptions()).getItem());
+		return tryCatch("deleteLike", () -> likesContainer.deleteItem(obj, new CosmosItemRequestOptions()).getItem());
 	}
 	
 	public <T> Result<List<T>> queryLikes(Class<T> clazz, String queryStr) {
-		return tryCatch(() -> {
+		return tryCatch("queryLikes", () -> {
 			var res = likesContainer.queryItems(queryStr, new CosmosQueryRequestOptions(), clazz);
 			return res.stream().toList();
 		});
 	}
 
+	public Result<List<ErrorCode>> bulkLikes(List<CosmosItemOperation> ops) {
+		return tryCatch("bulkLikes", () -> bulk(likesContainer, ops));
+	}
 
+	public <T> Result<Page<T>> queryLikesPage(Class<T> clazz, String queryStr, String continuation, int pageSize) {
+		return tryCatch("queryLikesPage", () -> page(likesContainer.queryItems(queryStr, new CosmosQueryRequestOptions(), clazz), continuation, pageSize));
+	}
+
+	/*
+	 * Fetches a single page of results, resuming from the given continuation token (if any).
+	 * The next cursor of the page is the continuation token returned by CosmosDB.
+	 */
+	private static <T> Page<T> page(CosmosPagedIterable<T> results, String continuation, int pageSize) {
+		var pages = results.iterableByPage(continuation, pageSize).iterator();
+		if (!pages.hasNext())
+			return new Page<>(List.of(), null);
 
-	<T> Result<T> tryCatch(Supplier<T> supplierFunc) {
-		try {
-			init();
-			return Result.ok(supplierFunc.get());			
-		} catch (CosmosException ce) {
-			ce.printStackTrace();
-			return Result.error(errorCodeFromStatus(ce.getStatusCode()));		
-		} catch (Exception x) {
-			x.printStackTrace();
-			return Result.error(ErrorCode.INTERNAL_ERROR);						
+		var res = pages.next();
+		return new Page<>(res.getResults(), res.getContinuationToken());
+	}
+
+	/*
+	 * Executes the operations in bulk, returning the outcome of each, in order.
+	 */
+	private static List<ErrorCode> bulk(CosmosContainer container, List<CosmosItemOperation> ops) {
+		var outcomes = new IdentityHashMap<CosmosItemOperation, ErrorCode>();
+		for (var res : container.executeBulkOperations(ops)) {
+			int status;
+			if (res.getResponse() != null)
+				status = res.getResponse().getStatusCode();
+			else if (res.getException() instanceof CosmosException ce)
+				status = ce.getStatusCode();
+			else
+				status = 500;
+			outcomes.put(res.getOperation(), status / 100 == 2 ? ErrorCode.OK : errorCodeFromStatus(status));
 		}
+		return ops.stream().map(op -> outcomes.getOrDefault(op, ErrorCode.INTERNAL_ERROR)).toList();
+	}
+
+	<T> Result<T> tryCatch(String op, Supplier<T> supplierFunc) {
+		var timer = Metrics.BACKEND.labels("cosmos", op);
+		return Limiter.DB.call(() -> {
+			var start = System.nanoTime();
+			try {
+				init();
+				return Result.ok(supplierFunc.get());
+			} catch (CosmosException ce) {
+				ce.printStackTrace();
+				return Result.error(errorCodeFromStatus(ce.getStatusCode()));
+			} catch (Exception x) {
+				x.printStackTrace();
+				return Result.error(ErrorCode.INTERNAL_ERROR);
+			} finally {
+				timer.since(start);
+			}
+		});
 	}
 	
 	static Result.ErrorCode errorCodeFromStatus(int status) {
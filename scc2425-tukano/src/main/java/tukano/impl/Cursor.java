@@ -0,0 +1,106 @@
+package tukano.impl;
+
+import static tukano.api.Result.error;
+import static tukano.api.Result.ok;
+import static tukano.api.Result.ErrorCode.BAD_REQUEST;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import tukano.api.Result;
+import tukano.api.Short;
+
+/**
+ * Position of a paginated listing, exchanged with clients as an opaque base64url string.
+ * 
+ * For keyset pagination it holds the (timestamp, id) of the last item returned, or just the
+ * id for listings ordered by id; for CosmosDB queries the id is the continuation token.
+ *
+ * Cursors come from clients, so the ids of keyset cursors, which end up in queries, are
+ * rejected if they could break out of a string literal (see parse).
+ */
+public record Cursor(long timestamp, String id) {
+
+	private static final String SEPARATOR = ":";
+
+	public static Cursor of(String id) {
+		return new Cursor(0, id);
+	}
+
+	public static Cursor of(Short shrt) {
+		return new Cursor(shrt.getTimestamp(), shrt.getShortId());
+	}
+
+	public String encode() {
+		var str = timestamp + SEPARATOR + id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(str.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Encodes a cursor holding only an id (or continuation token), or null if there is none.
+	 */
+	public static String encode(String id) {
+		return id == null ? null : of(id).encode();
+	}
+
+	/**
+	 * Parses a keyset cursor sent by a client, whose id is to be used in olderThan or greaterThan.
+	 * 
+	 * @return (OK, Cursor), or (OK, null) if no cursor was given;
+	 * 	BAD_REQUEST if the cursor is malformed, or its id has quotes, backslashes or control characters
+	 */
+	public static Result<Cursor> parse(String cursor) {
+		var res = parseToken(cursor);
+		if (res.isOK() && res.value() != null && !isSafe(res.value().id))
+			return error(BAD_REQUEST);
+		return res;
+	}
+
+	/**
+	 * Parses a cursor sent by a client, whose id is a CosmosDB continuation token, which is
+	 * handed to the driver as is, and never put into a query.
+	 */
+	public static Result<Cursor> parseToken(String cursor) {
+		if (cursor == null || cursor.isEmpty())
+			return ok();
+		try {
+			var str = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			var parts = str.split(SEPARATOR, 2);
+			return ok(new Cursor(Long.parseLong(parts[0]), parts[1]));
+		} catch (IllegalArgumentException | IndexOutOfBoundsException x) {
+			return error(BAD_REQUEST);
+		}
+	}
+
+	// Nothing that could end, or escape, a string literal in SQL or CosmosDB queries
+	private static boolean isSafe(String id) {
+		return id.chars().noneMatch(c -> c == '\'' || c == '"' || c == '\\' || Character.isISOControl(c));
+	}
+
+	/**
+	 * Query predicate selecting the items that come after the cursor, in a listing
+	 * ordered by timestamp and id, newest first. Valid in both SQL and CosmosDB queries.
+	 */
+	public static String olderThan(Cursor after, String timestampField, String idField) {
+		if (after == null)
+			return "true";
+		return String.format("(%s < %d OR (%s = %d AND %s < '%s'))", timestampField, after.timestamp, timestampField,
+				after.timestamp, idField, after.id);
+	}
+
+	/**
+	 * Query predicate selecting the items that come after the cursor, in a listing ordered by id.
+	 */
+	public static String greaterThan(Cursor after, String idField) {
+		if (after == null)
+			return "true";
+		return String.format("%s > '%s'", idField, after.id);
+	}
+
+	/**
+	 * The CosmosDB continuation token held by the cursor, if any.
+	 */
+	public static String token(Cursor after) {
+		return after == null ? null : after.id;
+	}
+}
@@ -1,25 +1,33 @@
 package tukano.impl;
 
-import static java.lang.String.format;
 import static tukano.api.Result.error;
 import static tukano.api.Result.ErrorCode.FORBIDDEN;
 
+import java.io.InputStream;
 import java.util.logging.Logger;
 
 import tukano.api.Blobs;
 import tukano.api.Result;
 import tukano.impl.rest.TukanoRestServer;
 import tukano.impl.storage.BlobStorage;
-//import tukano.impl.storage.FilesystemStorage;
+import tukano.impl.storage.CachingStorage;
 import tukano.impl.storage.CloudSystemStorage;
+import tukano.impl.storage.ContentAddressedStorage;
+import tukano.impl.storage.FilesystemStorage;
+import tukano.impl.storage.TimedStorage;
 import utils.Hash;
 import utils.Hex;
+import utils.Limiter;
+import utils.Logs;
 
 public class JavaBlobs implements Blobs {
 	
 	private static Blobs instance;
 	private static Logger Log = Logger.getLogger(JavaBlobs.class.getName());
 
+	// If set, blobs are stored in this local directory instead of the cloud, eg, for benchmarks
+	private static final String BLOB_STORAGE_DIR = System.getProperty("BLOB_STORAGE_DIR");
+
 	public String baseURI;
 	private BlobStorage storage;
 	
@@ -30,48 +38,92 @@ public class JavaBlobs implements Blobs {
 	}
 	
 	private JavaBlobs() {
-		storage = new CloudSystemStorage(); // before: FilesystemStorage();
+		// Only the backend itself is timed, not the hits of the local cache
+		var store = BLOB_STORAGE_DIR != null ? new TimedStorage(new FilesystemStorage(BLOB_STORAGE_DIR), "filesystem")
+				: new CachingStorage(new TimedStorage(new CloudSystemStorage(), "blobs"), ContentAddressedStorage::isContents);
+		storage = new ContentAddressedStorage(store);
 		baseURI = String.format("%s/%s/", TukanoRestServer.serverURI, Blobs.NAME);
 	}
 	
 	@Override
 	public Result<Void> upload(String blobId, byte[] bytes, String token) {
-		Log.info(() -> format("upload : blobId = %s, sha256 = %s, token = %s\n", blobId, Hex.of(Hash.sha256(bytes)), token));
+		Logs.info(Log, "upload").with("blobId", blobId).with("size", bytes.length).with("token", token).log();
+		Logs.fine(Log, "upload").with("blobId", blobId).with("sha256", () -> Hex.of(Hash.sha256(bytes))).log();
+
+		if (!validBlobId(blobId, token))
+			return error(FORBIDDEN);
+
+		return Limiter.BLOBS.call(() -> storage.write( toPath( blobId ), bytes));
+	}
+
+	@Override
+	public Result<Void> upload(String blobId, InputStream in, String token) {
+		Logs.info(Log, "upload").with("blobId", blobId).with("token", token).log();
 
 		if (!validBlobId(blobId, token))
 			return error(FORBIDDEN);
 
-		return storage.write( toPath( blobId ), bytes);
+		return Limiter.BLOBS.call(() -> storage.write( toPath( blobId ), in));
 	}
 
 	@Override
 	public Result<byte[]> download(String blobId, String token) {
-		Log.info(() -> format("download : blobId = %s, token=%s\n", blobId, token));
+		Logs.info(Log, "download").with("blobId", blobId).with("token", token).log();
+
+		if( ! validBlobId( blobId, token ) )
+			return error(FORBIDDEN);
+
+		return Limiter.BLOBS.call(() -> storage.read( toPath( blobId ) ));
+	}
+
+	@Override
+	public Result<InputStream> open(String blobId, String token) {
+		Logs.info(Log, "open").with("blobId", blobId).with("token", token).log();
+
+		if( ! validBlobId( blobId, token ) )
+			return error(FORBIDDEN);
+
+		return Limiter.BLOBS.call(() -> storage.open( toPath( blobId ) ));
+	}
+
+	@Override
+	public Result<InputStream> open(String blobId, long offset, long length, String token) {
+		Logs.info(Log, "open").with("blobId", blobId).with("offset", offset).with("length", length).with("token", token).log();
+
+		if( ! validBlobId( blobId, token ) )
+			return error(FORBIDDEN);
+
+		return Limiter.BLOBS.call(() -> storage.open( toPath( blobId ), offset, length ));
+	}
+
+	@Override
+	public Result<Long> size(String blobId, String token) {
+		Logs.info(Log, "size").with("blobId", blobId).with("token", token).log();
 
 		if( ! validBlobId( blobId, token ) )
 			return error(FORBIDDEN);
 
-		return storage.read( toPath( blobId ) );
+		return Limiter.BLOBS.call(() -> storage.size( toPath( blobId ) ));
 	}
 
 	@Override
 	public Result<Void> delete(String blobId, String token) {
-		Log.info(() -> format("delete : blobId = %s, token=%s\n", blobId, token));
+		Logs.info(Log, "delete").with("blobId", blobId).with("token", token).log();
 	
 		if( ! validBlobId( blobId, token ) )
 			return error(FORBIDDEN);
 
-		return storage.delete( toPath(blobId));
+		return Limiter.BLOBS.call(() -> storage.delete( toPath(blobId)));
 	}
 	
 	@Override
 	public Result<Void> deleteAllBlobs(String userId, String token) {
-		Log.info(() -> format("deleteAllBlobs : userId = %s, token=%s\n", userId, token));
+		Logs.info(Log, "deleteAllBlobs").with("userId", userId).with("token", token).log();
 
 		if( ! Token.isValid( token, userId ) )
 			return error(FORBIDDEN);
 		
-		return storage.delete( toPath(userId));
+		return Limiter.BLOBS.call(() -> storage.delete( toPath(userId)));
 	}
 	
 	private boolean validBlobId(String blobId, String token) {		
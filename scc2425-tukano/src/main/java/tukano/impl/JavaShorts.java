@@ -7,31 +7,57 @@ import static tukano.api.Result.errorOrValue;
 import static tukano.api.Result.errorOrVoid;
 import static tukano.api.Result.ok;
 import static tukano.api.Result.ErrorCode.BAD_REQUEST;
+import static tukano.api.Result.ErrorCode.CONFLICT;
 import static tukano.api.Result.ErrorCode.FORBIDDEN;
+import static tukano.api.Result.ErrorCode.INTERNAL_ERROR;
+import static tukano.api.Result.ErrorCode.NOT_FOUND;
 
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import java.util.logging.Logger;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import cache.CacheKey;
+import cache.NearCache;
 import cache.RedisCache;
 import redis.clients.jedis.Jedis;
 import tukano.api.Blobs;
+import tukano.api.Page;
 import tukano.api.Result;
 import tukano.api.Short;
 import tukano.api.Shorts;
 import tukano.api.User;
+import tukano.impl.cleanup.CascadingDelete;
 import tukano.impl.data.Following;
+import tukano.impl.events.Event;
+import tukano.impl.events.Events;
 import tukano.impl.data.Likes;
+import tukano.impl.feed.Timelines;
+import tukano.impl.likes.LikeCounters;
+import tukano.impl.likes.LikeWriter;
 import tukano.impl.rest.TukanoRestServer;
 import utils.DB;
-import utils.JSON;
+import utils.Logs;
 
 public class JavaShorts implements Shorts {
 
 	private static Logger Log = Logger.getLogger(JavaShorts.class.getName());
 
+	private static final TypeReference<Page<String>> PAGE_OF_IDS = new TypeReference<>() {};
+
 	private static Shorts instance;
 
+	private final Timelines timelines;
+	private final LikeCounters likeCounters;
+	private final LikeWriter likeWriter;
+	private final CascadingDelete cascade;
+	private final NearCache cache = NearCache.getInstance();
+	private final Events events = Events.getInstance();
+
 	synchronized public static Shorts getInstance() {
 		if (instance == null)
 			instance = new JavaShorts();
@@ -39,11 +65,15 @@ public class JavaShorts implements Shorts {
 	}
 
 	private JavaShorts() {
+		timelines = new Timelines(new DBTimelineSource());
+		likeCounters = new LikeCounters(new DBLikesSource());
+		likeWriter = new LikeWriter(new DBLikesSink(), likeCounters);
+		cascade = new CascadingDelete(new DBCleanupSource(), timelines, likeCounters);
 	}
 
 	@Override
 	public Result<Short> createShort(String userId, String password) {
-		Log.info(() -> format("createShort : userId = %s, pwd = %s\n", userId, password));
+		Logs.info(Log, "createShort").with("userId", userId).with("pwd", password).log();
 
 		return errorOrResult(okUser(userId, password), user -> {
 
@@ -51,44 +81,45 @@ public class JavaShorts implements Shorts {
 			var blobUrl = format("%s/%s/%s", TukanoRestServer.serverURI, Blobs.NAME, shortId);
 			var shrt = new Short(shortId, userId, blobUrl);
 
-			return errorOrValue(DB.insertOne(shrt), s -> s.copyWithLikes_And_Token(0));
+			return errorOrValue(DB.insertOne(shrt), s -> {
+				timelines.published(s);
+				events.publish(new Event.ShortCreated(s));
+				return s.copyWithLikes_And_Token(0);
+			});
 		});
 	}
 
 	@Override
 	public Result<Short> getShort(String shortId) {
-		Log.info(() -> format("getShort : shortId = %s\n", shortId));
+		Logs.info(Log, "getShort").with("shortId", shortId).log();
 
 		if (shortId == null)
 			return error(BAD_REQUEST);
 
-		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			// Try fetching the short from cache
-			var shortKey = "short:" + shortId;
-			String cachedShort = jedis.get(shortKey);
-			if (cachedShort != null) {
-				Short short1 = JSON.decode(cachedShort, Short.class);
-				return ok(short1);
-			}
+		// From the cache, or else loaded once (across replicas) from the database
+		var res = cache.getOrLoad(CacheKey.SHORT.key(shortId), Short.class, () -> DB.getOne(shortId, Short.class));
 
-			var query = format("SELECT count(*) FROM Likes l WHERE l.shortId = '%s'", shortId);
-			var likes = DB.sql(query, Long.class);
-			return errorOrValue((Result<Short>) DB.getOne(shortId, Short.class), shrt -> {
-				var resultShort = shrt.copyWithLikes_And_Token(likes.get(0));
-				jedis.set(shortKey, JSON.encode(resultShort)); // Populate cache with the fetched user
-				return resultShort;
-			});
-		}
+		// Likes are counted apart, as they change much more often than the short itself
+		return errorOrValue(res, shrt -> shrt.copyWithLikes_And_Token(likeCounters.get(shrt)));
+	}
+
+	@Override
+	public Result<List<Short>> hydrateShorts(List<String> shortIds) {
+		Logs.info(Log, "hydrateShorts").with("shortIds", shortIds).log();
+
+		return errorOrValue(ShortsHydrator.hydrate(shortIds, cache, missing -> {
+			return ok(DB.sql(format("SELECT * FROM Shorts s WHERE s.shortId IN (%s)", ShortsHydrator.sqlList(missing)), Short.class));
+		}), shorts -> ShortsHydrator.withLikes(shorts, likeCounters.get(shorts)));
 	}
 
 	@Override
 	public Result<Void> deleteShort(String shortId, String password) {
-		Log.info(() -> format("deleteShort : shortId = %s, pwd = %s\n", shortId, password));
+		Logs.info(Log, "deleteShort").with("shortId", shortId).with("pwd", password).log();
 
 		return errorOrResult(getShort(shortId), shrt -> {
 
 			return errorOrResult(okUser(shrt.getOwnerId(), password), user -> {
-				return DB.transaction(hibernate -> {
+				Result<Void> res = DB.transaction(hibernate -> {
 
 					hibernate.remove(shrt);
 
@@ -96,144 +127,153 @@ public class JavaShorts implements Shorts {
 					hibernate.createNativeQuery(query, Likes.class).executeUpdate();
 
 					JavaBlobs.getInstance().delete(shrt.getBlobUrl(), Token.get());
-
-					// Invalidate cache for deleted short
-					try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-						jedis.del("short:" + shortId);
-					}
 				});
+				if (res.isOK()) {
+					likeCounters.removed(List.of(shortId));
+					timelines.removed(shrt);
+					events.publish(new Event.ShortDeleted(shrt));
+				}
+				return res;
 			});
 		});
 	}
 
 	@Override
-	public Result<List<String>> getShorts(String userId) {
-		Log.info(() -> format("getShorts : userId = %s\n", userId));
+	public Result<Page<String>> getShorts(String userId, String cursor, int pageSize) {
+		Logs.info(Log, "getShorts").with("userId", userId).with("cursor", cursor).with("pageSize", pageSize).log();
 
-		var cacheKey = "user_shorts:" + userId;
+		var size = Page.size(pageSize);
 
-		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			// Attempt to user's shorts from cache
-			var cachedShorts = jedis.get(cacheKey);
-			if (cachedShorts != null) {
-				return ok(JSON.decodeList(cachedShorts, String.class));
-			}
+		return errorOrResult(Cursor.parse(cursor), after -> {
+			// Only the first page, with the default size, is cached
+			var cacheable = after == null && size == Page.DEFAULT_SIZE;
 
-			var query = format("SELECT s.shortId FROM Short s WHERE s.ownerId = '%s'", userId);
-			var shortIds = DB.sql(String.class, query);
-			jedis.set(cacheKey, JSON.encode(shortIds));
-			return errorOrValue(okUser(userId), shortIds);
-		}
+			try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+				// Attempt to user's shorts from cache
+				var cachedShorts = cacheable ? CacheKey.USER_SHORTS.get(jedis, userId, PAGE_OF_IDS) : null;
+				if (cachedShorts != null) {
+					return ok(cachedShorts);
+				}
+
+				var query = format("SELECT * FROM Shorts s WHERE s.ownerId = '%s' AND %s ORDER BY s.timestamp DESC, s.shortId DESC LIMIT %d",
+						userId, Cursor.olderThan(after, "s.timestamp", "s.shortId"), size + 1);
+				var shortIds = Page.of(DB.sql(query, Short.class), size, Short::getShortId, s -> Cursor.of(s).encode());
+				if (cacheable)
+					CacheKey.USER_SHORTS.set(jedis, userId, shortIds);
+				return errorOrValue(okUser(userId), shortIds);
+			}
+		});
 	}
 
 	@Override
 	public Result<Void> follow(String userId1, String userId2, boolean isFollowing, String password) {
-		Log.info(() -> format("follow : userId1 = %s, userId2 = %s, isFollowing = %s, pwd = %s\n", userId1, userId2,
-				isFollowing, password));
+		Logs.info(Log, "follow").with("userId1", userId1).with("userId2", userId2).with("isFollowing", isFollowing).with("pwd", password).log();
 
 		return errorOrResult(okUser(userId1, password), user -> {
 			var f = new Following(userId1, userId2);
-			return errorOrVoid(okUser(userId2), isFollowing ? DB.insertOne(f) : DB.deleteOne(f));
+			var res = errorOrVoid(okUser(userId2), isFollowing ? DB.insertOne(f) : DB.deleteOne(f));
+			if (res.isOK()) {
+				timelines.followeesChanged(userId1);
+				events.publish(new Event.Followed(userId1, userId2, isFollowing));
+			}
+			return res;
 		});
 	}
 
 	@Override
-	public Result<List<String>> followers(String userId, String password) {
-		Log.info(() -> format("followers : userId = %s, pwd = %s\n", userId, password));
+	public Result<Page<String>> followers(String userId, String password, String cursor, int pageSize) {
+		Logs.info(Log, "followers").with("userId", userId).with("pwd", password).with("cursor", cursor).with("pageSize", pageSize).log();
 
-		String cacheKey = "followers:" + userId;
+		var size = Page.size(pageSize);
 
-		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			// Try fetching followers from cache
-			String cachedFollowers = jedis.get(cacheKey);
-			if (cachedFollowers != null) {
-				return ok(JSON.decodeList(cachedFollowers, String.class));
-			}
+		return errorOrResult(Cursor.parse(cursor), after -> {
+			// Only the first page, with the default size, is cached
+			var cacheable = after == null && size == Page.DEFAULT_SIZE;
 
-			// Fetch from database if not in cache
-			var query = format("SELECT f.follower FROM Following f WHERE f.followee = '%s'", userId);
-			Result<List<String>> followers = errorOrValue(okUser(userId, password), DB.sql(query, String.class));
+			try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+				// Try fetching followers from cache
+				var cachedFollowers = cacheable ? CacheKey.FOLLOWERS.get(jedis, userId, PAGE_OF_IDS) : null;
+				if (cachedFollowers != null) {
+					return errorOrValue(okUser(userId, password), cachedFollowers);
+				}
+
+				// Fetch from database if not in cache
+				var query = format("SELECT f.follower FROM Following f WHERE f.followee = '%s' AND %s ORDER BY f.follower LIMIT %d",
+						userId, Cursor.greaterThan(after, "f.follower"), size + 1);
+				Result<Page<String>> followers = errorOrValue(okUser(userId, password),
+						Page.of(DB.sql(query, String.class), size, id -> id, Cursor::encode));
 
-			// Store result in cache if found
-			if (followers.isOK()) {
-				jedis.set(cacheKey, JSON.encode(followers.value()));
+				// Store result in cache if found
+				if (followers.isOK() && cacheable) {
+					CacheKey.FOLLOWERS.set(jedis, userId, followers.value());
+				}
+				return followers;
 			}
-			return followers;
-		}
+		});
 	}
 
 	@Override
 	public Result<Void> like(String shortId, String userId, boolean isLiked, String password) {
-		Log.info(() -> format("like : shortId = %s, userId = %s, isLiked = %s, pwd = %s\n", shortId, userId, isLiked,
-				password));
+		Logs.info(Log, "like").with("shortId", shortId).with("userId", userId).with("isLiked", isLiked).with("pwd", password).log();
 
 		return errorOrResult(getShort(shortId), shrt -> {
 			var l = new Likes(userId, shortId, shrt.getOwnerId());
-			return errorOrVoid(okUser(userId, password), isLiked ? DB.insertOne(l) : DB.deleteOne(l));
+			return errorOrResult(okUser(userId, password), user -> liked(l, isLiked));
 		});
 	}
 
 	@Override
-	public Result<List<String>> likes(String shortId, String password) {
-		Log.info(() -> format("likes : shortId = %s, pwd = %s\n", shortId, password));
+	public Result<Page<String>> likes(String shortId, String password, String cursor, int pageSize) {
+		Logs.info(Log, "likes").with("shortId", shortId).with("pwd", password).with("cursor", cursor).with("pageSize", pageSize).log();
 
-		String cacheKey = "likes:" + shortId;
+		var size = Page.size(pageSize);
 
-		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			// Try fetching likes from cache
-			String cachedLikes = jedis.get(cacheKey);
-			if (cachedLikes != null) {
-				return ok(JSON.decodeList(cachedLikes, String.class));
-			}
+		return errorOrResult(Cursor.parse(cursor), after -> errorOrResult(getShort(shortId), shrt -> {
+			// Only the first page, with the default size, is cached
+			var cacheable = after == null && size == Page.DEFAULT_SIZE;
+
+			try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+				// Try fetching likes from cache
+				var cachedLikes = cacheable ? CacheKey.LIKES.get(jedis, shortId, PAGE_OF_IDS) : null;
+				if (cachedLikes != null) {
+					return errorOrValue(okUser(shrt.getOwnerId(), password), cachedLikes);
+				}
 
-			// Fetch from database if not in cache
-			var query = format("SELECT l.userId FROM Likes l WHERE l.shortId = '%s'", shortId);
-			Result<List<String>> likes = errorOrValue(okUser(shortId, password), DB.sql(query, String.class));
+				// Fetch from database if not in cache
+				var query = format("SELECT l.userId FROM Likes l WHERE l.shortId = '%s' AND %s ORDER BY l.userId LIMIT %d",
+						shortId, Cursor.greaterThan(after, "l.userId"), size + 1);
+				Result<Page<String>> likes = errorOrValue(okUser(shrt.getOwnerId(), password),
+						Page.of(DB.sql(query, String.class), size, id -> id, Cursor::encode));
 
-			// Store result in cache if found
-			if (likes.isOK()) {
-				jedis.set(cacheKey, JSON.encode(likes.value()));
+				// Store result in cache if found
+				if (likes.isOK() && cacheable) {
+					CacheKey.LIKES.set(jedis, shortId, likes.value());
+				}
+				return likes;
 			}
-			return likes;
-		}
+		}));
 	}
 
 	@Override
-	public Result<List<String>> getFeed(String userId, String password) {
-		Log.info(() -> format("getFeed : userId = %s, pwd = %s\n", userId, password));
+	public Result<Page<String>> getFeed(String userId, String password, String cursor, int pageSize) {
+		Logs.info(Log, "getFeed").with("userId", userId).with("pwd", password).with("cursor", cursor).with("pageSize", pageSize).log();
 
-		String cacheKey = "feed:" + userId;
-
-		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			// Try fetching feed from cache
-			String cachedFeed = jedis.get(cacheKey);
-			if (cachedFeed != null) {
-				return ok(JSON.decodeList(cachedFeed, String.class));
-			}
-
-			// Fetch from database if not in cache
-			final var QUERY_FMT = """
-					SELECT s.shortId, s.timestamp FROM Shorts s WHERE s.ownerId = '%s'
-					UNION
-					SELECT s.shortId, s.timestamp FROM Shorts s, Following f
-						WHERE
-							f.followee = s.ownerId AND f.follower = '%s'
-					ORDER BY s.timestamp DESC""";
-			Result<List<String>> feed = errorOrValue(okUser(userId, password),
-					DB.sql(format(QUERY_FMT, userId, userId), String.class));
-
-			// Store result in cache if found
-			if (feed.isOK()) {
-				jedis.set(cacheKey, JSON.encode(feed.value()));
-			}
-			return feed;
-		}
+		return errorOrResult(Cursor.parse(cursor), after -> {
+			return errorOrValue(okUser(userId, password), user -> timelines.feed(userId, after, Page.size(pageSize)));
+		});
 	}
 
 	protected Result<User> okUser(String userId, String pwd) {
 		return JavaUsers.getInstance().getUser(userId, pwd);
 	}
 
+	private Result<Void> liked(Likes l, boolean isLiked) {
+		var res = likeWriter.submit(l, isLiked);
+		if (res.isOK())
+			events.publish(new Event.Liked(l.getShortId(), l.getUserId(), l.getOwnerId(), isLiked));
+		return res;
+	}
+
 	private Result<Void> okUser(String userId) {
 		var res = okUser(userId, "");
 		if (res.error() == FORBIDDEN)
@@ -244,48 +284,197 @@ public class JavaShorts implements Shorts {
 
 	@Override
 	public Result<Void> deleteAllShorts(String userId, String password, String token) {
-		Log.info(() -> format("deleteAllShorts : userId = %s, password = %s, token = %s\n", userId, password, token));
+		Logs.info(Log, "deleteAllShorts").with("userId", userId).with("password", password).with("token", token).log();
 
 		if (!Token.isValid(token, userId))
 			return error(FORBIDDEN);
 
-		return DB.transaction(hibernate -> {
-			// Step 1: Retrieve all short IDs before deletion to clear the cache
-			var shortsQuery = format("SELECT s.shortId FROM Shorts s WHERE s.ownerId = '%s'", userId);
-			List<String> shortIds = DB.sql(String.class, shortsQuery);
+		try {
+			cascade.deleteAll(userId, progress -> {});
+			return ok();
+		} catch (RuntimeException x) {
+			Log.warning(() -> format("deleteAllShorts : userId = %s, failed: %s\n", userId, x.getMessage()));
+			return error(INTERNAL_ERROR);
+		}
+	}
 
-			// Step 2: Invalidate the cache for each short before deleting from the database
-			try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-				for (String shortId : shortIds) {
-					// Remove each short's cache and its likes cache
-					jedis.del("short:" + shortId);
-					jedis.del("likes:" + shortId);
-				}
-			}
-   
-			// Step 3: Delete all shorts for the user from the database
-			var query1 = format("DELETE FROM Shorts s WHERE s.ownerId = '%s'", userId);
-			hibernate.createQuery(query1, Short.class).executeUpdate();
+	/**
+	 * Rebuilds timelines from the relational database.
+	 */
+	static class DBTimelineSource implements Timelines.Source {
 
-			// Step 4: Delete all follow records associated with the user
-			var query2 = format("DELETE FROM Following f WHERE f.follower = '%s' OR f.followee = '%s'", userId, userId);
-			hibernate.createQuery(query2, Following.class).executeUpdate();
+		@Override
+		public List<Short> feed(String userId, Cursor after, int max) {
+			final var QUERY_FMT = """
+					SELECT * FROM (
+						SELECT * FROM Shorts s WHERE s.ownerId = '%s'
+						UNION
+						SELECT s.* FROM Shorts s, Following f
+							WHERE
+								f.followee = s.ownerId AND f.follower = '%s'
+					) feed
+					WHERE %s
+					ORDER BY feed.timestamp DESC, feed.shortId DESC LIMIT %d""";
+			var keyset = Cursor.olderThan(after, "feed.timestamp", "feed.shortId");
+			return DB.sql(format(QUERY_FMT, userId, userId, keyset, max), Short.class);
+		}
 
-			// Step 5: Delete all like records associated with the user
-			var query3 = format("DELETE FROM Likes l WHERE l.ownerId = '%s' OR l.userId = '%s'", userId, userId);
-			hibernate.createQuery(query3, Likes.class).executeUpdate();
+		@Override
+		public List<Short> posts(String userId, int max) {
+			var query = format("SELECT * FROM Shorts s WHERE s.ownerId = '%s' ORDER BY s.timestamp DESC LIMIT %d", userId, max);
+			return DB.sql(query, Short.class);
+		}
 
-			// Step 6: Invalidate other related cache entries
-			try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-				// Delete user's shorts cache
-				jedis.del("user_shorts:" + userId);
+		@Override
+		public List<String> followees(String userId) {
+			var query = format("SELECT f.followee FROM Following f WHERE f.follower = '%s'", userId);
+			return DB.sql(query, String.class);
+		}
 
-				// Delete cache for the user's feed
-				jedis.del("feed:" + userId);
+		@Override
+		public List<String> followers(String userId, String after, int size) {
+			return DB.sql(String.class, "SELECT f.follower FROM Following f WHERE f.followee = '%s' AND f.follower > '%s' ORDER BY f.follower LIMIT %d",
+					userId, after == null ? "" : after, size);
+		}
 
-				// Delete cache for followers
-				jedis.del("followers:" + userId);
-			}
-		});
+		@Override
+		public long followerCount(String userId) {
+			var query = format("SELECT count(*) FROM Following f WHERE f.followee = '%s'", userId);
+			return DB.sql(query, Long.class).get(0);
+		}
+	}
+
+	/**
+	 * Recounts likes from, and stores them into, the relational database.
+	 */
+	static class DBLikesSource implements LikeCounters.Source {
+
+		@Override
+		public long count(String shortId) {
+			var query = format("SELECT count(*) FROM Likes l WHERE l.shortId = '%s'", shortId);
+			return DB.sql(query, Long.class).get(0);
+		}
+
+		@Override
+		public boolean store(String shortId, long likes) {
+			var query = format("UPDATE Shorts SET totalLikes = %d WHERE shortId = '%s'", likes, shortId);
+			Result<Integer> res = DB.transaction(hibernate -> {
+				return ok(hibernate.createNativeQuery(query, Short.class).executeUpdate());
+			});
+			return res.isOK() && res.value() > 0;
+		}
+	}
+
+	/**
+	 * Writes likes to the relational database, in JDBC batches within a single transaction.
+	 */
+	static class DBLikesSink implements LikeWriter.Sink {
+		// Existing likes count 0
+		static final String INSERT = "INSERT INTO Likes (id, userId, shortId, ownerId) VALUES (?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+		// The same, for databases without ON CONFLICT, eg, the HSQLDB of ServiceBenchmark
+		static final String MERGE = """
+				MERGE INTO Likes l USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255))))
+				AS v (id, userId, shortId, ownerId) ON l.id = v.id
+				WHEN NOT MATCHED THEN INSERT (id, userId, shortId, ownerId) VALUES (v.id, v.userId, v.shortId, v.ownerId)""";
+		static final String DELETE = "DELETE FROM Likes WHERE id = ?";
+
+		@Override
+		public List<Result<Void>> write(List<LikeWriter.Op> ops) {
+			var outcomes = new ArrayList<Result<Void>>(ops.size());
+			Result<Void> res = DB.transaction(hibernate -> {
+				hibernate.doWork(connection -> {
+					var insert = connection.getMetaData().getDatabaseProductName().equals("PostgreSQL") ? INSERT : MERGE;
+					try (var inserts = connection.prepareStatement(insert); var deletes = connection.prepareStatement(DELETE)) {
+						for (var op : ops) {
+							var l = op.like();
+							if (op.isLiked()) {
+								inserts.setString(1, l.getId());
+								inserts.setString(2, l.getUserId());
+								inserts.setString(3, l.getShortId());
+								inserts.setString(4, l.getOwnerId());
+								inserts.addBatch();
+							} else {
+								deletes.setString(1, l.getId());
+								deletes.addBatch();
+							}
+						}
+						var inserted = inserts.executeBatch();
+						var deleted = deletes.executeBatch();
+
+						int i = 0, d = 0;
+						for (var op : ops) {
+							var count = op.isLiked() ? inserted[i++] : deleted[d++];
+							if (count > 0 || count == Statement.SUCCESS_NO_INFO)
+								outcomes.add(ok());
+							else
+								outcomes.add(error(op.isLiked() ? CONFLICT : NOT_FOUND));
+						}
+					}
+				});
+			});
+			// Nothing was written if the transaction failed, whatever the batches returned
+			if (!res.isOK())
+				return Collections.nCopies(ops.size(), error(res.error()));
+			return outcomes;
+		}
+	}
+
+	/**
+	 * Deletes the records of a user in JDBC batches.
+	 */
+	static class DBCleanupSource implements CascadingDelete.Source {
+
+		@Override
+		public List<String> shortsOf(String userId, String after, int size) {
+			return DB.sql(String.class, "SELECT s.shortId FROM Shorts s WHERE s.ownerId = '%s' AND s.shortId > '%s' ORDER BY s.shortId LIMIT %d",
+					userId, after == null ? "" : after, size);
+		}
+
+		@Override
+		public List<Likes> likesOf(String userId, String after, int size) {
+			return DB.sql(Likes.class, "SELECT * FROM Likes l WHERE (l.ownerId = '%s' OR l.userId = '%s') AND l.id > '%s' ORDER BY l.id LIMIT %d",
+					userId, userId, after == null ? "" : after, size);
+		}
+
+		@Override
+		public List<String> followsOf(String userId, String after, int size) {
+			return DB.sql(String.class, "SELECT f.id FROM Following f WHERE (f.follower = '%s' OR f.followee = '%s') AND f.id > '%s' ORDER BY f.id LIMIT %d",
+					userId, userId, after == null ? "" : after, size);
+		}
+
+		@Override
+		public int deleteShorts(List<String> shortIds) {
+			return delete("DELETE FROM Shorts WHERE shortId = ?", shortIds);
+		}
+
+		@Override
+		public int deleteLikes(List<String> likeIds) {
+			return delete("DELETE FROM Likes WHERE id = ?", likeIds);
+		}
+
+		@Override
+		public int deleteFollows(List<String> followIds) {
+			return delete("DELETE FROM Following WHERE id = ?", followIds);
+		}
+
+		// A failed batch is rolled back, so it throws, rather than report what it deleted before failing
+		private static int delete(String sql, List<String> ids) {
+			var deleted = new int[1];
+			Result<Void> res = DB.transaction(hibernate -> {
+				hibernate.doWork(connection -> {
+					try (var deletes = connection.prepareStatement(sql)) {
+						for (var id : ids) {
+							deletes.setString(1, id);
+							deletes.addBatch();
+						}
+						for (var count : deletes.executeBatch())
+							deleted[0] += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+					}
+				});
+			});
+			if (!res.isOK())
+				throw new IllegalStateException(format("cleanup failed: %s", res.error()));
+			return deleted[0];
+		}
 	}
-}
\ No newline at end of file
+}
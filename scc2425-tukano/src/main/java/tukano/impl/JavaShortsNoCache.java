@@ -9,11 +9,13 @@ import static tukano.api.Result.ok;
 import static tukano.api.Result.ErrorCode.BAD_REQUEST;
 import static tukano.api.Result.ErrorCode.FORBIDDEN;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
 import java.util.logging.Logger;
 
 import tukano.api.Blobs;
+import tukano.api.Page;
 import tukano.api.Result;
 import tukano.api.Short;
 import tukano.api.Shorts;
@@ -64,6 +66,27 @@ public class JavaShortsNoCache implements Shorts {
 		return errorOrValue( DB.getOne(shortId, Short.class), shrt -> shrt.copyWithLikes_And_Token( likes.get(0)));
 	}
 
+	@Override
+	public Result<List<Short>> hydrateShorts(List<String> shortIds) {
+		Log.info(() -> format("hydrateShorts : shortIds = %s\n", shortIds));
+
+		return errorOrResult( ShortsHydrator.hydrate(shortIds, null, missing -> {
+			return ok(DB.sql(format("SELECT * FROM Shorts s WHERE s.shortId IN (%s)", ShortsHydrator.sqlList(missing)), Short.class));
+		}), shorts -> {
+			if( shorts.isEmpty() )
+				return ok(shorts);
+
+			// Likes of all the shorts counted in a single query
+			var idList = ShortsHydrator.sqlList(shorts.stream().map(Short::getShortId).toList());
+			var query = format("SELECT l.shortId, count(*) FROM Likes l WHERE l.shortId IN (%s) GROUP BY l.shortId", idList);
+			var likes = new HashMap<String, Long>();
+			for( var row : DB.sql(query, Object[].class))
+				likes.put((String) row[0], ((Number) row[1]).longValue());
+
+			return ok(ShortsHydrator.withLikes(shorts, likes));
+		});
+	}
+
 	
 	@Override
 	public Result<Void> deleteShort(String shortId, String password) {
@@ -86,11 +109,15 @@ public class JavaShortsNoCache implements Shorts {
 	}
 
 	@Override
-	public Result<List<String>> getShorts(String userId) {
-		Log.info(() -> format("getShorts : userId = %s\n", userId));
-
-		var query = format("SELECT s.shortId FROM Shorts s WHERE s.ownerId = '%s'", userId);
-		return errorOrValue( okUser(userId), DB.sql( query, String.class));
+	public Result<Page<String>> getShorts(String userId, String cursor, int pageSize) {
+		Log.info(() -> format("getShorts : userId = %s, cursor = %s, pageSize = %s\n", userId, cursor, pageSize));
+
+		var size = Page.size(pageSize);
+		return errorOrResult( Cursor.parse(cursor), after -> {
+			var query = format("SELECT * FROM Shorts s WHERE s.ownerId = '%s' AND %s ORDER BY s.timestamp DESC, s.shortId DESC LIMIT %d", 
+					userId, Cursor.olderThan(after, "s.timestamp", "s.shortId"), size + 1);
+			return errorOrValue( okUser(userId), Page.of( DB.sql( query, Short.class), size, Short::getShortId, s -> Cursor.of(s).encode()));
+		});
 	}
 
 	@Override
@@ -105,11 +132,15 @@ public class JavaShortsNoCache implements Shorts {
 	}
 
 	@Override
-	public Result<List<String>> followers(String userId, String password) {
-		Log.info(() -> format("followers : userId = %s, pwd = %s\n", userId, password));
-
-		var query = format("SELECT f.follower FROM Following f WHERE f.followee = '%s'", userId);		
-		return errorOrValue( okUser(userId, password), DB.sql(query, String.class));
+	public Result<Page<String>> followers(String userId, String password, String cursor, int pageSize) {
+		Log.info(() -> format("followers : userId = %s, pwd = %s, cursor = %s, pageSize = %s\n", userId, password, cursor, pageSize));
+
+		var size = Page.size(pageSize);
+		return errorOrResult( Cursor.parse(cursor), after -> {
+			var query = format("SELECT f.follower FROM Following f WHERE f.followee = '%s' AND %s ORDER BY f.follower LIMIT %d", 
+					userId, Cursor.greaterThan(after, "f.follower"), size + 1);		
+			return errorOrValue( okUser(userId, password), Page.of( DB.sql(query, String.class), size, id -> id, Cursor::encode));
+		});
 	}
 
 	@Override
@@ -124,30 +155,39 @@ public class JavaShortsNoCache implements Shorts {
 	}
 
 	@Override
-	public Result<List<String>> likes(String shortId, String password) {
-		Log.info(() -> format("likes : shortId = %s, pwd = %s\n", shortId, password));
+	public Result<Page<String>> likes(String shortId, String password, String cursor, int pageSize) {
+		Log.info(() -> format("likes : shortId = %s, pwd = %s, cursor = %s, pageSize = %s\n", shortId, password, cursor, pageSize));
 
-		return errorOrResult( getShort(shortId), shrt -> {
+		var size = Page.size(pageSize);
+		return errorOrResult( Cursor.parse(cursor), after -> errorOrResult( getShort(shortId), shrt -> {
 			
-			var query = format("SELECT l.userId FROM Likes l WHERE l.shortId = '%s'", shortId);					
+			var query = format("SELECT l.userId FROM Likes l WHERE l.shortId = '%s' AND %s ORDER BY l.userId LIMIT %d", 
+					shortId, Cursor.greaterThan(after, "l.userId"), size + 1);
 			
-			return errorOrValue( okUser( shrt.getOwnerId(), password ), DB.sql(query, String.class));
-		});
+			return errorOrValue( okUser( shrt.getOwnerId(), password ), Page.of( DB.sql(query, String.class), size, id -> id, Cursor::encode));
+		}));
 	}
 
 	@Override
-	public Result<List<String>> getFeed(String userId, String password) {
-		Log.info(() -> format("getFeed : userId = %s, pwd = %s\n", userId, password));
+	public Result<Page<String>> getFeed(String userId, String password, String cursor, int pageSize) {
+		Log.info(() -> format("getFeed : userId = %s, pwd = %s, cursor = %s, pageSize = %s\n", userId, password, cursor, pageSize));
 
 		final var QUERY_FMT = """
-				SELECT s.shortId, s.timestamp FROM Shorts s WHERE	s.ownerId = '%s'				
-				UNION			
-				SELECT s.shortId, s.timestamp FROM Shorts s, Following f 
-					WHERE 
-						f.followee = s.ownerId AND f.follower = '%s' 
-				ORDER BY s.timestamp DESC""";
-
-		return errorOrValue( okUser( userId, password), DB.sql( format(QUERY_FMT, userId, userId), String.class));		
+				SELECT * FROM (
+					SELECT * FROM Shorts s WHERE s.ownerId = '%s'
+					UNION
+					SELECT s.* FROM Shorts s, Following f 
+						WHERE 
+							f.followee = s.ownerId AND f.follower = '%s' 
+				) feed
+				WHERE %s
+				ORDER BY feed.timestamp DESC, feed.shortId DESC LIMIT %d""";
+
+		var size = Page.size(pageSize);
+		return errorOrResult( Cursor.parse(cursor), after -> {
+			var query = format(QUERY_FMT, userId, userId, Cursor.olderThan(after, "feed.timestamp", "feed.shortId"), size + 1);
+			return errorOrValue( okUser( userId, password), Page.of( DB.sql( query, Short.class), size, Short::getShortId, s -> Cursor.of(s).encode()));
+		});
 	}
 		
 	protected Result<User> okUser( String userId, String pwd) {
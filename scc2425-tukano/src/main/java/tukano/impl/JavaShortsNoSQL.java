@@ -1,6 +1,7 @@
 package tukano.impl;
 
 import static java.lang.String.format;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static tukano.api.Result.error;
 import static tukano.api.Result.errorOrResult;
 import static tukano.api.Result.errorOrValue;
@@ -8,23 +9,45 @@ import static tukano.api.Result.errorOrVoid;
 import static tukano.api.Result.ok;
 import static tukano.api.Result.ErrorCode.BAD_REQUEST;
 import static tukano.api.Result.ErrorCode.FORBIDDEN;
+import static tukano.api.Result.ErrorCode.INTERNAL_ERROR;
+import static tukano.api.Result.ErrorCode.NOT_FOUND;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
+import com.azure.cosmos.models.CosmosBulkOperations;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.CosmosPatchOperations;
+import com.azure.cosmos.models.PartitionKey;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import cache.CacheKey;
+import cache.NearCache;
 import cache.RedisCache;
 import redis.clients.jedis.Jedis;
 import tukano.api.Blobs;
+import tukano.api.Page;
 import tukano.api.Result;
 import tukano.api.Short;
 import tukano.api.Shorts;
 import tukano.api.User;
+import tukano.impl.cleanup.CascadingDelete;
 import tukano.impl.data.Following;
 import tukano.impl.data.Likes;
+import tukano.impl.events.Event;
+import tukano.impl.events.Events;
+import tukano.impl.feed.Timelines;
+import tukano.impl.likes.LikeCounters;
+import tukano.impl.likes.LikeWriter;
 import tukano.impl.rest.TukanoRestServer;
 import utils.JSON;
+import utils.Logs;
 
+import tukano.db.CosmosAsyncDBLayer;
 import tukano.db.CosmosDBLayer; 
 
 
@@ -32,8 +55,17 @@ public class JavaShortsNoSQL implements Shorts {
 
 	private static Logger Log = Logger.getLogger(JavaShortsNoSQL.class.getName());
 
+	private static final TypeReference<Page<String>> PAGE_OF_IDS = new TypeReference<>() {};
+
 	private static Shorts instance;
 	private CosmosDBLayer dbLayer;
+	private CosmosAsyncDBLayer asyncDbLayer;
+	private Timelines timelines;
+	private LikeCounters likeCounters;
+	private LikeWriter likeWriter;
+	private CascadingDelete cascade;
+	private final NearCache cache = NearCache.getInstance();
+	private final Events events = Events.getInstance();
 
 	synchronized public static Shorts getInstance() {
 		if (instance == null)
@@ -43,11 +75,16 @@ public class JavaShortsNoSQL implements Shorts {
 
 	private JavaShortsNoSQL() {
 		dbLayer = CosmosDBLayer.getInstance();
+		asyncDbLayer = CosmosAsyncDBLayer.getInstance();
+		timelines = new Timelines(new CosmosTimelineSource());
+		likeCounters = new LikeCounters(new CosmosLikesSource());
+		likeWriter = new LikeWriter(new CosmosLikesSink(), likeCounters);
+		cascade = new CascadingDelete(new CosmosCleanupSource(), timelines, likeCounters);
 	}
 
 	@Override
 	public Result<Short> createShort(String userId, String password) {
-		Log.info(() -> format("createShort : userId = %s, pwd = %s\n", userId, password));
+		Logs.info(Log, "createShort").with("userId", userId).with("pwd", password).log();
 
 		return errorOrResult(okUser(userId, password), user -> {
 
@@ -55,56 +92,63 @@ public class JavaShortsNoSQL implements Shorts {
 			var blobUrl = format("%s/%s/%s", TukanoRestServer.serverURI, Blobs.NAME, shortId);
 			var shrt = new Short(shortId, userId, blobUrl);
 
-			return errorOrValue(dbLayer.insertShort(shrt), s -> s.copyWithLikes_And_Token(0));
+			return errorOrValue(dbLayer.insertShort(shrt), s -> {
+				timelines.published(s);
+				events.publish(new Event.ShortCreated(s));
+				return s.copyWithLikes_And_Token(0);
+			});
 		});
 	}
 
 	@Override
 	public Result<Short> getShort(String shortId) {
-		Log.info(() -> format("getShort : shortId = %s\n", shortId));
+		Logs.info(Log, "getShort").with("shortId", shortId).log();
+
+		// Likes are counted apart, as they change much more often than the short itself
+		return errorOrValue(shortAsync(shortId).join(), shrt -> shrt.copyWithLikes_And_Token(likeCounters.get(shrt)));
+	}
 
+	/*
+	 * Looks up the short, as stored, without waiting for the database.
+	 */
+	private CompletableFuture<Result<Short>> shortAsync(String shortId) {
 		if (shortId == null)
-			return error(BAD_REQUEST);
-
-		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			// Try fetching the short from cache
-			var shortKey = "short:" + shortId;
-			String cachedShort = jedis.get(shortKey);
-			if (cachedShort != null) {
-				Short short1 = JSON.decode(cachedShort, Short.class);
-				return ok(short1);
-			}
+			return completedFuture(error(BAD_REQUEST));
 
-			var query = format("SELECT * FROM Likes l WHERE l.shortId = '%s'", shortId);
-			var likes = dbLayer.queryLikes(Likes.class, query).value().size();
+		// From the cache, or else loaded once (across replicas) from the database
+		return cache.getOrLoadAsync(CacheKey.SHORT.key(shortId), Short.class, () -> asyncDbLayer.getShort(shortId, Short.class));
+	}
 
-			return errorOrValue( (Result<Short>) dbLayer.getShort(shortId, Short.class), shrt -> {
-				var resultShort = shrt.copyWithLikes_And_Token(likes);
-				jedis.set(shortKey, JSON.encode(resultShort)); // Populate cache with the fetched user
-				return resultShort;
-			});
-		}
+	@Override
+	public Result<List<Short>> hydrateShorts(List<String> shortIds) {
+		Logs.info(Log, "hydrateShorts").with("shortIds", shortIds).log();
+
+		return errorOrValue(ShortsHydrator.hydrate(shortIds, cache, missing -> {
+			var idList = missing.stream().map(JSON::encode).collect(Collectors.joining(","));
+			return dbLayer.queryShorts(Short.class, format("SELECT * FROM Shorts s WHERE s.id IN (%s)", idList));
+		}), shorts -> ShortsHydrator.withLikes(shorts, likeCounters.get(shorts)));
 	}
 
 	@Override
 	public Result<Void> deleteShort(String shortId, String password) {
-		Log.info(() -> format("deleteShort : shortId = %s, pwd = %s\n", shortId, password));
+		Logs.info(Log, "deleteShort").with("shortId", shortId).with("pwd", password).log();
 
 		return errorOrResult(getShort(shortId), shrt -> {
 
 			return errorOrResult(okUser(shrt.getOwnerId(), password), user -> {
 
-					dbLayer.deleteShort(shrt);
+					// Likes first, so that the short is still there to retry if they are not all deleted
+					var likes = deleteLikesOf(shortId);
+					if (!likes.isOK())
+						return likes;
 
-					var query = format("DELETE Likes l WHERE l.shortId = '%s'", shortId);
-					dbLayer.queryLikes(Likes.class,query);
+					dbLayer.deleteShort(shrt);
 
 					JavaBlobs.getInstance().delete(shrt.getBlobUrl(), Token.get());
 
-					// Invalidate cache for deleted short
-					try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-						jedis.del("short:" + shortId);
-					}
+					likeCounters.removed(List.of(shortId));
+					timelines.removed(shrt);
+					events.publish(new Event.ShortDeleted(shrt));
 
 					return ok();
 			});
@@ -112,88 +156,119 @@ public class JavaShortsNoSQL implements Shorts {
 	}
 
 	@Override
-	public Result<List<String>> getShorts(String userId) {
-		Log.info(() -> format("getShorts : userId = %s\n", userId));
-
-		var cacheKey = "user_shorts:" + userId;
-
-		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			// Attempt to user's shorts from cache
-			var cachedShorts = jedis.get(cacheKey);
-			if (cachedShorts != null) {
-				return ok(JSON.decodeList(cachedShorts, String.class));
+	public Result<Page<String>> getShorts(String userId, String cursor, int pageSize) {
+		Logs.info(Log, "getShorts").with("userId", userId).with("cursor", cursor).with("pageSize", pageSize).log();
+
+		var size = Page.size(pageSize);
+
+		return errorOrResult(Cursor.parseToken(cursor), after -> {
+			// Only the first page, with the default size, is cached
+			var cacheable = after == null && size == Page.DEFAULT_SIZE;
+
+			try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+				// Attempt to user's shorts from cache
+				var cachedShorts = cacheable ? CacheKey.USER_SHORTS.get(jedis, userId, PAGE_OF_IDS) : null;
+				if (cachedShorts != null) {
+					return ok(cachedShorts);
+				}
+
+				// The user is looked up while the shorts are queried
+				var user = okUserAsync(userId, "");
+
+				var query = format("SELECT VALUE s.id FROM Shorts s WHERE s.ownerId = '%s' ORDER BY s.timestamp DESC", userId);
+				var shortIds = continued(dbLayer.queryShortsPage(String.class, query, Cursor.token(after), size));
+				if (shortIds.isOK() && cacheable)
+					CacheKey.USER_SHORTS.set(jedis, userId, shortIds.value());
+				return errorOrValue(okUser(user.join()), shortIds);
 			}
-
-			var query = format("SELECT s.shortId FROM Shorts s WHERE s.ownerId = '%s'", userId);
-			var shortIds = dbLayer.queryShorts(String.class, query);
-			jedis.set(cacheKey, JSON.encode(shortIds));
-			return errorOrValue(okUser(userId), shortIds);
-		}
+		});
 	}
 
 	@Override
 	public Result<Void> follow(String userId1, String userId2, boolean isFollowing, String password) {
-		Log.info(() -> format("follow : userId1 = %s, userId2 = %s, isFollowing = %s, pwd = %s\n", userId1, userId2,
-				isFollowing, password));
+		Logs.info(Log, "follow").with("userId1", userId1).with("userId2", userId2).with("isFollowing", isFollowing).with("pwd", password).log();
+
+		var followee = okUserAsync(userId2, "");
 
 		return errorOrResult(okUser(userId1, password), user -> {
 			var f = new Following(userId1, userId2);
-			return errorOrVoid(okUser(userId2), isFollowing ? dbLayer.insertFollow(f) : dbLayer.deleteFollow(f));
+			var res = errorOrVoid(okUser(followee.join()), isFollowing ? dbLayer.insertFollow(f) : dbLayer.deleteFollow(f));
+			if (res.isOK()) {
+				timelines.followeesChanged(userId1);
+				events.publish(new Event.Followed(userId1, userId2, isFollowing));
+			}
+			return res;
 		});
 	}
 
 	@Override
-	public Result<List<String>> followers(String userId, String password) {
-		Log.info(() -> format("followers : userId = %s, pwd = %s\n", userId, password));
-		
-		var query = format("SELECT f.follower FROM Following f WHERE f.followee = '%s'", userId);
-		return errorOrValue(okUser(userId, password), dbLayer.queryFollows(String.class, query));
+	public Result<Page<String>> followers(String userId, String password, String cursor, int pageSize) {
+		Logs.info(Log, "followers").with("userId", userId).with("pwd", password).with("cursor", cursor).with("pageSize", pageSize).log();
+
+		return errorOrResult(Cursor.parseToken(cursor), after -> {
+			var query = format("SELECT VALUE f.follower FROM Following f WHERE f.followee = '%s'", userId);
+			return errorOrValue(okUser(userId, password),
+					continued(dbLayer.queryFollowsPage(String.class, query, Cursor.token(after), Page.size(pageSize))));
+		});
 	}
 
 	@Override
 	public Result<Void> like(String shortId, String userId, boolean isLiked, String password) {
-		Log.info(() -> format("like : shortId = %s, userId = %s, isLiked = %s, pwd = %s\n", shortId, userId, isLiked,
-				password));
+		Logs.info(Log, "like").with("shortId", shortId).with("userId", userId).with("isLiked", isLiked).with("pwd", password).log();
 
-		return errorOrResult(getShort(shortId), shrt -> {
-			var l = new Likes(userId, shortId, shrt.getOwnerId());
-			return errorOrVoid(okUser(userId, password), isLiked ? dbLayer.insertLike(l) : dbLayer.deleteLike(l));
+		// The short and the user are looked up concurrently
+		var shrt = shortAsync(shortId);
+		var user = okUserAsync(userId, password);
+
+		return errorOrResult(shrt.join(), s -> {
+			var l = new Likes(userId, shortId, s.getOwnerId());
+			return errorOrResult(user.join(), u -> liked(l, isLiked));
 		});
 	}
 
 	@Override
-	public Result<List<String>> likes(String shortId, String password) {
-		Log.info(() -> format("likes : shortId = %s, pwd = %s\n", shortId, password));
+	public Result<Page<String>> likes(String shortId, String password, String cursor, int pageSize) {
+		Logs.info(Log, "likes").with("shortId", shortId).with("pwd", password).with("cursor", cursor).with("pageSize", pageSize).log();
 
-		return errorOrResult(getShort(shortId), shrt -> {
+		return errorOrResult(Cursor.parseToken(cursor), after -> errorOrResult(getShort(shortId), shrt -> {
 
-			var query = format("SELECT l.userId FROM Likes l WHERE l.shortId = '%s'", shortId);
+			var query = format("SELECT VALUE l.userId FROM Likes l WHERE l.shortId = '%s'", shortId);
 
-			return errorOrValue(okUser(shrt.getOwnerId(), password), dbLayer.queryLikes(String.class, query));
-		});
+			return errorOrValue(okUser(shrt.getOwnerId(), password),
+					continued(dbLayer.queryLikesPage(String.class, query, Cursor.token(after), Page.size(pageSize))));
+		}));
 	}
 
 	@Override
-	public Result<List<String>> getFeed(String userId, String password) {
-		Log.info(() -> format("getFeed : userId = %s, pwd = %s\n", userId, password));
-
-		final var QUERY_FMT = """
-				SELECT s.shortId, s.timestamp FROM Shorts s WHERE	s.ownerId = '%s'
-				UNION
-				SELECT s.shortId, s.timestamp FROM Shorts s, Following f
-					WHERE
-						f.followee = s.ownerId AND f.follower = '%s'
-				ORDER BY s.timestamp DESC""";
+	public Result<Page<String>> getFeed(String userId, String password, String cursor, int pageSize) {
+		Logs.info(Log, "getFeed").with("userId", userId).with("pwd", password).with("cursor", cursor).with("pageSize", pageSize).log();
 
-		return errorOrValue(okUser(userId, password), dbLayer.queryShorts(String.class, format(QUERY_FMT, userId, userId)));
+		return errorOrResult(Cursor.parse(cursor), after -> {
+			return errorOrValue(okUser(userId, password), user -> timelines.feed(userId, after, Page.size(pageSize)));
+		});
 	}
 
 	protected Result<User> okUser(String userId, String pwd) {
 		return JavaUsersNoSQL.getInstance().getUser(userId, pwd);
 	}
 
+	private CompletableFuture<Result<User>> okUserAsync(String userId, String pwd) {
+		return ((JavaUsersNoSQL) JavaUsersNoSQL.getInstance()).getUserAsync(userId, pwd);
+	}
+
+	private Result<Void> liked(Likes l, boolean isLiked) {
+		var res = likeWriter.submit(l, isLiked);
+		if (res.isOK())
+			events.publish(new Event.Liked(l.getShortId(), l.getUserId(), l.getOwnerId(), isLiked));
+		return res;
+	}
+
 	private Result<Void> okUser(String userId) {
-		var res = okUser(userId, "");
+		return okUser(okUser(userId, ""));
+	}
+
+	// Whether the user exists, regardless of the password
+	private Result<Void> okUser(Result<User> res) {
 		if (res.error() == FORBIDDEN)
 			return ok();
 		else
@@ -202,24 +277,197 @@ public class JavaShortsNoSQL implements Shorts {
 
 	@Override
 	public Result<Void> deleteAllShorts(String userId, String password, String token) {
-		Log.info(() -> format("deleteAllShorts : userId = %s, password = %s, token = %s\n", userId, password, token));
+		Logs.info(Log, "deleteAllShorts").with("userId", userId).with("password", password).with("token", token).log();
 
 		if (!Token.isValid(token, userId))
 			return error(FORBIDDEN);
 
-			// delete shorts
-			var query1 = format("DELETE Shorts s WHERE s.ownerId = '%s'", userId);
-			dbLayer.queryShorts(Short.class, query1);
+		try {
+			cascade.deleteAll(userId, progress -> {});
+			return ok();
+		} catch (RuntimeException x) {
+			Log.warning(() -> format("deleteAllShorts : userId = %s, failed: %s\n", userId, x.getMessage()));
+			return error(INTERNAL_ERROR);
+		}
+	}
 
-			// delete follows
-			var query2 = format("DELETE Following f WHERE f.follower = '%s' OR f.followee = '%s'", userId, userId);
-			dbLayer.queryFollows(Following.class, query2);
+	/*
+	 * Deletes the likes of the short, a page at a time, with bulk operations, as CosmosDB
+	 * has no DELETE statement.
+	 */
+	private Result<Void> deleteLikesOf(String shortId) {
+		var after = "";
+		for (;;) {
+			var query = format("SELECT VALUE l.id FROM Likes l WHERE l.shortId = '%s' AND l.id > '%s' ORDER BY l.id OFFSET 0 LIMIT %d",
+					shortId, after, CascadingDelete.PAGE_SIZE);
+			var likeIds = dbLayer.queryLikes(String.class, query);
+			if (!likeIds.isOK())
+				return error(likeIds.error());
+			if (likeIds.value().isEmpty())
+				return ok();
+
+			var deleted = dbLayer.bulkLikes(CosmosCleanupSource.deletes(likeIds.value()));
+			if (!deleted.isOK())
+				return error(deleted.error());
+			for (var code : deleted.value())
+				if (code != Result.ErrorCode.OK && code != NOT_FOUND)
+					return error(code);
+
+			after = likeIds.value().get(likeIds.value().size() - 1);
+		}
+	}
 
-			// delete likes
-			var query3 = format("DELETE Likes l WHERE l.ownerId = '%s' OR l.userId = '%s'", userId, userId);
-			dbLayer.queryLikes(Likes.class, query3);
+	/*
+	 * Wraps the continuation token returned by CosmosDB into the cursor handed to clients.
+	 */
+	private static Result<Page<String>> continued(Result<Page<String>> res) {
+		return errorOrValue(res, page -> new Page<>(page.getItems(), Cursor.encode(page.getNext())));
+	}
 
-			return ok();
+	/**
+	 * Rebuilds timelines from CosmosDB, which does not support joins across containers.
+	 */
+	class CosmosTimelineSource implements Timelines.Source {
+
+		// Ordering by timestamp and id requires a composite index on the shorts container
+		@Override
+		public List<Short> feed(String userId, Cursor after, int max) {
+			var owners = new ArrayList<>(followees(userId));
+			owners.add(userId);
+
+			var ownerList = owners.stream().map(id -> format("'%s'", id)).collect(Collectors.joining(","));
+			var query = format("SELECT * FROM Shorts s WHERE s.ownerId IN (%s) AND %s ORDER BY s.timestamp DESC, s.id DESC OFFSET 0 LIMIT %d",
+					ownerList, Cursor.olderThan(after, "s.timestamp", "s.id"), max);
+			var res = dbLayer.queryShorts(Short.class, query);
+			return res.isOK() ? res.value() : List.of();
+		}
+
+		@Override
+		public List<Short> posts(String userId, int max) {
+			var query = format("SELECT * FROM Shorts s WHERE s.ownerId = '%s' ORDER BY s.timestamp DESC OFFSET 0 LIMIT %d", userId, max);
+			var res = dbLayer.queryShorts(Short.class, query);
+			return res.isOK() ? res.value() : List.of();
+		}
+
+		@Override
+		public List<String> followees(String userId) {
+			var query = format("SELECT VALUE f.followee FROM Following f WHERE f.follower = '%s'", userId);
+			var res = dbLayer.queryFollows(String.class, query);
+			return res.isOK() ? res.value() : List.of();
+		}
+
+		@Override
+		public List<String> followers(String userId, String after, int size) {
+			var query = format("SELECT VALUE f.follower FROM Following f WHERE f.followee = '%s' AND f.follower > '%s' ORDER BY f.follower OFFSET 0 LIMIT %d",
+					userId, after == null ? "" : after, size);
+			var res = dbLayer.queryFollows(String.class, query);
+			return res.isOK() ? res.value() : List.of();
+		}
+
+		@Override
+		public long followerCount(String userId) {
+			var query = format("SELECT VALUE COUNT(1) FROM Following f WHERE f.followee = '%s'", userId);
+			var res = dbLayer.queryFollows(Long.class, query);
+			return res.isOK() ? res.value().get(0) : 0;
+		}
+	}
+
+	/**
+	 * Recounts likes from, and stores them into, CosmosDB.
+	 */
+	class CosmosLikesSource implements LikeCounters.Source {
+
+		@Override
+		public long count(String shortId) {
+			var query = format("SELECT VALUE COUNT(1) FROM Likes l WHERE l.shortId = '%s'", shortId);
+			return dbLayer.queryLikes(Long.class, query).value().get(0);
+		}
+
+		// Patches only totalLikes, leaving the rest of the document as is
+		@Override
+		public boolean store(String shortId, long likes) {
+			var res = dbLayer.patchShort(shortId, CosmosPatchOperations.create().set("/totalLikes", likes), Short.class);
+			return res.error() != NOT_FOUND;
+		}
+	}
+
+	/**
+	 * Writes likes to CosmosDB, as bulk operations.
+	 */
+	class CosmosLikesSink implements LikeWriter.Sink {
+
+		@Override
+		public List<Result<Void>> write(List<LikeWriter.Op> ops) {
+			var bulk = ops.stream().map(op -> {
+				var l = op.like();
+				var pk = new PartitionKey(l.getId());
+				CosmosItemOperation item = op.isLiked() ? CosmosBulkOperations.getCreateItemOperation(l, pk)
+						: CosmosBulkOperations.getDeleteItemOperation(l.getId(), pk);
+				return item;
+			}).toList();
+
+			var res = dbLayer.bulkLikes(bulk);
+			if (!res.isOK())
+				return ops.stream().map(__ -> Result.<Void>error(res.error())).toList();
+
+			return res.value().stream().map(code -> code == Result.ErrorCode.OK ? Result.<Void>ok() : Result.<Void>error(code)).toList();
+		}
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Deletes the records of a user with bulk operations, as CosmosDB has no
+	 * DELETE statement.
+	 */
+	class CosmosCleanupSource implements CascadingDelete.Source {
+
+		@Override
+		public List<String> shortsOf(String userId, String after, int size) {
+			var query = format("SELECT VALUE s.id FROM Shorts s WHERE s.ownerId = '%s' AND s.id > '%s' ORDER BY s.id OFFSET 0 LIMIT %d",
+					userId, after == null ? "" : after, size);
+			return orThrow(dbLayer.queryShorts(String.class, query));
+		}
+
+		@Override
+		public List<Likes> likesOf(String userId, String after, int size) {
+			var query = format("SELECT * FROM Likes l WHERE (l.ownerId = '%s' OR l.userId = '%s') AND l.id > '%s' ORDER BY l.id OFFSET 0 LIMIT %d",
+					userId, userId, after == null ? "" : after, size);
+			return orThrow(dbLayer.queryLikes(Likes.class, query));
+		}
+
+		@Override
+		public List<String> followsOf(String userId, String after, int size) {
+			var query = format("SELECT VALUE f.id FROM Following f WHERE (f.follower = '%s' OR f.followee = '%s') AND f.id > '%s' ORDER BY f.id OFFSET 0 LIMIT %d",
+					userId, userId, after == null ? "" : after, size);
+			return orThrow(dbLayer.queryFollows(String.class, query));
+		}
+
+		@Override
+		public int deleteShorts(List<String> shortIds) {
+			return deleted(dbLayer.bulkShorts(deletes(shortIds)));
+		}
+
+		@Override
+		public int deleteLikes(List<String> likeIds) {
+			return deleted(dbLayer.bulkLikes(deletes(likeIds)));
+		}
+
+		@Override
+		public int deleteFollows(List<String> followIds) {
+			return deleted(dbLayer.bulkFollows(deletes(followIds)));
+		}
+
+		private static List<CosmosItemOperation> deletes(List<String> ids) {
+			return ids.stream().map(id -> CosmosBulkOperations.getDeleteItemOperation(id, new PartitionKey(id))).toList();
+		}
+
+		private static int deleted(Result<List<Result.ErrorCode>> res) {
+			return (int) orThrow(res).stream().filter(code -> code == Result.ErrorCode.OK).count();
+		}
+
+		private static <T> T orThrow(Result<T> res) {
+			if (res.isOK())
+				return res.value();
+			throw new IllegalStateException(format("cleanup failed: %s", res.error()));
+		}
+	}
+}
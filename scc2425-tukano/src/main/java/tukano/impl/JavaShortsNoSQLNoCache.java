@@ -9,11 +9,14 @@ import static tukano.api.Result.ok;
 import static tukano.api.Result.ErrorCode.BAD_REQUEST;
 import static tukano.api.Result.ErrorCode.FORBIDDEN;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import tukano.api.Blobs;
+import tukano.api.Page;
 import tukano.api.Result;
 import tukano.api.Short;
 import tukano.api.Shorts;
@@ -22,6 +25,7 @@ import tukano.impl.data.Following;
 import tukano.impl.data.Likes;
 import tukano.impl.rest.TukanoRestServer;
 import tukano.db.CosmosDBLayer;
+import utils.JSON;
 
 public class JavaShortsNoSQLNoCache implements Shorts {
 
@@ -60,14 +64,39 @@ public class JavaShortsNoSQLNoCache implements Shorts {
         if (shortId == null)
             return error(BAD_REQUEST);
 
-        var query = format("SELECT * FROM Likes l WHERE l.shortId = '%s'", shortId);
-        var likes = dbLayer.queryLikes(Likes.class, query).value().size();
+        // Counted by CosmosDB, instead of transferring every like
+        var query = format("SELECT VALUE COUNT(1) FROM Likes l WHERE l.shortId = '%s'", shortId);
+        var likes = dbLayer.queryLikes(Long.class, query).value().get(0);
 
         return errorOrValue((Result<Short>) dbLayer.getShort(shortId, Short.class), shrt -> {
             return shrt.copyWithLikes_And_Token(likes);
         });
     }
 
+    @Override
+    public Result<List<Short>> hydrateShorts(List<String> shortIds) {
+        Log.info(() -> format("hydrateShorts : shortIds = %s\n", shortIds));
+
+        return errorOrResult(ShortsHydrator.hydrate(shortIds, null, missing -> {
+            var idList = missing.stream().map(JSON::encode).collect(Collectors.joining(","));
+            return dbLayer.queryShorts(Short.class, format("SELECT * FROM Shorts s WHERE s.id IN (%s)", idList));
+        }), shorts -> {
+            if (shorts.isEmpty())
+                return ok(shorts);
+
+            // Likes of all the shorts counted by CosmosDB, in a single query
+            var idList = shorts.stream().map(s -> JSON.encode(s.getShortId())).collect(Collectors.joining(","));
+            var query = format("SELECT l.shortId, COUNT(1) AS likes FROM Likes l WHERE l.shortId IN (%s) GROUP BY l.shortId", idList);
+            return errorOrValue(dbLayer.queryLikes(LikesCount.class, query), counts -> {
+                var likes = counts.stream().collect(Collectors.toMap(LikesCount::shortId, LikesCount::likes));
+                return ShortsHydrator.withLikes(shorts, likes);
+            });
+        });
+    }
+
+    record LikesCount(String shortId, long likes) {
+    }
+
     @Override
     public Result<Void> deleteShort(String shortId, String password) {
         Log.info(() -> format("deleteShort : shortId = %s, pwd = %s\n", shortId, password));
@@ -86,12 +115,14 @@ public class JavaShortsNoSQLNoCache implements Shorts {
     }
 
     @Override
-    public Result<List<String>> getShorts(String userId) {
-        Log.info(() -> format("getShorts : userId = %s\n", userId));
+    public Result<Page<String>> getShorts(String userId, String cursor, int pageSize) {
+        Log.info(() -> format("getShorts : userId = %s, cursor = %s, pageSize = %s\n", userId, cursor, pageSize));
 
-        var query = format("SELECT s.shortId FROM Shorts s WHERE s.ownerId = '%s'", userId);
-        var shortIds = dbLayer.queryShorts(String.class, query);
-        return errorOrValue(okUser(userId), shortIds);
+        return errorOrResult(Cursor.parseToken(cursor), after -> {
+            var query = format("SELECT VALUE s.id FROM Shorts s WHERE s.ownerId = '%s' ORDER BY s.timestamp DESC", userId);
+            var shortIds = dbLayer.queryShortsPage(String.class, query, Cursor.token(after), Page.size(pageSize));
+            return errorOrValue(okUser(userId), continued(shortIds));
+        });
     }
 
     @Override
@@ -106,11 +137,14 @@ public class JavaShortsNoSQLNoCache implements Shorts {
     }
 
     @Override
-    public Result<List<String>> followers(String userId, String password) {
-        Log.info(() -> format("followers : userId = %s, pwd = %s\n", userId, password));
+    public Result<Page<String>> followers(String userId, String password, String cursor, int pageSize) {
+        Log.info(() -> format("followers : userId = %s, pwd = %s, cursor = %s, pageSize = %s\n", userId, password, cursor, pageSize));
 
-        var query = format("SELECT f.follower FROM Following f WHERE f.followee = '%s'", userId);
-        return errorOrValue(okUser(userId, password), dbLayer.queryFollows(String.class, query));
+        return errorOrResult(Cursor.parseToken(cursor), after -> {
+            var query = format("SELECT VALUE f.follower FROM Following f WHERE f.followee = '%s'", userId);
+            return errorOrValue(okUser(userId, password),
+                    continued(dbLayer.queryFollowsPage(String.class, query, Cursor.token(after), Page.size(pageSize))));
+        });
     }
 
     @Override
@@ -125,28 +159,42 @@ public class JavaShortsNoSQLNoCache implements Shorts {
     }
 
     @Override
-    public Result<List<String>> likes(String shortId, String password) {
-        Log.info(() -> format("likes : shortId = %s, pwd = %s\n", shortId, password));
-
-        return errorOrResult(getShort(shortId), shrt -> {
-            var query = format("SELECT l.userId FROM Likes l WHERE l.shortId = '%s'", shortId);
-            return errorOrValue(okUser(shrt.getOwnerId(), password), dbLayer.queryLikes(String.class, query));
-        });
+    public Result<Page<String>> likes(String shortId, String password, String cursor, int pageSize) {
+        Log.info(() -> format("likes : shortId = %s, pwd = %s, cursor = %s, pageSize = %s\n", shortId, password, cursor, pageSize));
+
+        return errorOrResult(Cursor.parseToken(cursor), after -> errorOrResult(getShort(shortId), shrt -> {
+            var query = format("SELECT VALUE l.userId FROM Likes l WHERE l.shortId = '%s'", shortId);
+            return errorOrValue(okUser(shrt.getOwnerId(), password),
+                    continued(dbLayer.queryLikesPage(String.class, query, Cursor.token(after), Page.size(pageSize))));
+        }));
     }
 
+    // Ordering by timestamp and id requires a composite index on the shorts container
     @Override
-    public Result<List<String>> getFeed(String userId, String password) {
-        Log.info(() -> format("getFeed : userId = %s, pwd = %s\n", userId, password));
-
-        final var QUERY_FMT = """
-                SELECT s.shortId, s.timestamp FROM Shorts s WHERE s.ownerId = '%s'
-                UNION
-                SELECT s.shortId, s.timestamp FROM Shorts s, Following f
-                    WHERE
-                        f.followee = s.ownerId AND f.follower = '%s'
-                ORDER BY s.timestamp DESC""";
-
-        return errorOrValue(okUser(userId, password), dbLayer.queryShorts(String.class, format(QUERY_FMT, userId, userId)));
+    public Result<Page<String>> getFeed(String userId, String password, String cursor, int pageSize) {
+        Log.info(() -> format("getFeed : userId = %s, pwd = %s, cursor = %s, pageSize = %s\n", userId, password, cursor, pageSize));
+
+        var size = Page.size(pageSize);
+        return errorOrResult(Cursor.parse(cursor), after -> errorOrResult(okUser(userId, password), user -> {
+            var followees = dbLayer.queryFollows(String.class, format("SELECT VALUE f.followee FROM Following f WHERE f.follower = '%s'", userId));
+            if (!followees.isOK())
+                return error(followees.error());
+
+            var owners = new ArrayList<>(followees.value());
+            owners.add(userId);
+            var ownerList = owners.stream().map(id -> format("'%s'", id)).collect(Collectors.joining(","));
+
+            var query = format("SELECT * FROM Shorts s WHERE s.ownerId IN (%s) AND %s ORDER BY s.timestamp DESC, s.id DESC OFFSET 0 LIMIT %d",
+                    ownerList, Cursor.olderThan(after, "s.timestamp", "s.id"), size + 1);
+            return errorOrValue(dbLayer.queryShorts(Short.class, query), shorts -> Page.of(shorts, size, Short::getShortId, s -> Cursor.of(s).encode()));
+        }));
+    }
+
+    /*
+     * Wraps the continuation token returned by CosmosDB into the cursor handed to clients.
+     */
+    private static Result<Page<String>> continued(Result<Page<String>> res) {
+        return errorOrValue(res, page -> new Page<>(page.getItems(), Cursor.encode(page.getNext())));
     }
 
     protected Result<User> okUser(String userId, String pwd) {
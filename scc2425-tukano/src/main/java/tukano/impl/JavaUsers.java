@@ -9,16 +9,18 @@ import static tukano.api.Result.ErrorCode.BAD_REQUEST;
 import static tukano.api.Result.ErrorCode.FORBIDDEN;
 
 import java.util.List;
-import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
-import cache.RedisCache;
-import redis.clients.jedis.Jedis;
+import cache.CacheKey;
+import cache.NearCache;
 import tukano.api.Result;
 import tukano.api.User;
 import tukano.api.Users;
+import tukano.impl.cleanup.UserCleanup;
+import tukano.impl.events.Event;
+import tukano.impl.events.Events;
 import utils.DB;
-import utils.JSON;
+import utils.Logs;
 
 public class JavaUsers implements Users {
 
@@ -26,6 +28,9 @@ public class JavaUsers implements Users {
 
 	private static Users instance;
 
+	private final NearCache cache = NearCache.getInstance();
+	private final Events events = Events.getInstance();
+
 	synchronized public static Users getInstance() {
 		if (instance == null)
 			instance = new JavaUsers();
@@ -33,11 +38,12 @@ public class JavaUsers implements Users {
 	}
 
 	private JavaUsers() {
+		UserCleanup.getInstance().start(UserCleanup.steps(JavaShorts::getInstance), userId -> DB.getOne(userId, User.class));
 	}
 
 	@Override
 	public Result<String> createUser(User user) {
-		Log.info(() -> format("createUser : %s\n", user));
+		Logs.info(Log, "createUser").with("user", user).log();
 
 		if (badUserInfo(user))
 			return error(BAD_REQUEST);
@@ -47,80 +53,54 @@ public class JavaUsers implements Users {
 
 	@Override
 	public Result<User> getUser(String userId, String pwd) {
-		Log.info(() -> format("getUser : userId = %s, pwd = %s\n", userId, pwd));
+		Logs.info(Log, "getUser").with("userId", userId).with("pwd", pwd).log();
 
 		if (userId == null)
 			return error(BAD_REQUEST);
-		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			var userKey = "user:" + userId;
-			String cachedUser = jedis.get(userKey);
-			if (cachedUser != null) {
-				User user = JSON.decode(cachedUser, User.class);
-				if (user.getPwd().equals(pwd)) {
-					return ok(user);
-				} else {
-					return error(FORBIDDEN);
-				}
-			}
-
+		var userKey = CacheKey.USER.key(userId);
+		var user = cache.get(userKey, User.class);
+		if (user == null) {
 			Result<User> dbResult = DB.getOne(userId, User.class);
-			if (dbResult.isOK()) {
-				User user = dbResult.value();
-				if (user.getPwd().equals(pwd)) {
-					jedis.set(userKey, JSON.encode(user));
-					return ok(user);
-				} else {
-					return error(FORBIDDEN);
-				}
-			}
-
-			return dbResult;
+			if (!dbResult.isOK())
+				return dbResult;
+
+			user = dbResult.value();
+			cache.put(userKey, user);
 		}
+		return user.getPwd().equals(pwd) ? ok(user) : error(FORBIDDEN);
 	}
 
 	@Override
 	public Result<User> updateUser(String userId, String pwd, User other) {
-		Log.info(() -> format("updateUser : userId = %s, pwd = %s, user: %s\n", userId, pwd, other));
+		Logs.info(Log, "updateUser").with("userId", userId).with("pwd", pwd).with("user", other).log();
 
 		if (badUpdateUserInfo(userId, pwd, other))
 			return error(BAD_REQUEST);
 
-		return errorOrResult(validatedUserOrError(DB.getOne(userId, User.class), pwd), user -> {
+		// The user is checked against the cache, and the cache updated in place
+		return errorOrResult(getUser(userId, pwd), user -> {
 			Result<User> updatedUser = DB.updateOne(user.updateFrom(other));
-			if (updatedUser.isOK()) {
-				try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-					var userKey = "user:" + userId;
-					jedis.del(userKey); // Invalidate cache for updated user
-				}
-			}
+			if (updatedUser.isOK())
+				events.publish(new Event.UserUpdated(updatedUser.value()));
 			return updatedUser;
 		});
 	}
 
 	@Override
 	public Result<User> deleteUser(String userId, String pwd) {
-		Log.info(() -> format("deleteUser : userId = %s, pwd = %s\n", userId, pwd));
+		Logs.info(Log, "deleteUser").with("userId", userId).with("pwd", pwd).log();
 
 		if (userId == null || pwd == null)
 			return error(BAD_REQUEST);
 
 		return errorOrResult(validatedUserOrError(DB.getOne(userId, User.class), pwd), user -> {
 
-			// Delete user shorts and related info asynchronously in a separate thread
-			Executors.defaultThreadFactory().newThread(() -> {
-				JavaShorts.getInstance().deleteAllShorts(userId, pwd, Token.get(userId));
-				JavaBlobs.getInstance().deleteAllBlobs(userId, Token.get(userId));
-			}).start();
-
-			Result<User> result = DB.deleteOne(user);
+			// Delete user shorts and related info in the background, surviving restarts
+			Result<User> result = UserCleanup.getInstance().submit(userId, () -> DB.deleteOne(user));
 
 			// Invalidate cache for the deleted user
-			if (result.isOK()) {
-				try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-					var userKey = "user:" + userId;
-					jedis.del(userKey); // Delete the cache entry for the user
-				}
-			}
+			if (result.isOK())
+				events.publish(new Event.UserDeleted(userId));
 
 			return result;
 		});
@@ -128,7 +108,7 @@ public class JavaUsers implements Users {
 
 	@Override
 	public Result<List<User>> searchUsers(String pattern) {
-		Log.info(() -> format("searchUsers : patterns = %s\n", pattern));
+		Logs.info(Log, "searchUsers").with("patterns", pattern).log();
 
 		//String cacheKey = "search:" + pattern.toUpperCase();
 
@@ -9,12 +9,12 @@ import static tukano.api.Result.ErrorCode.BAD_REQUEST;
 import static tukano.api.Result.ErrorCode.FORBIDDEN;
 
 import java.util.List;
-import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 import tukano.api.Result;
 import tukano.api.User;
 import tukano.api.Users;
+import tukano.impl.cleanup.UserCleanup;
 import utils.DB;
 
 public class JavaUsersNoCache implements Users {
@@ -29,7 +29,9 @@ public class JavaUsersNoCache implements Users {
 		return instance;
 	}
 	
-	private JavaUsersNoCache() {}
+	private JavaUsersNoCache() {
+		UserCleanup.getInstance().start(UserCleanup.steps(JavaShorts::getInstance), userId -> DB.getOne(userId, User.class));
+	}
 	
 	@Override
 	public Result<String> createUser(User user) {
@@ -69,14 +71,9 @@ public class JavaUsersNoCache implements Users {
 			return error(BAD_REQUEST);
 
 		return errorOrResult( validatedUserOrError(DB.getOne( userId, User.class), pwd), user -> {
-
-			// Delete user shorts and related info asynchronously in a separate thread
-			Executors.defaultThreadFactory().newThread( () -> {
-				JavaShorts.getInstance().deleteAllShorts(userId, pwd, Token.get(userId));
-				JavaBlobs.getInstance().deleteAllBlobs(userId, Token.get(userId));
-			}).start();
 			
-			return DB.deleteOne( user);
+			// Delete user shorts and related info in the background, surviving restarts
+			return UserCleanup.getInstance().submit(userId, () -> DB.deleteOne( user ));
 		});
 	}
 
@@ -1,6 +1,7 @@
 package tukano.impl;
 
 import static java.lang.String.format;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static tukano.api.Result.error;
 import static tukano.api.Result.errorOrResult;
 import static tukano.api.Result.errorOrValue;
@@ -9,16 +10,20 @@ import static tukano.api.Result.ErrorCode.BAD_REQUEST;
 import static tukano.api.Result.ErrorCode.FORBIDDEN;
 
 import java.util.List;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
-import cache.RedisCache;
-import redis.clients.jedis.Jedis;
+import cache.CacheKey;
+import cache.NearCache;
 import tukano.api.Result;
 import tukano.api.User;
 import tukano.api.Users;
-import utils.JSON;
+import tukano.impl.cleanup.UserCleanup;
+import tukano.impl.events.Event;
+import tukano.impl.events.Events;
+import utils.Logs;
 
+import tukano.db.CosmosAsyncDBLayer;
 import tukano.db.CosmosDBLayer; 
 
 
@@ -29,6 +34,9 @@ public class JavaUsersNoSQL implements Users {
 
 	private static Users instance;
 	private CosmosDBLayer dbLayer;
+	private CosmosAsyncDBLayer asyncDbLayer;
+	private final NearCache cache = NearCache.getInstance();
+	private final Events events = Events.getInstance();
 
 	synchronized public static Users getInstance() {
 		if (instance == null)
@@ -38,11 +46,13 @@ public class JavaUsersNoSQL implements Users {
 
 	private JavaUsersNoSQL() {
 		dbLayer = CosmosDBLayer.getInstance();
+		asyncDbLayer = CosmosAsyncDBLayer.getInstance();
+		UserCleanup.getInstance().start(UserCleanup.steps(JavaShortsNoSQL::getInstance), userId -> dbLayer.getUser(userId, User.class));
 	}
 
 	@Override
 	public Result<String> createUser(User user) {
-		Log.info(() -> format("createUser : %s\n", user));
+		Logs.info(Log, "createUser").with("user", user).log();
 
 		if (badUserInfo(user))
 			return error(BAD_REQUEST);
@@ -52,56 +62,41 @@ public class JavaUsersNoSQL implements Users {
 
 	@Override
 	public Result<User> getUser(String id, String pwd) {
-		Log.info(() -> format("getUser : id = %s, pwd = %s\n", id, pwd));
+		Logs.info(Log, "getUser").with("id", id).with("pwd", pwd).log();
 
-		if (id == null)
-			return error(BAD_REQUEST);
+		return getUserAsync(id, pwd).join();
+	}
 
-		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-
-			var userKey = "user:" + id;
-			String cachedUser = jedis.get(userKey);
-			if (cachedUser != null) {
-				User user = JSON.decode(cachedUser, User.class);
-				if (user.getPwd().equals(pwd)) {
-					return ok(user);
-				} else {
-					return error(FORBIDDEN);
-				}
-			}
-
-			Result<User> dbResult = dbLayer.getUser(id, User.class);
-			if (dbResult.isOK()) {
-				User user = dbResult.value();
-				if (user.getPwd().equals(pwd)) {
-					jedis.set(userKey,JSON.encode(user)); 
-					return ok(user);
-				} else {
-					return error(FORBIDDEN);
-				}
-			}
-
-			return dbResult;
-		}
+	/**
+	 * Looks up and checks the user without waiting for the database, so that
+	 * callers can issue other lookups meanwhile.
+	 */
+	public CompletableFuture<Result<User>> getUserAsync(String id, String pwd) {
+		if (id == null)
+			return completedFuture(error(BAD_REQUEST));
 
+		var userKey = CacheKey.USER.key(id);
+		var cached = cache.get(userKey, User.class);
+		var user = cached != null ? completedFuture(ok(cached)) : asyncDbLayer.getUser(id, User.class).thenApply(res -> {
+			if (res.isOK())
+				cache.put(userKey, res.value());
+			return res;
+		});
+		return user.thenApply(res -> validatedUserOrError(res, pwd));
 	}
 
 	@Override
 	public Result<User> updateUser(String id, String pwd, User other) {
-		Log.info(() -> format("updateUser : id = %s, pwd = %s, user: %s\n", id, pwd, other));
+		Logs.info(Log, "updateUser").with("id", id).with("pwd", pwd).with("user", other).log();
 
 		if (badUpdateUserInfo(id, pwd, other))
 			return error(BAD_REQUEST);
 
-		return errorOrResult(validatedUserOrError(dbLayer.getUser(id, User.class), pwd), user -> {
+		// The user is checked against the cache, and the cache updated in place
+		return errorOrResult(getUser(id, pwd), user -> {
 			Result<User> updatedUser = dbLayer.updateUser(user.updateFrom(other));
-			if (updatedUser.isOK()) {
-				try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-					var userKey = "user:" + id;
-					jedis.del(userKey); // Invalidate cache for updated user
-					//jedis.set(userKey, JSON.encode(updatedUser.value())); // Repopulate cache with updated user
-				}
-			}
+			if (updatedUser.isOK())
+				events.publish(new Event.UserUpdated(updatedUser.value()));
 			return updatedUser;
 		});
 	}
@@ -109,30 +104,20 @@ public class JavaUsersNoSQL implements Users {
 
 	@Override
 	public Result<User> deleteUser(String id, String pwd) {
-		Log.info(() -> format("deleteUser : id = %s, pwd = %s\n", id, pwd));
+		Logs.info(Log, "deleteUser").with("id", id).with("pwd", pwd).log();
 
 		if (id == null || pwd == null)
 			return error(BAD_REQUEST);
 
 		return errorOrResult(validatedUserOrError(dbLayer.getUser(id, User.class), pwd), user -> {
 
-			// Delete user shorts and related info asynchronously in a separate thread
-			Executors.defaultThreadFactory().newThread(() -> {
-				JavaShortsNoSQL.getInstance().deleteAllShorts(id, pwd, Token.get(id));
-				JavaBlobs.getInstance().deleteAllBlobs(id, Token.get(id));
-			}).start();
-
-			// Delete the user from the database
+			// Delete the user from the database, and its shorts and related info in the background, surviving restarts
 			@SuppressWarnings("unchecked")
-			Result<User> result = (Result<User>) dbLayer.deleteUser(user);
+			Result<User> result = UserCleanup.getInstance().submit(id, () -> (Result<User>) dbLayer.deleteUser(user));
 
 			// Invalidate cache for the deleted user
-			if (result.isOK()) {
-				try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-					var userKey = "user:" + id;
-					jedis.del(userKey); // Delete the cache entry for the user
-				}
-			}
+			if (result.isOK())
+				events.publish(new Event.UserDeleted(id));
 	
 			return result;
 		});
@@ -140,15 +125,14 @@ public class JavaUsersNoSQL implements Users {
 
 	@Override
 	public Result<List<User>> searchUsers(String pattern) {
-		Log.info(() -> format("searchUsers : pattern = %s\n", pattern));
+		Logs.info(Log, "searchUsers").with("pattern", pattern).log();
 
 		String cacheKey = "search:" + pattern.toUpperCase();
 
 		// Query database if not in cache
 		var query = format("SELECT * FROM Users u WHERE UPPER(u.id) LIKE '%%%s%%'", pattern.toUpperCase());
 		var hits = dbLayer.queryUsers(User.class, query);
-		Log.info("hits = " + hits);
-		Log.info("hits.v = " + hits.value());
+		Logs.fine(Log, "searchUsers").with("hits", hits).log();
 
 		/*try (Jedis jedis = RedisCache.getCachePool().getResource()) {
 			// Cache result in Redis for future use
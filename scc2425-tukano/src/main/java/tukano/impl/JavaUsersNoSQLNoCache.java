@@ -9,12 +9,12 @@ import static tukano.api.Result.ErrorCode.BAD_REQUEST;
 import static tukano.api.Result.ErrorCode.FORBIDDEN;
 
 import java.util.List;
-import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 import tukano.api.Result;
 import tukano.api.User;
 import tukano.api.Users;
+import tukano.impl.cleanup.UserCleanup;
 import tukano.db.CosmosDBLayer;
 
 public class JavaUsersNoSQLNoCache implements Users {
@@ -32,6 +32,7 @@ public class JavaUsersNoSQLNoCache implements Users {
 
     private JavaUsersNoSQLNoCache() {
         dbLayer = CosmosDBLayer.getInstance();
+        UserCleanup.getInstance().start(UserCleanup.steps(JavaShortsNoSQL::getInstance), userId -> dbLayer.getUser(userId, User.class));
     }
 
     @Override
@@ -86,15 +87,9 @@ public class JavaUsersNoSQLNoCache implements Users {
 
         return errorOrResult(validatedUserOrError(dbLayer.getUser(id, User.class), pwd), user -> {
 
-            // Delete user shorts and related info asynchronously in a separate thread
-            Executors.defaultThreadFactory().newThread(() -> {
-                JavaShortsNoSQL.getInstance().deleteAllShorts(id, pwd, Token.get(id));
-                JavaBlobs.getInstance().deleteAllBlobs(id, Token.get(id));
-            }).start();
-
-            // Delete the user from the database
+            // Delete the user from the database, and its shorts and related info in the background, surviving restarts
             @SuppressWarnings("unchecked")
-            Result<User> result = (Result<User>) dbLayer.deleteUser(user);
+            Result<User> result = UserCleanup.getInstance().submit(id, () -> (Result<User>) dbLayer.deleteUser(user));
 
             return result;
         });
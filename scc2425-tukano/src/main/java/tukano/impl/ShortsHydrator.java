@@ -0,0 +1,97 @@
+package tukano.impl;
+
+import static tukano.api.Result.error;
+import static tukano.api.Result.ok;
+import static tukano.api.Result.ErrorCode.BAD_REQUEST;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import cache.CacheKey;
+import cache.NearCache;
+import tukano.api.Page;
+import tukano.api.Result;
+import tukano.api.Short;
+
+/**
+ * Looks up many shorts by id at once, as stored (ie, without their likes), for the
+ * Shorts implementations: from the cache in a single round-trip, if given one, and
+ * then the rest from the database, in a single query.
+ */
+class ShortsHydrator {
+
+	/**
+	 * Returns the shorts with the given ids that exist, in the order of the ids.
+	 * At most Page.MAX_SIZE ids can be given at once.
+	 *
+	 * @param cache the cache to look up first, or null
+	 * @param load looks up the shorts with the given ids in the database, in any order
+	 */
+	static Result<List<Short>> hydrate(List<String> shortIds, NearCache cache, Function<Collection<String>, Result<List<Short>>> load) {
+		if (shortIds == null || shortIds.size() > Page.MAX_SIZE || shortIds.contains(null))
+			return error(BAD_REQUEST);
+
+		var found = new HashMap<String, Short>();
+		var missing = new LinkedHashMap<String, String>();
+		if (cache != null) {
+			var keys = shortIds.stream().map(CacheKey.SHORT::key).toList();
+			var cached = cache.getAll(keys, Short.class);
+			for (int i = 0; i < keys.size(); i++)
+				if (cached.get(i) != null)
+					found.put(shortIds.get(i), cached.get(i));
+				else
+					missing.put(shortIds.get(i), keys.get(i));
+		} else
+			shortIds.forEach(shortId -> missing.put(shortId, CacheKey.SHORT.key(shortId)));
+
+		if (!missing.isEmpty()) {
+			var res = load.apply(missing.keySet());
+			if (!res.isOK())
+				return error(res.error());
+
+			var loaded = new HashMap<String, Short>();
+			for (var shrt : res.value())
+				loaded.put(shrt.getShortId(), shrt);
+
+			found.putAll(loaded);
+			if (cache != null && !loaded.isEmpty())
+				cache.putAll(loaded.values().stream().collect(Collectors.toMap(s -> missing.get(s.getShortId()), s -> s)));
+		}
+
+		var shorts = new ArrayList<Short>(shortIds.size());
+		for (var shortId : shortIds)
+			if (found.containsKey(shortId))
+				shorts.add(found.get(shortId));
+		return ok(shorts);
+	}
+
+	/**
+	 * Formats the ids as a list of SQL string literals, for an IN clause.
+	 */
+	static String sqlList(Collection<String> ids) {
+		return ids.stream().map(id -> "'" + id.replace("'", "''") + "'").collect(Collectors.joining(", "));
+	}
+
+	/**
+	 * Sets the likes of each of the shorts, in order, and their blob tokens.
+	 */
+	static List<Short> withLikes(List<Short> shorts, List<Long> likes) {
+		var res = new ArrayList<Short>(shorts.size());
+		for (int i = 0; i < shorts.size(); i++)
+			res.add(shorts.get(i).copyWithLikes_And_Token(likes.get(i)));
+		return res;
+	}
+
+	/**
+	 * Sets the likes of each of the shorts, looked up by id (0 if missing), and their blob tokens.
+	 */
+	static List<Short> withLikes(List<Short> shorts, Map<String, Long> likes) {
+		return withLikes(shorts, shorts.stream().map(s -> likes.getOrDefault(s.getShortId(), 0L)).toList());
+	}
+}
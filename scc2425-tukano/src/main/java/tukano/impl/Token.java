@@ -1,44 +1,94 @@
 package tukano.impl;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import utils.Hash;
 
+/**
+ * Tokens are "timestamp-signature", where the signature is the HMAC-SHA256 of the
+ * id and the timestamp, keyed by the secret shared by the servers, in URL-safe base64.
+ *
+ * Tokens found valid are remembered until they expire, so that the many requests
+ * carrying the same token (eg, downloads of the same blob) are not verified again.
+ */
 public class Token {
 	private static Logger Log = Logger.getLogger(Token.class.getName());
 
 	private static final String DELIMITER = "-";
 	private static final long MAX_TOKEN_AGE = 300000;
-	private static String secret;
+	private static final int MAX_VERIFIED = Integer.parseInt(System.getProperty("TOKEN_CACHE_MAX_ENTRIES", "10000"));
+
+	private static final Base64.Encoder base64 = Base64.getUrlEncoder().withoutPadding();
+	private static final Base64.Decoder base64Decoder = Base64.getUrlDecoder();
+
+	private static volatile byte[] secret = new byte[0];
+
+	private record Verified(String token, String id) {
+	}
+
+	// Tokens found valid, and when they expire
+	private static final Map<Verified, Long> verified = new ConcurrentHashMap<>();
 
 	public static void setSecret(String s) {
-		secret = s;
+		secret = s.getBytes(StandardCharsets.UTF_8);
+		verified.clear();
 	}
 
 	public static String get() {
-		var timestamp = System.currentTimeMillis();
-		var signature = Hash.of(timestamp, secret);
-		return String.format("%s%s%s", timestamp, DELIMITER, signature);
+		return get("");
 	}
-	
+
 	public static String get(String id) {
 		var timestamp = System.currentTimeMillis();
-		var signature = Hash.of(id, timestamp, secret);
+		var signature = base64.encodeToString(sign(id, timestamp));
 		return String.format("%s%s%s", timestamp, DELIMITER, signature);
 	}
 
 	public static boolean isValid(String tokenStr, String id) {
+		if (tokenStr == null || id == null)
+			return false;
+
+		var now = System.currentTimeMillis();
+		var key = new Verified(tokenStr, id);
+		var expires = verified.get(key);
+		if (expires != null) {
+			if (expires > now)
+				return true;
+			verified.remove(key);
+		}
+
 		try {
-			var bits = tokenStr.split(DELIMITER);
-			var timestamp = Long.valueOf(bits[0]);
-			var hmac = Hash.of(id, timestamp, secret);
-			var elapsed = Math.abs(System.currentTimeMillis() - timestamp);			
-			Log.info(String.format("hash ok:%s, elapsed %s ok: %s\n", hmac.equals(bits[1]), elapsed, elapsed < MAX_TOKEN_AGE));
-			return hmac.equals(bits[1]) && elapsed < MAX_TOKEN_AGE;			
-		} catch( Exception x ) {
-			x.printStackTrace();
+			var i = tokenStr.indexOf(DELIMITER);
+			var timestamp = Long.parseLong(tokenStr.substring(0, i));
+			var signature = base64Decoder.decode(tokenStr.substring(i + 1));
+			var elapsed = Math.abs(now - timestamp);
+
+			var valid = Hash.equals(sign(id, timestamp), signature) && elapsed < MAX_TOKEN_AGE;
+			if (valid)
+				remember(key, timestamp + MAX_TOKEN_AGE, now);
+			else
+				Log.fine(() -> String.format("invalid token for %s, elapsed %s\n", id, elapsed));
+			return valid;
+		} catch (RuntimeException x) {
+			Log.fine(() -> String.format("malformed token for %s: %s\n", id, x.getMessage()));
 			return false;
 		}
 	}
 
+	private static byte[] sign(String id, long timestamp) {
+		return Hash.hmacSha256(secret, id.getBytes(StandardCharsets.UTF_8), DELIMITER.getBytes(StandardCharsets.US_ASCII), Long.toString(timestamp).getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static void remember(Verified key, long expires, long now) {
+		if (verified.size() >= MAX_VERIFIED) {
+			verified.values().removeIf(e -> e <= now);
+			if (verified.size() >= MAX_VERIFIED)
+				verified.clear();
+		}
+		verified.put(key, expires);
+	}
 }
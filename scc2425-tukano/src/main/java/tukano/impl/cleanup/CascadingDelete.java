@@ -0,0 +1,147 @@
+package tukano.impl.cleanup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import cache.CacheKey;
+import cache.NearCache;
+import tukano.impl.data.Likes;
+import tukano.impl.feed.Timelines;
+import tukano.impl.likes.LikeCounters;
+
+/**
+ * Deletes everything a user owns: its shorts, the likes by it or on its shorts,
+ * and the follows from or to it, along with what is cached about them.
+ *
+ * Records are deleted a page at a time, in id order, each page in as few round-trips
+ * as possible; progress is reported after each page. Pages are read after the last
+ * id seen, so that records that could not be deleted are not read again.
+ *
+ * Deleting is idempotent: if interrupted, it can be run again to finish.
+ */
+public class CascadingDelete {
+	private static Logger Log = Logger.getLogger(CascadingDelete.class.getName());
+
+	public static final int PAGE_SIZE = Integer.parseInt(System.getProperty("CLEANUP_PAGE_SIZE", "500"));
+
+	/**
+	 * Where the records of a user are read from and deleted.
+	 */
+	public interface Source {
+
+		/**
+		 * The ids of the shorts owned by the user, greater than after (if not null), in order.
+		 */
+		List<String> shortsOf(String userId, String after, int size);
+
+		/**
+		 * The likes by the user, or on its shorts, with ids greater than after (if not null), in order.
+		 */
+		List<Likes> likesOf(String userId, String after, int size);
+
+		/**
+		 * The ids of the follows from or to the user, greater than after (if not null), in order.
+		 */
+		List<String> followsOf(String userId, String after, int size);
+
+		/**
+		 * Deletes the shorts, returning how many were deleted.
+		 */
+		int deleteShorts(List<String> shortIds);
+
+		/**
+		 * Deletes the likes, returning how many were deleted.
+		 */
+		int deleteLikes(List<String> likeIds);
+
+		/**
+		 * Deletes the follows, returning how many were deleted.
+		 */
+		int deleteFollows(List<String> followIds);
+	}
+
+	/**
+	 * How many records of the user were deleted so far.
+	 */
+	public record Progress(String userId, long shorts, long likes, long follows) {
+
+		Progress plus(long shorts, long likes, long follows) {
+			return new Progress(userId, this.shorts + shorts, this.likes + likes, this.follows + follows);
+		}
+	}
+
+	private final Source source;
+	private final Timelines timelines;
+	private final LikeCounters likeCounters;
+	private final NearCache cache = NearCache.getInstance();
+
+	public CascadingDelete(Source source, Timelines timelines, LikeCounters likeCounters) {
+		this.source = source;
+		this.timelines = timelines;
+		this.likeCounters = likeCounters;
+	}
+
+	/**
+	 * Deletes everything the user owns. The shorts are deleted before the follows, so
+	 * that the followers of the user can still be read to clean up their timelines.
+	 */
+	public Progress deleteAll(String userId, Consumer<Progress> progress) {
+		var done = new Progress(userId, 0, 0, 0);
+
+		List<String> shortIds;
+		String after = null;
+		while (!(shortIds = source.shortsOf(userId, after, PAGE_SIZE)).isEmpty()) {
+			var deleted = source.deleteShorts(shortIds);
+
+			cache.invalidate(shortIds.stream()
+					.flatMap(shortId -> Stream.of(CacheKey.SHORT.key(shortId), CacheKey.LIKES.key(shortId)))
+					.toArray(String[]::new));
+			likeCounters.removed(shortIds);
+			timelines.deleted(userId, shortIds);
+
+			after = shortIds.get(shortIds.size() - 1);
+			report(done = done.plus(deleted, 0, 0), progress);
+		}
+
+		List<Likes> likes;
+		after = null;
+		while (!(likes = source.likesOf(userId, after, PAGE_SIZE)).isEmpty()) {
+			var deleted = source.deleteLikes(likes.stream().map(Likes::getId).toList());
+
+			// Likes by the user on the shorts of others change their counts
+			var removed = new HashMap<String, Long>();
+			for (var l : likes)
+				if (!userId.equals(l.getOwnerId()))
+					removed.merge(l.getShortId(), -1L, Long::sum);
+			removed.forEach(likeCounters::add);
+			cache.invalidate(removed.keySet().stream().map(CacheKey.LIKES::key).toArray(String[]::new));
+
+			after = likes.get(likes.size() - 1).getId();
+			report(done = done.plus(0, deleted, 0), progress);
+		}
+
+		List<String> followIds;
+		after = null;
+		while (!(followIds = source.followsOf(userId, after, PAGE_SIZE)).isEmpty()) {
+			var deleted = source.deleteFollows(followIds);
+
+			after = followIds.get(followIds.size() - 1);
+			report(done = done.plus(0, 0, deleted), progress);
+		}
+
+		cache.invalidate(CacheKey.USER_SHORTS.key(userId), CacheKey.FOLLOWERS.key(userId));
+		timelines.deleted(userId, List.of());
+
+		var total = done;
+		Log.info(() -> String.format("deleteAll : %s\n", total));
+		return done;
+	}
+
+	private static void report(Progress done, Consumer<Progress> progress) {
+		Log.fine(() -> String.format("deleteAll : %s\n", done));
+		progress.accept(done);
+	}
+}
@@ -0,0 +1,390 @@
+package tukano.impl.cleanup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import tukano.api.Result;
+import tukano.api.Shorts;
+import tukano.impl.JavaBlobs;
+import tukano.impl.Token;
+
+/**
+ * Durable jobs that clean up after deleted users (their shorts, blobs...).
+ *
+ * Jobs and the steps they complete are appended to a log on local disk, and forced to it,
+ * before they are acknowledged; on restart, the log is replayed and unfinished jobs resume
+ * from their first step not done. Steps must be idempotent, as a step interrupted by a crash
+ * is run again.
+ *
+ * A job is logged before its user is deleted, so that a crash in between does not leave the
+ * shorts and blobs of a deleted user behind. Jobs whose user turns out to still exist, as
+ * the delete failed or never happened, are cancelled when they run.
+ *
+ * Jobs run on a bounded pool of workers. A failed step is retried with exponential backoff
+ * (and jitter), up to MAX_ATTEMPTS times, after which the job is marked as failed.
+ */
+public class UserCleanup {
+	private static Logger Log = Logger.getLogger(UserCleanup.class.getName());
+
+	static final String DIR = System.getProperty("JOBS_DIR", "/tmp/tukano-jobs/");
+	static final String LOG_FILE = "user-cleanup.log";
+
+	static final int WORKERS = Integer.parseInt(System.getProperty("JOBS_WORKERS", "4"));
+	static final int MAX_ATTEMPTS = Integer.parseInt(System.getProperty("JOBS_MAX_ATTEMPTS", "10"));
+	static final long INITIAL_BACKOFF = Long.parseLong(System.getProperty("JOBS_INITIAL_BACKOFF_MS", "1000"));
+	static final long MAX_BACKOFF = Long.parseLong(System.getProperty("JOBS_MAX_BACKOFF_MS", "300000"));
+	static final int HISTORY = 1000;
+
+	static final String SUBMIT = "SUBMIT", STEP = "STEP", DONE = "DONE", FAILED = "FAILED", CANCELLED = "CANCELLED";
+	static final String SEP = "\t";
+
+	/**
+	 * A named, idempotent step of a cleanup, run with the id of the deleted user.
+	 */
+	public record Step(String name, Function<String, Result<Void>> action) {
+	}
+
+	public enum State {
+		PENDING, RUNNING, DONE, FAILED, CANCELLED
+	}
+
+	/**
+	 * The status of a job, as reported.
+	 */
+	public record Status(String jobId, String userId, long submitted, State state, List<String> done, int attempts, String error) {
+	}
+
+	private static class Job {
+		final String id, userId;
+		final long submitted;
+		final LinkedHashSet<String> done = new LinkedHashSet<>();
+		State state = State.PENDING;
+		int attempts;
+		String error;
+
+		Job(String id, String userId, long submitted) {
+			this.id = id;
+			this.userId = userId;
+			this.submitted = submitted;
+		}
+
+		Status status() {
+			return new Status(id, userId, submitted, state, List.copyOf(done), attempts, error);
+		}
+	}
+
+	/**
+	 * The steps of cleaning up after a user: deleting its shorts (and related records), then its blobs.
+	 */
+	public static List<Step> steps(Supplier<Shorts> shorts) {
+		return List.of(
+				new Step("shorts", userId -> shorts.get().deleteAllShorts(userId, null, Token.get(userId))),
+				new Step("blobs", userId -> JavaBlobs.getInstance().deleteAllBlobs(userId, Token.get(userId))));
+	}
+
+	private static UserCleanup instance;
+
+	synchronized public static UserCleanup getInstance() {
+		if (instance == null)
+			instance = new UserCleanup();
+		return instance;
+	}
+
+	private final File log = new File(DIR, LOG_FILE);
+	private final Map<String, Job> jobs = new LinkedHashMap<>();
+	private List<Step> steps;
+	private Function<String, Result<?>> users;
+	private BufferedWriter writer;
+	private FileOutputStream out;
+	private ScheduledExecutorService workers;
+
+	private UserCleanup() {
+	}
+
+	/**
+	 * Sets the steps of every cleanup, and how users are looked up, to tell whether they
+	 * were deleted, and resumes the unfinished jobs in the log. Only the first call has effect.
+	 */
+	synchronized public void start(List<Step> steps, Function<String, Result<?>> users) {
+		if (this.steps != null)
+			return;
+
+		this.steps = List.copyOf(steps);
+		this.users = users;
+		this.workers = Executors.newScheduledThreadPool(WORKERS, r -> {
+			var t = new Thread(r, "user-cleanup");
+			t.setDaemon(true);
+			return t;
+		});
+
+		try {
+			new File(DIR).mkdirs();
+			replay();
+			compact();
+			out = new FileOutputStream(log, true);
+			writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		} catch (IOException x) {
+			throw new UncheckedIOException(x);
+		}
+
+		for (var job : jobs.values())
+			if (job.state == State.PENDING)
+				schedule(job, 0);
+	}
+
+	/**
+	 * Deletes a user, with the given operation, and cleans up after it. The cleanup is
+	 * durably logged before the user is deleted, and cancelled if the delete fails.
+	 * If the user already has an unfinished cleanup, the user is only deleted.
+	 */
+	public <T> Result<T> submit(String userId, Supplier<Result<T>> delete) {
+		var job = new Job(UUID.randomUUID().toString(), userId, System.currentTimeMillis());
+		synchronized (this) {
+			for (var j : jobs.values())
+				if (j.userId.equals(userId) && (j.state == State.PENDING || j.state == State.RUNNING))
+					return delete.get();
+
+			append(SUBMIT, job.id, job.userId, Long.toString(job.submitted));
+			remember(job);
+		}
+
+		Result<T> res = null;
+		try {
+			res = delete.get();
+			return res;
+		} finally {
+			synchronized (this) {
+				if (res != null && res.isOK()) {
+					schedule(job, 0);
+					Log.info(() -> String.format("submit : %s, userId = %s\n", job.id, userId));
+				} else
+					cancel(job);
+			}
+		}
+	}
+
+	/**
+	 * The status of the known jobs, unfinished and recently finished, oldest first.
+	 */
+	synchronized public List<Status> status() {
+		return jobs.values().stream().map(Job::status).toList();
+	}
+
+	/**
+	 * The status of the jobs of the given user.
+	 */
+	synchronized public List<Status> status(String userId) {
+		return jobs.values().stream().filter(job -> job.userId.equals(userId)).map(Job::status).toList();
+	}
+
+	private void schedule(Job job, long delay) {
+		workers.schedule(() -> run(job), delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void run(Job job) {
+		try {
+			attempt(job);
+		} catch (RuntimeException x) {
+			// Eg, the log could not be appended to
+			synchronized (this) {
+				job.error = x.toString();
+				retry(job);
+			}
+		}
+	}
+
+	private void attempt(Job job) {
+		synchronized (this) {
+			job.state = State.RUNNING;
+			job.attempts++;
+		}
+
+		var user = users.apply(job.userId);
+		if (user.isOK()) {
+			synchronized (this) {
+				cancel(job);
+			}
+			return;
+		}
+		if (user.error() != Result.ErrorCode.NOT_FOUND) {
+			synchronized (this) {
+				job.error = String.format("user: %s", user.error());
+				retry(job);
+			}
+			return;
+		}
+
+		for (var step : steps) {
+			synchronized (this) {
+				if (job.done.contains(step.name()))
+					continue;
+			}
+
+			Result<Void> res;
+			try {
+				res = step.action().apply(job.userId);
+			} catch (RuntimeException x) {
+				res = Result.error(Result.ErrorCode.INTERNAL_ERROR);
+				Log.warning(() -> String.format("run : %s, step %s failed: %s\n", job.id, step.name(), x.getMessage()));
+			}
+
+			synchronized (this) {
+				// Nothing left to clean up counts as done
+				if (!res.isOK() && res.error() != Result.ErrorCode.NOT_FOUND) {
+					job.error = String.format("%s: %s", step.name(), res.error());
+					retry(job);
+					return;
+				}
+				append(STEP, job.id, step.name());
+				job.done.add(step.name());
+			}
+		}
+
+		synchronized (this) {
+			append(DONE, job.id);
+			job.state = State.DONE;
+			job.error = null;
+		}
+		Log.info(() -> String.format("run : %s, userId = %s, done after %d attempt(s)\n", job.id, job.userId, job.attempts));
+	}
+
+	/*
+	 * Gives up on a job whose user was not deleted. Should the record be lost, the job is
+	 * cancelled again when resumed.
+	 */
+	private void cancel(Job job) {
+		job.state = State.CANCELLED;
+		try {
+			append(CANCELLED, job.id);
+		} catch (RuntimeException x) {
+			Log.warning(() -> String.format("cancel : %s, %s\n", job.id, x.getMessage()));
+		}
+		Log.info(() -> String.format("cancel : %s, userId = %s was not deleted\n", job.id, job.userId));
+	}
+
+	private void retry(Job job) {
+		if (job.attempts >= MAX_ATTEMPTS) {
+			job.state = State.FAILED;
+			try {
+				append(FAILED, job.id, job.error);
+			} catch (RuntimeException x) {
+				// Resumed, and failed again, on restart
+				Log.warning(() -> String.format("run : %s, %s\n", job.id, x.getMessage()));
+			}
+			Log.warning(() -> String.format("run : %s, userId = %s, failed: %s\n", job.id, job.userId, job.error));
+			return;
+		}
+
+		job.state = State.PENDING;
+		var backoff = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << Math.min(job.attempts - 1, 30));
+		var delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+		Log.info(() -> String.format("run : %s, attempt %d failed (%s), retrying in %d ms\n", job.id, job.attempts, job.error, delay));
+		schedule(job, delay);
+	}
+
+	/*
+	 * Keeps unfinished jobs, and only the most recent finished ones.
+	 */
+	private void remember(Job job) {
+		jobs.put(job.id, job);
+		var it = jobs.values().iterator();
+		while (jobs.size() > HISTORY && it.hasNext()) {
+			var j = it.next();
+			if (j.state == State.DONE || j.state == State.FAILED || j.state == State.CANCELLED)
+				it.remove();
+		}
+	}
+
+	private void append(String... fields) {
+		try {
+			writer.write(String.join(SEP, fields));
+			writer.newLine();
+			writer.flush();
+			out.getChannel().force(false);
+		} catch (IOException x) {
+			throw new UncheckedIOException(x);
+		}
+	}
+
+	/*
+	 * Rebuilds the jobs from the log. A torn last line, from a crash while appending, is ignored.
+	 */
+	private void replay() throws IOException {
+		if (!log.exists())
+			return;
+
+		for (var line : Files.readAllLines(log.toPath(), StandardCharsets.UTF_8)) {
+			var fields = line.split(SEP);
+			var job = fields.length > 1 ? jobs.get(fields[1]) : null;
+			switch (fields[0]) {
+			case SUBMIT -> {
+				if (fields.length == 4)
+					remember(new Job(fields[1], fields[2], Long.parseLong(fields[3])));
+			}
+			case STEP -> {
+				if (job != null && fields.length == 3)
+					job.done.add(fields[2]);
+			}
+			case DONE -> {
+				if (job != null)
+					job.state = State.DONE;
+			}
+			case CANCELLED -> {
+				if (job != null)
+					job.state = State.CANCELLED;
+			}
+			case FAILED -> {
+				if (job != null) {
+					job.state = State.FAILED;
+					job.error = fields.length > 2 ? fields[2] : null;
+				}
+			}
+			default -> Log.warning(() -> String.format("replay : ignoring %s\n", line));
+			}
+		}
+	}
+
+	/*
+	 * Rewrites the log with only the unfinished jobs, so that it does not grow forever.
+	 */
+	private void compact() throws IOException {
+		var lines = new ArrayList<String>();
+		for (var job : jobs.values())
+			if (job.state == State.PENDING) {
+				lines.add(String.join(SEP, SUBMIT, job.id, job.userId, Long.toString(job.submitted)));
+				for (var step : job.done)
+					lines.add(String.join(SEP, STEP, job.id, step));
+			}
+
+		var tmp = new File(DIR, LOG_FILE + ".tmp");
+		try (var fos = new FileOutputStream(tmp)) {
+			for (var line : lines)
+				fos.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+			fos.getChannel().force(true);
+		}
+		Files.move(tmp.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		var resumed = lines.size();
+		Log.info(() -> String.format("compact : %d pending job record(s)\n", resumed));
+	}
+}
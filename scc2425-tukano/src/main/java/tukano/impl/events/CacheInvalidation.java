@@ -0,0 +1,34 @@
+package tukano.impl.events;
+
+import cache.CacheKey;
+import cache.NearCache;
+import tukano.impl.events.Event.Followed;
+import tukano.impl.events.Event.Liked;
+import tukano.impl.events.Event.ShortCreated;
+import tukano.impl.events.Event.ShortDeleted;
+import tukano.impl.events.Event.UserDeleted;
+import tukano.impl.events.Event.UserUpdated;
+
+/**
+ * Keeps what is cached in Redis, and in the L1 of every replica, consistent with the
+ * changes published as events: updated values are written through; lists that changed
+ * (only their first page is cached) are invalidated. Thus, cached keys can live long.
+ */
+class CacheInvalidation {
+
+	static void subscribe(Events events) {
+		var cache = NearCache.getInstance();
+
+		events.subscribe(UserUpdated.class, e -> cache.replace(CacheKey.USER.key(e.user().getUserId()), e.user()));
+		events.subscribe(UserDeleted.class, e -> cache.invalidate(CacheKey.USER.key(e.userId())));
+
+		events.subscribe(ShortCreated.class, e -> cache.invalidate(CacheKey.USER_SHORTS.key(e.shrt().getOwnerId())));
+		events.subscribe(ShortDeleted.class, e -> {
+			var shortId = e.shrt().getShortId();
+			cache.invalidate(CacheKey.SHORT.key(shortId), CacheKey.LIKES.key(shortId), CacheKey.USER_SHORTS.key(e.shrt().getOwnerId()));
+		});
+
+		events.subscribe(Liked.class, e -> cache.invalidate(CacheKey.LIKES.key(e.shortId())));
+		events.subscribe(Followed.class, e -> cache.invalidate(CacheKey.FOLLOWERS.key(e.followee())));
+	}
+}
@@ -0,0 +1,28 @@
+package tukano.impl.events;
+
+import tukano.api.Short;
+import tukano.api.User;
+
+/**
+ * Changes made by the services, published once they are stored in the database.
+ */
+public sealed interface Event {
+
+	record UserUpdated(User user) implements Event {
+	}
+
+	record UserDeleted(String userId) implements Event {
+	}
+
+	record ShortCreated(Short shrt) implements Event {
+	}
+
+	record ShortDeleted(Short shrt) implements Event {
+	}
+
+	record Liked(String shortId, String userId, String ownerId, boolean isLiked) implements Event {
+	}
+
+	record Followed(String follower, String followee, boolean isFollowing) implements Event {
+	}
+}
@@ -0,0 +1,58 @@
+package tukano.impl.events;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * In-process bus of domain events.
+ *
+ * Events are delivered synchronously, in the publishing thread, so that by the time a
+ * request is answered, what it changed is no longer cached anywhere (a handler that
+ * fails is logged and skipped; what it should have invalidated then lives until its TTL).
+ * Other replicas learn of the changes through the caches themselves.
+ *
+ * The bus comes with the invalidation of the shared caches subscribed (CacheInvalidation).
+ */
+public class Events {
+	private static Logger Log = Logger.getLogger(Events.class.getName());
+
+	private static Events instance;
+
+	synchronized public static Events getInstance() {
+		if (instance == null) {
+			instance = new Events();
+			CacheInvalidation.subscribe(instance);
+		}
+		return instance;
+	}
+
+	private final Map<Class<? extends Event>, List<Consumer<Event>>> handlers = new ConcurrentHashMap<>();
+
+	private Events() {
+	}
+
+	/**
+	 * Calls the handler with every event of the given type published from now on.
+	 */
+	public <E extends Event> void subscribe(Class<E> type, Consumer<? super E> handler) {
+		handlers.computeIfAbsent(type, t -> new CopyOnWriteArrayList<>()).add(event -> handler.accept(type.cast(event)));
+	}
+
+	/**
+	 * Delivers the event to the handlers of its type.
+	 */
+	public void publish(Event event) {
+		Log.fine(() -> String.format("publish : %s\n", event));
+
+		for (var handler : handlers.getOrDefault(event.getClass(), List.of()))
+			try {
+				handler.accept(event);
+			} catch (RuntimeException x) {
+				Log.warning(() -> String.format("publish : %s, handler failed: %s\n", event, x.getMessage()));
+			}
+	}
+}
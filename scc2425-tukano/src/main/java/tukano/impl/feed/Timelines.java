@@ -0,0 +1,347 @@
+package tukano.impl.feed;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import cache.CacheKey;
+import cache.RedisCache;
+import cache.SingleFlight;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.resps.Tuple;
+import tukano.api.Page;
+import tukano.api.Short;
+import tukano.impl.Cursor;
+import utils.Metrics;
+import utils.Metrics.Timer;
+
+/**
+ * Materialized feed timelines, kept in Redis.
+ *
+ * Each user has a bounded timeline (a sorted set of shortIds scored by timestamp)
+ * that receives the shorts of the users it follows as they are created (fan-out-on-write).
+ *
+ * Users with more than FANOUT_LIMIT followers are marked as celebrities and their shorts
+ * are not pushed; instead, their own bounded list of posts is merged into the feed of
+ * each follower when it is read (fan-out-on-read). Followers are counted before they are
+ * listed, so that the followers of celebrities are never loaded; users are unmarked when
+ * they post again with no more than FANOUT_LIMIT followers.
+ *
+ * Every command, and script, touches a single key, so that it works on Redis Cluster.
+ *
+ * Timelines are only pushed to if they are already materialized; missing timelines
+ * are rebuilt from the database on the next read, by a single reader at a time.
+ * Rebuilt timelines expire after the TTL of their CacheKey, bounding how long they
+ * can drift from the database.
+ */
+public class Timelines {
+	private static Logger Log = Logger.getLogger(Timelines.class.getName());
+
+	static final String TIMELINE = CacheKey.TIMELINE.prefix();
+	static final String POSTS = CacheKey.POSTS.prefix();
+	static final String FOLLOWEES = CacheKey.FOLLOWEES.prefix();
+	static final String CELEBRITIES = "celebrities";
+
+	// Keeps empty timelines and followee sets materialized in Redis
+	static final String SENTINEL = ".";
+	static final double SENTINEL_SCORE = -1;
+
+	static final int MAX_ENTRIES = Integer.parseInt(System.getProperty("TIMELINE_MAX_ENTRIES", "500"));
+	static final int FANOUT_LIMIT = Integer.parseInt(System.getProperty("TIMELINE_FANOUT_LIMIT", "1000"));
+	static final int FANOUT_BATCH = 512;
+
+	private static final Timer PUSH = Metrics.BACKEND.labels("redis", "timeline_push");
+	private static final Timer REMOVE = Metrics.BACKEND.labels("redis", "timeline_remove");
+	private static final Timer RANGE = Metrics.BACKEND.labels("redis", "timeline_range");
+	private static final Timer REBUILD = Metrics.BACKEND.labels("redis", "timeline_rebuild");
+	private static final Timer FOLLOWEES_GET = Metrics.BACKEND.labels("redis", "timeline_followees");
+
+	static final Comparator<Tuple> NEWEST_FIRST = Comparator.comparingDouble(Tuple::getScore)
+			.thenComparing(Tuple::getElement).reversed();
+
+	// Pushes ARGV[2] with score ARGV[1] into the key, if it exists, keeping the newest ARGV[3] entries
+	private static final String PUSH_SCRIPT = """
+			if redis.call('EXISTS', KEYS[1]) == 1 then
+				redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2])
+				redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[3]) + 1))
+				return 1
+			end
+			return 0""";
+
+	/**
+	 * Where timelines are rebuilt from, when they are not materialized.
+	 */
+	public interface Source {
+
+		/**
+		 * The newest shorts of the user and of the users it follows, after the given cursor (if any).
+		 */
+		List<Short> feed(String userId, Cursor after, int max);
+
+		/**
+		 * The newest shorts of the user.
+		 */
+		List<Short> posts(String userId, int max);
+
+		/**
+		 * The users followed by the user.
+		 */
+		List<String> followees(String userId);
+
+		/**
+		 * The users following the user, greater than after (if not null), in order.
+		 */
+		List<String> followers(String userId, String after, int size);
+
+		/**
+		 * How many users follow the user.
+		 */
+		long followerCount(String userId);
+	}
+
+	private final Source source;
+	private final SingleFlight rebuilds = new SingleFlight();
+
+	public Timelines(Source source) {
+		this.source = source;
+	}
+
+	/**
+	 * Returns a page of the shortIds in the feed of the given user, newest first.
+	 * 
+	 * Pages older than what is kept in the (bounded) timelines are read from the source.
+	 */
+	public Page<String> feed(String userId, Cursor after, int pageSize) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var timeline = range(jedis, TIMELINE + userId, () -> source.feed(userId, null, MAX_ENTRIES));
+			var entries = new ArrayList<>(timeline);
+
+			// Below the horizon, entries may have been trimmed from some timeline
+			var horizon = horizonOf(timeline);
+			for (var celebrity : followedCelebrities(jedis, userId)) {
+				var posts = range(jedis, POSTS + celebrity, () -> source.posts(celebrity, MAX_ENTRIES));
+				horizon = Math.max(horizon, horizonOf(posts));
+				entries.addAll(posts);
+			}
+
+			var lowest = horizon;
+			var page = entries.stream()
+					.sorted(NEWEST_FIRST)
+					.distinct()
+					.filter(t -> after == null || isOlder(t, after))
+					.takeWhile(t -> t.getScore() >= lowest)
+					.limit(pageSize + 1)
+					.toList();
+
+			if (page.size() > pageSize || lowest == Double.NEGATIVE_INFINITY)
+				return Page.of(page, pageSize, Tuple::getElement, t -> new Cursor((long) t.getScore(), t.getElement()).encode());
+
+			return Page.of(source.feed(userId, after, pageSize + 1), pageSize, Short::getShortId, s -> Cursor.of(s).encode());
+		}
+	}
+
+	/**
+	 * Pushes a newly created short into the timelines of its owner and, unless the
+	 * owner is a celebrity, of all its followers.
+	 */
+	public void published(Short shrt) {
+		var ownerId = shrt.getOwnerId();
+
+		var keys = new ArrayList<String>();
+		keys.add(POSTS + ownerId);
+		keys.add(TIMELINE + ownerId);
+
+		var count = source.followerCount(ownerId);
+		var celebrity = count > FANOUT_LIMIT;
+		if (celebrity)
+			Log.info(() -> String.format("published : %s has %d followers, using fan-out-on-read\n", ownerId, count));
+		else
+			forEachFollower(ownerId, follower -> keys.add(TIMELINE + follower));
+
+		var args = List.of(Long.toString(shrt.getTimestamp()), shrt.getShortId(), Integer.toString(MAX_ENTRIES));
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var pipeline = jedis.pipelined();
+			if (celebrity)
+				pipeline.sadd(CELEBRITIES, ownerId);
+			else
+				pipeline.srem(CELEBRITIES, ownerId);
+
+			for (int i = 0; i < keys.size(); i++) {
+				pipeline.eval(PUSH_SCRIPT, List.of(keys.get(i)), args);
+				if ((i + 1) % FANOUT_BATCH == 0)
+					PUSH.time(pipeline::sync);
+			}
+			PUSH.time(pipeline::sync);
+		}
+	}
+
+	/**
+	 * Removes a deleted short from every timeline it may have been pushed to.
+	 *
+	 * The shorts of celebrities are not pushed, so their followers are not loaded; any that
+	 * were pushed before the owner became one are skipped when hydrated, until they expire.
+	 */
+	public void removed(Short shrt) {
+		var shortId = shrt.getShortId();
+		var ownerId = shrt.getOwnerId();
+
+		var followers = new ArrayList<String>();
+		if (source.followerCount(ownerId) <= FANOUT_LIMIT)
+			forEachFollower(ownerId, followers::add);
+
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var pipeline = jedis.pipelined();
+			pipeline.zrem(POSTS + ownerId, shortId);
+			pipeline.zrem(TIMELINE + ownerId, shortId);
+			for (var follower : followers)
+				pipeline.zrem(TIMELINE + follower, shortId);
+			REMOVE.time(pipeline::sync);
+		}
+	}
+
+	/**
+	 * Discards the timeline of a user whose followees changed, so that it is
+	 * rebuilt on the next read.
+	 */
+	public void followeesChanged(String userId) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var pipeline = jedis.pipelined();
+			pipeline.del(TIMELINE + userId);
+			pipeline.del(FOLLOWEES + userId);
+			REMOVE.time(pipeline::sync);
+		}
+	}
+
+	/**
+	 * Discards everything related to a deleted user, including its shorts in the
+	 * timelines of its followers, which must thus still be known to the source.
+	 *
+	 * The followers are read a page at a time; those of celebrities are not read at all,
+	 * as with removed.
+	 */
+	public void deleted(String userId, List<String> shortIds) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var celebrity = !shortIds.isEmpty() && (jedis.sismember(CELEBRITIES, userId) || source.followerCount(userId) > FANOUT_LIMIT);
+
+			var pipeline = jedis.pipelined();
+			pipeline.del(TIMELINE + userId);
+			pipeline.del(POSTS + userId);
+			pipeline.del(FOLLOWEES + userId);
+			pipeline.srem(CELEBRITIES, userId);
+			REMOVE.time(pipeline::sync);
+
+			if (shortIds.isEmpty() || celebrity)
+				return;
+
+			var members = shortIds.toArray(new String[0]);
+			List<String> followers;
+			String after = null;
+			while (!(followers = source.followers(userId, after, FANOUT_BATCH)).isEmpty()) {
+				for (var follower : followers)
+					pipeline.zrem(TIMELINE + follower, members);
+				REMOVE.time(pipeline::sync);
+				after = followers.get(followers.size() - 1);
+			}
+		}
+	}
+
+	/*
+	 * Reads the followers of the user a page at a time; only for users that are not celebrities.
+	 */
+	private void forEachFollower(String userId, Consumer<String> action) {
+		List<String> followers;
+		String after = null;
+		while (!(followers = source.followers(userId, after, FANOUT_BATCH)).isEmpty()) {
+			followers.forEach(action);
+			after = followers.get(followers.size() - 1);
+		}
+	}
+
+	/*
+	 * Returns the newest entries of the given sorted set, materializing it from the loader if needed.
+	 */
+	private List<Tuple> range(Jedis jedis, String key, Supplier<List<Short>> loader) {
+		var pipeline = jedis.pipelined();
+		var exists = pipeline.exists(key);
+		var range = pipeline.zrevrangeWithScores(key, 0, MAX_ENTRIES - 1);
+		RANGE.time(pipeline::sync);
+
+		if (exists.get()) {
+			CacheKey.of(key).hit();
+			return withoutSentinel(range.get());
+		}
+		CacheKey.of(key).miss();
+
+		// Rebuilt once, even if many read it at the same time, here or in other replicas
+		return rebuilds.runLocked(key, () -> {
+			return RANGE.time(() -> jedis.exists(key) ? withoutSentinel(jedis.zrevrangeWithScores(key, 0, MAX_ENTRIES - 1)) : null);
+		}, () -> rebuild(jedis, key, loader));
+	}
+
+	private List<Tuple> rebuild(Jedis jedis, String key, Supplier<List<Short>> loader) {
+		var shorts = loader.get();
+		var members = new HashMap<String, Double>();
+		members.put(SENTINEL, SENTINEL_SCORE);
+		for (var s : shorts)
+			members.put(s.getShortId(), (double) s.getTimestamp());
+
+		// ZADD merges with anything pushed in the meantime
+		var kind = CacheKey.of(key);
+		var pipeline = jedis.pipelined();
+		pipeline.zadd(key, members);
+		pipeline.zremrangeByRank(key, 0, -(MAX_ENTRIES + 2));
+		pipeline.pexpire(key, kind.ttl());
+		REBUILD.time(pipeline::sync);
+		kind.written();
+
+		return shorts.stream()
+				.map(s -> new Tuple(s.getShortId(), (double) s.getTimestamp()))
+				.toList();
+	}
+
+	private static List<Tuple> withoutSentinel(List<Tuple> range) {
+		return range.stream()
+				.filter(t -> !SENTINEL.equals(t.getElement()))
+				.toList();
+	}
+
+	/*
+	 * The lowest score that is known to be complete in the given range.
+	 */
+	private static double horizonOf(List<Tuple> range) {
+		return range.size() < MAX_ENTRIES ? Double.NEGATIVE_INFINITY : range.get(range.size() - 1).getScore();
+	}
+
+	private static boolean isOlder(Tuple t, Cursor c) {
+		return t.getScore() < c.timestamp() || (t.getScore() == c.timestamp() && t.getElement().compareTo(c.id()) < 0);
+	}
+
+	private Collection<String> followedCelebrities(Jedis jedis, String userId) {
+		var key = FOLLOWEES + userId;
+		if (!FOLLOWEES_GET.time(() -> jedis.exists(key))) {
+			var followees = new ArrayList<String>(source.followees(userId));
+			followees.add(SENTINEL);
+			var pipeline = jedis.pipelined();
+			pipeline.sadd(key, followees.toArray(new String[0]));
+			pipeline.pexpire(key, CacheKey.FOLLOWEES.ttl());
+			REBUILD.time(pipeline::sync);
+			CacheKey.FOLLOWEES.written();
+		}
+		// Not SINTER, as the two sets may be in different slots of a cluster; there are few celebrities
+		var celebrities = FOLLOWEES_GET.time(() -> jedis.smembers(CELEBRITIES)).toArray(new String[0]);
+		if (celebrities.length == 0)
+			return List.of();
+
+		var followed = FOLLOWEES_GET.time(() -> jedis.smismember(key, celebrities));
+		var res = new ArrayList<String>();
+		for (int i = 0; i < celebrities.length; i++)
+			if (followed.get(i))
+				res.add(celebrities[i]);
+		return res;
+	}
+}
@@ -0,0 +1,208 @@
+package tukano.impl.likes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import cache.CacheKey;
+import cache.RedisBatch;
+import cache.RedisCache;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import tukano.api.Short;
+import utils.Metrics;
+import utils.Metrics.Timer;
+
+/**
+ * Per-short like counters, kept in Redis.
+ *
+ * Counters are incremented and decremented atomically as likes are added and removed,
+ * so that reading the number of likes of a short does not depend on how many it has.
+ * Shorts whose counter changed are marked dirty and, periodically, their likes are
+ * recounted from the database and stored into the totalLikes of the short. Counters
+ * missing from Redis are restored by recounting too, as the totalLikes of a cached
+ * short may be older than the database.
+ *
+ * Each counter has a dirty flag, a version bumped by every change, in the same hash slot
+ * (the shortId is their hash tag), so that the scripts work on Redis Cluster; the dirty
+ * set only lists the shorts to reconcile, and is never touched by the scripts.
+ */
+public class LikeCounters {
+	private static Logger Log = Logger.getLogger(LikeCounters.class.getName());
+
+	static final String COUNTER = CacheKey.LIKES_COUNT.prefix();
+	static final String FLAG = "likes_dirty:";
+	static final String DIRTY = "likes_dirty";
+
+	static final long RECONCILE_INTERVAL = Long.parseLong(System.getProperty("LIKES_RECONCILE_INTERVAL_MS", "5000"));
+	static final int RECONCILE_BATCH = 256;
+
+	private static final Timer GET = Metrics.BACKEND.labels("redis", "likes_get");
+	private static final Timer ADD = Metrics.BACKEND.labels("redis", "likes_add");
+	private static final Timer REMOVE = Metrics.BACKEND.labels("redis", "likes_remove");
+
+	// Only counters that exist are changed; missing ones are restored on the next read
+	private static final String ADD_SCRIPT = """
+			if redis.call('EXISTS', KEYS[1]) == 1 then
+				redis.call('INCRBY', KEYS[1], ARGV[1])
+			end
+			return redis.call('INCR', KEYS[2])""";
+
+	// A recount is only stored if no like changed the flag since it was read, before recounting
+	private static final String RECONCILE_SCRIPT = """
+			if (redis.call('GET', KEYS[2]) or '') ~= ARGV[1] then
+				return 0
+			end
+			redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])
+			redis.call('DEL', KEYS[2])
+			return 1""";
+
+	/**
+	 * Where like counts are recounted from and stored into.
+	 */
+	public interface Source {
+
+		/**
+		 * The number of likes of the short, counted from the likes themselves.
+		 */
+		long count(String shortId);
+
+		/**
+		 * Stores the number of likes into the totalLikes of the short.
+		 * Returns false if the short no longer exists.
+		 */
+		boolean store(String shortId, long likes);
+	}
+
+	private final Source source;
+
+	public LikeCounters(Source source) {
+		this.source = source;
+
+		var reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+			var t = new Thread(r, "likes-reconciler");
+			t.setDaemon(true);
+			return t;
+		});
+		reconciler.scheduleWithFixedDelay(this::reconcile, RECONCILE_INTERVAL, RECONCILE_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the number of likes of the given short.
+	 */
+	public long get(Short shrt) {
+		return get(List.of(shrt)).get(0);
+	}
+
+	/**
+	 * Returns the number of likes of each of the given shorts, in the same order.
+	 * Counters are read in a single round-trip, and those missing restored in another.
+	 */
+	public List<Long> get(List<Short> shorts) {
+		if (shorts.isEmpty())
+			return List.of();
+
+		var shortIds = shorts.stream().map(Short::getShortId).toArray(String[]::new);
+		var keys = Arrays.stream(shortIds).map(LikeCounters::counterOf).toArray(String[]::new);
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var counters = GET.time(() -> jedis.mget(keys));
+
+			var likes = new ArrayList<Long>(shorts.size());
+			var restored = new HashMap<Integer, Response<String>>();
+			var pipeline = jedis.pipelined();
+			for (int i = 0; i < shorts.size(); i++) {
+				var counter = counters.get(i);
+				if (counter != null) {
+					CacheKey.LIKES_COUNT.hit();
+					likes.add(Long.parseLong(counter));
+					continue;
+				}
+				CacheKey.LIKES_COUNT.miss();
+				var count = source.count(shortIds[i]);
+				pipeline.set(keys[i], Long.toString(count), CacheKey.LIKES_COUNT.params().nx());
+				restored.put(i, pipeline.get(keys[i]));
+				likes.add(count);
+			}
+			GET.time(pipeline::sync);
+
+			restored.forEach((i, counter) -> likes.set(i, Long.parseLong(counter.get())));
+			return likes;
+		}
+	}
+
+	/**
+	 * Records that a like was added to (delta = 1) or removed from (delta = -1) the given short.
+	 */
+	public void add(String shortId, long delta) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var pipeline = jedis.pipelined();
+			pipeline.eval(ADD_SCRIPT, List.of(counterOf(shortId), flagOf(shortId)), List.of(Long.toString(delta)));
+			pipeline.sadd(DIRTY, shortId);
+			ADD.time(pipeline::sync);
+		}
+	}
+
+	/**
+	 * Discards the counters of deleted shorts.
+	 */
+	public void removed(List<String> shortIds) {
+		if (shortIds.isEmpty())
+			return;
+
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var pipeline = jedis.pipelined();
+			RedisBatch.unlink(pipeline, shortIds.stream().flatMap(shortId -> Stream.of(counterOf(shortId), flagOf(shortId))).toList());
+			pipeline.srem(DIRTY, shortIds.toArray(new String[0]));
+			REMOVE.time(pipeline::sync);
+		}
+	}
+
+	/*
+	 * Recounts the likes of dirty shorts and stores them, in Redis and in the database.
+	 *
+	 * Shorts are popped from the dirty set, so each is reconciled by a single replica. A like
+	 * that races with the recount changes the dirty flag of the short and adds it to the
+	 * dirty set again, so the counter it incremented is left alone, rather than overwritten
+	 * with a stale count, and fixed in the next round.
+	 */
+	private void reconcile() {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			List<String> shortIds;
+			while (!(shortIds = List.copyOf(jedis.spop(DIRTY, RECONCILE_BATCH))).isEmpty()) {
+				for (int i = 0; i < shortIds.size(); i++) {
+					var shortId = shortIds.get(i);
+					try {
+						var version = jedis.get(flagOf(shortId));
+						var likes = source.count(shortId);
+						if (source.store(shortId, likes))
+							jedis.eval(RECONCILE_SCRIPT, List.of(counterOf(shortId), flagOf(shortId)),
+									List.of(version == null ? "" : version, Long.toString(likes), Long.toString(CacheKey.LIKES_COUNT.ttl())));
+						else
+							jedis.del(counterOf(shortId), flagOf(shortId));
+					} catch (RuntimeException x) {
+						// Give back what was not reconciled, to be retried in the next round
+						jedis.sadd(DIRTY, shortIds.subList(i, shortIds.size()).toArray(new String[0]));
+						throw x;
+					}
+				}
+				var reconciled = shortIds.size();
+				Log.fine(() -> String.format("reconcile : %d shorts\n", reconciled));
+			}
+		} catch (Exception x) {
+			Log.warning(() -> String.format("reconcile : %s\n", x.getMessage()));
+		}
+	}
+
+	static String counterOf(String shortId) {
+		return COUNTER + "{" + shortId + "}";
+	}
+
+	static String flagOf(String shortId) {
+		return FLAG + "{" + shortId + "}";
+	}
+}
@@ -0,0 +1,151 @@
+package tukano.impl.likes;
+
+import static tukano.api.Result.error;
+import static tukano.api.Result.ok;
+import static tukano.api.Result.ErrorCode.CONFLICT;
+import static tukano.api.Result.ErrorCode.INTERNAL_ERROR;
+import static tukano.api.Result.ErrorCode.NOT_FOUND;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+import tukano.api.Result;
+import tukano.impl.data.Likes;
+import utils.Queues;
+
+/**
+ * Write-behind of likes and unlikes.
+ *
+ * Likes are put into a bounded queue and written to the database in batches, when
+ * BATCH_SIZE of them are queued or FLUSH_INTERVAL has passed. Within a batch, the
+ * likes of the same user on the same short are coalesced: only the last one, which is
+ * the state they leave the like in, is written. Its outcome tells the state the like was
+ * in before, from which the outcomes of the others are replayed as if written in order.
+ *
+ * In acknowledged mode, callers wait until their like is written and get its outcome;
+ * otherwise they return as soon as it is queued, and a like may be lost if the server
+ * stops before the next flush. A full queue blocks callers until there is room.
+ */
+public class LikeWriter {
+	private static Logger Log = Logger.getLogger(LikeWriter.class.getName());
+
+	static final int QUEUE_CAPACITY = Integer.parseInt(System.getProperty("LIKES_QUEUE_CAPACITY", "10000"));
+	static final int BATCH_SIZE = Integer.parseInt(System.getProperty("LIKES_BATCH_SIZE", "500"));
+	static final long FLUSH_INTERVAL = Long.parseLong(System.getProperty("LIKES_FLUSH_INTERVAL_MS", "50"));
+	static final boolean ACKNOWLEDGED = Boolean.parseBoolean(System.getProperty("LIKES_ACKNOWLEDGED", "true"));
+
+	/**
+	 * A like (isLiked = true) or unlike to be written.
+	 */
+	public record Op(Likes like, boolean isLiked) {
+	}
+
+	/**
+	 * Where likes are written to.
+	 */
+	public interface Sink {
+
+		/**
+		 * Inserts the likes and deletes the unlikes, in as few round-trips as possible.
+		 * Returns the outcome of each operation, in order: CONFLICT if the like already
+		 * existed, NOT_FOUND if the unliked like did not exist.
+		 */
+		List<Result<Void>> write(List<Op> ops);
+	}
+
+	private record Pending(Op op, CompletableFuture<Result<Void>> outcome) {
+	}
+
+	private final Sink sink;
+	private final LikeCounters counters;
+	private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+	public LikeWriter(Sink sink, LikeCounters counters) {
+		this.sink = sink;
+		this.counters = counters;
+
+		var flusher = new Thread(this::flusher, "likes-writer");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Queues a like, waiting for it to be written if in acknowledged mode.
+	 */
+	public Result<Void> submit(Likes like, boolean isLiked) {
+		return submit(like, isLiked, ACKNOWLEDGED);
+	}
+
+	/**
+	 * Queues a like, waiting for it to be written if acknowledged is true.
+	 */
+	public Result<Void> submit(Likes like, boolean isLiked, boolean acknowledged) {
+		var pending = new Pending(new Op(like, isLiked), new CompletableFuture<>());
+		Queues.putInto(queue, pending);
+		return acknowledged ? pending.outcome().join() : ok();
+	}
+
+	private void flusher() {
+		for (;;) {
+			var batch = new ArrayList<Pending>();
+			batch.add(Queues.takeFrom(queue));
+			Queues.drainInto(queue, batch, BATCH_SIZE - 1, FLUSH_INTERVAL);
+			try {
+				flush(batch);
+			} catch (Exception x) {
+				Log.warning(() -> String.format("flush : %d likes lost: %s\n", batch.size(), x.getMessage()));
+				batch.forEach(p -> p.outcome().complete(error(INTERNAL_ERROR)));
+			}
+		}
+	}
+
+	private void flush(List<Pending> batch) {
+		var byLike = new LinkedHashMap<String, List<Pending>>();
+		for (var p : batch)
+			byLike.computeIfAbsent(p.op().like().getId(), __ -> new ArrayList<>()).add(p);
+
+		var written = new ArrayList<List<Pending>>(byLike.values());
+		var outcomes = sink.write(written.stream().map(group -> group.get(group.size() - 1).op()).toList());
+
+		var deltas = new HashMap<String, Long>();
+		for (int i = 0; i < written.size(); i++) {
+			var group = written.get(i);
+			var last = group.get(group.size() - 1).op();
+			var outcome = outcomes.get(i);
+			if (outcome.isOK())
+				deltas.merge(last.like().getShortId(), last.isLiked() ? 1L : -1L, Long::sum);
+			replay(group, outcome);
+		}
+		deltas.forEach((shortId, delta) -> {
+			if (delta != 0)
+				counters.add(shortId, delta);
+		});
+
+		Log.fine(() -> String.format("flush : %d likes, %d written\n", batch.size(), written.size()));
+	}
+
+	/*
+	 * Completes the likes of a group with the outcomes they would have had if written one by
+	 * one. The last one succeeded only if the like was not in the state it left it in.
+	 */
+	private static void replay(List<Pending> group, Result<Void> outcome) {
+		var last = group.get(group.size() - 1).op();
+		if (!outcome.isOK() && outcome.error() != (last.isLiked() ? CONFLICT : NOT_FOUND)) {
+			group.forEach(p -> p.outcome().complete(outcome));
+			return;
+		}
+
+		var liked = outcome.isOK() != last.isLiked();
+		for (var p : group) {
+			var isLiked = p.op().isLiked();
+			p.outcome().complete(isLiked == liked ? error(isLiked ? CONFLICT : NOT_FOUND) : ok());
+			liked = isLiked;
+		}
+	}
+}
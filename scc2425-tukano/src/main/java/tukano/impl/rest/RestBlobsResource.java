@@ -1,13 +1,26 @@
 package tukano.impl.rest;
 
+import static jakarta.ws.rs.core.HttpHeaders.CONTENT_LENGTH;
+
+import java.io.InputStream;
+
 import jakarta.inject.Singleton;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
 import tukano.api.Blobs;
+import tukano.api.Result;
 import tukano.api.rest.RestBlobs;
 import tukano.impl.JavaBlobs;
+import tukano.impl.rest.utils.ByteRange;
+import utils.Limiter;
 
 @Singleton
 public class RestBlobsResource extends RestResource implements RestBlobs {
 
+	static final String ACCEPT_RANGES = "Accept-Ranges";
+	static final String CONTENT_RANGE = "Content-Range";
+
 	final Blobs impl;
 	
 	public RestBlobsResource() {
@@ -15,13 +28,30 @@ public class RestBlobsResource extends RestResource implements RestBlobs {
 	}
 	
 	@Override
-	public void upload(String blobId, byte[] bytes, String token) {
-		super.resultOrThrow( impl.upload(blobId, bytes, token));
+	public void upload(String blobId, InputStream in, String token) {
+		super.resultOrThrow( impl.upload(blobId, in, token));
 	}
 
 	@Override
-	public byte[] download(String blobId, String token) {
-		return super.resultOrThrow( impl.download( blobId, token ));
+	public Response download(String blobId, String token, String range) {
+		var size = range == null ? -1 : super.resultOrThrow( impl.size( blobId, token ));
+		var r = ByteRange.parse(range, size);
+		if (r == null)
+			return Response.ok( stream( impl.open( blobId, token )))
+					.header(ACCEPT_RANGES, ByteRange.UNIT)
+					.build();
+
+		if (!r.satisfiable(size))
+			return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+					.header(CONTENT_RANGE, ByteRange.unsatisfied(size))
+					.build();
+
+		return Response.status(Status.PARTIAL_CONTENT)
+				.entity( stream( impl.open( blobId, r.first(), r.length(), token )))
+				.header(ACCEPT_RANGES, ByteRange.UNIT)
+				.header(CONTENT_RANGE, r.contentRange(size))
+				.header(CONTENT_LENGTH, r.length())
+				.build();
 	}
 
 	@Override
@@ -33,4 +63,22 @@ public class RestBlobsResource extends RestResource implements RestBlobs {
 	public void deleteAllBlobs(String userId, String password) {
 		super.resultOrThrow( impl.deleteAllBlobs( userId, password ));
 	}
+
+	/*
+	 * The blob is opened under a permit of Limiter.BLOBS, but most of the time goes into
+	 * sending it, so another permit is held until it is sent.
+	 */
+	private StreamingOutput stream(Result<InputStream> res) {
+		var in = super.resultOrThrow( res );
+		return out -> {
+			try (in) {
+				var permit = Limiter.BLOBS.permit();
+				try {
+					in.transferTo(out);
+				} finally {
+					permit.close();
+				}
+			}
+		};
+	}
 }
@@ -28,6 +28,7 @@ public class RestResource {
 			case BAD_REQUEST -> Status.BAD_REQUEST;
 			case INTERNAL_ERROR -> Status.INTERNAL_SERVER_ERROR;
 			case NOT_IMPLEMENTED -> Status.NOT_IMPLEMENTED;
+			case TIMEOUT -> Status.SERVICE_UNAVAILABLE;
 			case OK -> result.value() == null ? Status.NO_CONTENT : Status.OK;
 			default -> Status.INTERNAL_SERVER_ERROR;
 		};
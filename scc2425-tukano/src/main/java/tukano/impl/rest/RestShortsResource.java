@@ -3,6 +3,7 @@ package tukano.impl.rest;
 import java.util.List;
 
 import jakarta.inject.Singleton;
+import tukano.api.Page;
 import tukano.api.Short;
 import tukano.api.Shorts;
 import tukano.api.Users;
@@ -24,6 +25,11 @@ public class RestShortsResource extends RestResource implements RestShorts {
 		return super.resultOrThrow( impl.createShort(userId, password));
 	}
 
+	@Override
+	public List<Short> hydrateShorts(List<String> shortIds) {
+		return super.resultOrThrow( impl.hydrateShorts(shortIds));
+	}
+
 	@Override
 	public void deleteShort(String shortId, String password) {
 		super.resultOrThrow( impl.deleteShort(shortId, password));
@@ -34,8 +40,8 @@ public class RestShortsResource extends RestResource implements RestShorts {
 		return super.resultOrThrow( impl.getShort(shortId));
 	}
 	@Override
-	public List<String> getShorts(String userId) {
-		return super.resultOrThrow( impl.getShorts(userId));
+	public Page<String> getShorts(String userId, String cursor, int pageSize) {
+		return super.resultOrThrow( impl.getShorts(userId, cursor, pageSize));
 	}
 
 	@Override
@@ -44,8 +50,8 @@ public class RestShortsResource extends RestResource implements RestShorts {
 	}
 
 	@Override
-	public List<String> followers(String userId, String password) {
-		return super.resultOrThrow( impl.followers(userId, password));
+	public Page<String> followers(String userId, String password, String cursor, int pageSize) {
+		return super.resultOrThrow( impl.followers(userId, password, cursor, pageSize));
 	}
 
 	@Override
@@ -54,13 +60,13 @@ public class RestShortsResource extends RestResource implements RestShorts {
 	}
 
 	@Override
-	public List<String> likes(String shortId, String password) {
-		return super.resultOrThrow( impl.likes(shortId, password));
+	public Page<String> likes(String shortId, String password, String cursor, int pageSize) {
+		return super.resultOrThrow( impl.likes(shortId, password, cursor, pageSize));
 	}
 
 	@Override
-	public List<String> getFeed(String userId, String password) {
-		return super.resultOrThrow( impl.getFeed(userId, password));
+	public Page<String> getFeed(String userId, String password, String cursor, int pageSize) {
+		return super.resultOrThrow( impl.getFeed(userId, password, cursor, pageSize));
 	}
 
 	@Override
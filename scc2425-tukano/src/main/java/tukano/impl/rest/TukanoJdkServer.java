@@ -0,0 +1,63 @@
+package tukano.impl.rest;
+
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+import org.glassfish.jersey.jdkhttp.JdkHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+
+import utils.Args;
+import utils.IP;
+
+/**
+ * Runs the TukanoRestServer application standalone, on the JDK HTTP server, instead of
+ * deployed into a servlet container.
+ *
+ * Requests are handled on virtual threads when the JVM has them (Java 21+), so that
+ * requests blocked on the database, Redis or the blob store cost little more than their
+ * stack; concurrent use of each backend is bounded by its Limiter (or pool). On older
+ * JVMs, requests are handled by a fixed pool of SERVER_THREADS platform threads.
+ */
+public class TukanoJdkServer {
+	private static final Logger Log = Logger.getLogger(TukanoJdkServer.class.getName());
+
+	static final int THREADS = Integer.parseInt(System.getProperty("SERVER_THREADS", "256"));
+
+	static {
+		System.setProperty("java.net.preferIPv4Stack", "true");
+		System.setProperty("java.util.logging.SimpleFormatter.format", "%4$s: %5$s\n");
+	}
+
+	public static void main(String[] args) throws Exception {
+		Args.use(args);
+
+		var port = Args.valueOf("-port", TukanoRestServer.PORT);
+		System.setProperty("SERVER_URI", String.format(TukanoRestServer.SERVER_BASE_URI, IP.hostname() + ":" + port));
+
+		var config = ResourceConfig.forApplication(new TukanoRestServer());
+
+		var uri = URI.create(String.format(TukanoRestServer.SERVER_BASE_URI, TukanoRestServer.INETADDR_ANY + ":" + port));
+		var server = JdkHttpServerFactory.createHttpServer(uri, config, false);
+		server.setExecutor(newRequestExecutor());
+		server.start();
+
+		Log.info(String.format("Tukano Server ready @ %s\n", TukanoRestServer.serverURI));
+	}
+
+	/*
+	 * Executors.newVirtualThreadPerTaskExecutor() is looked up reflectively, so that this
+	 * still compiles for, and runs on, Java 17.
+	 */
+	static ExecutorService newRequestExecutor() {
+		try {
+			var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			Log.info("Handling requests on virtual threads\n");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException x) {
+			Log.info(String.format("Virtual threads not available; handling requests on %d threads\n", THREADS));
+			return Executors.newFixedThreadPool(THREADS);
+		}
+	}
+}
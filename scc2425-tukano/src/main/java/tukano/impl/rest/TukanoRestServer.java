@@ -13,8 +13,12 @@ import srv.ControlResource;
 import srv.auth.RequestCookiesCleanupFilter;
 import srv.auth.RequestCookiesFilter;
 import tukano.impl.Token;
+import tukano.impl.rest.utils.CustomLoggingFilter;
+import tukano.impl.rest.utils.GenericExceptionMapper;
+import tukano.impl.rest.utils.MetricsFilter;
 import utils.Args;
 import utils.IP;
+import utils.Logs;
 import utils.Props;
 import java.util.Properties;
 
@@ -36,7 +40,7 @@ public class TukanoRestServer extends Application {
 	public TukanoRestServer() throws IOException {
 
         String webAppName = "tukano-123456789101112.azurewebsites.net";
-        serverURI = String.format(SERVER_BASE_URI, webAppName);
+        serverURI = System.getProperty("SERVER_URI", String.format(SERVER_BASE_URI, webAppName));
 
         // Load props
         try {
@@ -64,10 +68,16 @@ public class TukanoRestServer extends Application {
 		resources.add(RequestCookiesFilter.class);
      	resources.add(RequestCookiesCleanupFilter.class);
         resources.add(Authentication.class);
+        resources.add(MetricsFilter.class);
+        resources.add(MetricsFilter.Start.class);
+        resources.add(GenericExceptionMapper.class);
+        if (Boolean.parseBoolean(System.getProperty("LOG_HTTP")))
+            resources.add(CustomLoggingFilter.class);
 
 
         // Load properties and configurations
         Token.setSecret(Args.valueOf("-secret", ""));
+        Logs.install();
         Log.info("Tukano Application initialized with resources and singletons");
     }
 
@@ -0,0 +1,77 @@
+package tukano.impl.rest.utils;
+
+/**
+ * A single range of bytes, from first to last (inclusive), as in HTTP Range requests.
+ */
+public record ByteRange(long first, long last) {
+
+	public static final String UNIT = "bytes";
+
+	/**
+	 * Parses the Range header of a request for a resource with the given size.
+	 * 
+	 * Returns null if the header is absent, malformed, or asks for more than one range,
+	 * in which case it should be ignored and the whole resource sent.
+	 * The range returned may not be satisfiable.
+	 */
+	public static ByteRange parse(String header, long size) {
+		if (header == null || !header.startsWith(UNIT + "="))
+			return null;
+
+		var spec = header.substring(UNIT.length() + 1).trim();
+		var dash = spec.indexOf('-');
+		if (dash < 0 || spec.indexOf(',') >= 0)
+			return null;
+
+		try {
+			var first = spec.substring(0, dash).trim();
+			var last = spec.substring(dash + 1).trim();
+
+			// Only digits, as parseLong would also take signs, eg, bytes=--5
+			if (!isDigits(first) || !isDigits(last) || first.isEmpty() && last.isEmpty())
+				return null;
+
+			// bytes=-N, the last N bytes
+			if (first.isEmpty()) {
+				var suffix = Long.parseLong(last);
+				return suffix == 0 ? new ByteRange(size, size - 1) : new ByteRange(Math.max(0, size - suffix), size - 1);
+			}
+
+			// bytes=F-, from F to the end
+			var from = Long.parseLong(first);
+			if (last.isEmpty())
+				return new ByteRange(from, size - 1);
+
+			var to = Long.parseLong(last);
+			return from <= to ? new ByteRange(from, Math.min(to, size - 1)) : null;
+		} catch (NumberFormatException x) {
+			return null;
+		}
+	}
+
+	private static boolean isDigits(String s) {
+		return s.chars().allMatch(c -> c >= '0' && c <= '9');
+	}
+
+	public boolean satisfiable(long size) {
+		return first < size && first <= last;
+	}
+
+	public long length() {
+		return last - first + 1;
+	}
+
+	/**
+	 * The value of the Content-Range header of a response with this range.
+	 */
+	public String contentRange(long size) {
+		return String.format("%s %d-%d/%d", UNIT, first, last, size);
+	}
+
+	/**
+	 * The value of the Content-Range header of a response to an unsatisfiable range.
+	 */
+	public static String unsatisfied(long size) {
+		return String.format("%s */%d", UNIT, size);
+	}
+}
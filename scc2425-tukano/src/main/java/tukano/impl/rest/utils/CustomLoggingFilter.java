@@ -1,63 +1,242 @@
 package tukano.impl.rest.utils;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.glassfish.jersey.message.internal.ReaderWriter;
-
-import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.container.ContainerRequestFilter;
 import jakarta.ws.rs.container.ContainerResponseContext;
 import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+import utils.Logs;
 
-public class CustomLoggingFilter implements ContainerRequestFilter, ContainerResponseFilter {
+/**
+ * Logs the REST requests and their responses, one line per request, through Logs.
+ *
+ * Bodies are never buffered: only their first LOG_HTTP_BODY_BYTES are copied as they
+ * are read by the resource, or written to the client. Bodies of binary media types
+ * (blobs, mostly) are not copied at all, only their length is logged.
+ *
+ * Requests are sampled at LOG_HTTP_SAMPLE_RATE, or at the rate given for their route,
+ * eg, -DLOG_HTTP_SAMPLE_RATE./blobs/{blobId}=0.01, on top of the sampling of Logs.
+ * Off unless LOG_HTTP is set.
+ */
+@Provider
+public class CustomLoggingFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
 	private static Logger Log = Logger.getLogger(CustomLoggingFilter.class.getName());
 
+	static final String SAMPLE_RATE_PROPERTY = "LOG_HTTP_SAMPLE_RATE";
+	static final double SAMPLE_RATE = Double.parseDouble(System.getProperty(SAMPLE_RATE_PROPERTY, "1"));
+	static final int BODY_BYTES = Integer.parseInt(System.getProperty("LOG_HTTP_BODY_BYTES", "1024"));
+
+	static final String EXCHANGE = CustomLoggingFilter.class.getName() + ".exchange";
+
+	private static final Map<String, Double> routeSampleRates = routeSampleRates();
+
+	@Context
+	ResourceInfo resourceInfo;
+
+	/*
+	 * What is known of a sampled request, until its response is written.
+	 */
+	static class Exchange {
+		final String method;
+		final String path;
+		final String query;
+		final String headers;
+		Object request;
+		int status;
+		Object response;
+
+		Exchange(ContainerRequestContext reqCtx) {
+			var uri = reqCtx.getUriInfo().getRequestUri();
+			this.method = reqCtx.getMethod();
+			this.path = uri.getRawPath();
+			this.query = uri.getRawQuery();
+			this.headers = reqCtx.getHeaders().toString();
+		}
+
+		void log() {
+			Logs.info(Log, "http").with("method", method).with("path", path).with("query", query).with("status", status)
+					.with("headers", headers).with("request", request).with("response", response).log();
+		}
+	}
+
 	@Override
-	public void filter(ContainerRequestContext requestContext) throws IOException {
-		StringBuilder sb = new StringBuilder();
-		sb.append(" - queryParams: ").append(requestContext.getUriInfo().getQueryParameters());
-		sb.append(" - Path: ").append(requestContext.getUriInfo().getPath());
-		sb.append(" - Header: ").append(requestContext.getHeaders());
-		sb.append(" - Entity: ").append(getEntityBody(requestContext));
-		Log.info("HTTP REQUEST : " + sb.toString());
+	public void filter(ContainerRequestContext reqCtx) throws IOException {
+		if (!Log.isLoggable(Level.INFO) || !sampled())
+			return;
+
+		var exchange = new Exchange(reqCtx);
+		if (reqCtx.hasEntity())
+			if (isText(reqCtx.getMediaType())) {
+				var tee = new Tee();
+				reqCtx.setEntityStream(new TeeInputStream(reqCtx.getEntityStream(), tee));
+				exchange.request = tee;
+			} else
+				exchange.request = binary(reqCtx.getMediaType(), reqCtx.getLength());
+
+		reqCtx.setProperty(EXCHANGE, exchange);
 	}
 
-	private String getEntityBody(ContainerRequestContext requestContext) {
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		InputStream in = requestContext.getEntityStream();
+	@Override
+	public void filter(ContainerRequestContext reqCtx, ContainerResponseContext resCtx) throws IOException {
+		var exchange = (Exchange) reqCtx.getProperty(EXCHANGE);
+		if (exchange == null)
+			return;
+
+		exchange.status = resCtx.getStatus();
+		if (!resCtx.hasEntity()) {
+			reqCtx.removeProperty(EXCHANGE);
+			exchange.log();
+		} else if (!isText(resCtx.getMediaType())) {
+			reqCtx.removeProperty(EXCHANGE);
+			exchange.response = binary(resCtx.getMediaType(), resCtx.getLength());
+			exchange.log();
+		}
+	}
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext ctx) throws IOException {
+		var exchange = (Exchange) ctx.getProperty(EXCHANGE);
+		if (exchange == null) {
+			ctx.proceed();
+			return;
+		}
 
-		final StringBuilder b = new StringBuilder();
+		var tee = new Tee();
+		exchange.response = tee;
+		ctx.setOutputStream(new TeeOutputStream(ctx.getOutputStream(), tee));
 		try {
-			ReaderWriter.writeTo(in, out);
+			ctx.proceed();
+		} finally {
+			exchange.log();
+		}
+	}
 
-			byte[] requestEntity = out.toByteArray();
-			if (requestEntity.length == 0) {
-				b.append("").append("\n");
-			} else {
-				b.append(new String(requestEntity)).append("\n");
+	private boolean sampled() {
+		var rate = SAMPLE_RATE;
+		if (!routeSampleRates.isEmpty() && resourceInfo.getResourceMethod() != null)
+			rate = routeSampleRates.getOrDefault(MetricsFilter.routeOf(resourceInfo), rate);
+		return rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate;
+	}
+
+	private static Map<String, Double> routeSampleRates() {
+		var rates = new HashMap<String, Double>();
+		var prefix = SAMPLE_RATE_PROPERTY + ".";
+		System.getProperties().forEach((k, v) -> {
+			if (k.toString().startsWith(prefix))
+				rates.put(k.toString().substring(prefix.length()), Double.parseDouble(v.toString()));
+		});
+		return rates;
+	}
+
+	static boolean isText(MediaType type) {
+		if (type == null)
+			return false;
+		var subtype = type.getSubtype();
+		return type.getType().equals("text") || subtype.endsWith("json") || subtype.endsWith("xml")
+				|| subtype.equals(MediaType.APPLICATION_FORM_URLENCODED_TYPE.getSubtype());
+	}
+
+	private static String binary(MediaType type, int length) {
+		return String.format("<%s, %s bytes>", type, length < 0 ? "?" : length);
+	}
+
+	/*
+	 * The first BODY_BYTES of a body, and its total length. Formatted only if, and when, logged.
+	 */
+	static class Tee {
+		final byte[] head = new byte[BODY_BYTES];
+		int size;
+		long length;
+
+		void copy(byte[] b, int off, int len) {
+			if (size < head.length) {
+				var n = Math.min(len, head.length - size);
+				System.arraycopy(b, off, head, size, n);
+				size += n;
 			}
-			requestContext.setEntityStream(new ByteArrayInputStream(requestEntity));
+			length += len;
+		}
+
+		void copy(int b) {
+			if (size < head.length)
+				head[size++] = (byte) b;
+			length++;
+		}
 
-		} catch (IOException ex) {
-			// Handle logging error
+		@Override
+		public String toString() {
+			var text = new String(head, 0, size, StandardCharsets.UTF_8);
+			return length > size ? String.format("%s... (%d bytes)", text, length) : text;
 		}
-		return b.toString();
 	}
 
-	@Override
-	public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
-			throws IOException {
+	static class TeeInputStream extends FilterInputStream {
+		private final Tee tee;
+
+		TeeInputStream(InputStream in, Tee tee) {
+			super(in);
+			this.tee = tee;
+		}
 
-		StringBuilder sb = new StringBuilder();
-		sb.append("Header: ").append(responseContext.getHeaders());
-		sb.append(" - Entity (JSON): ").append( Entity.entity(responseContext.getEntity(), MediaType.APPLICATION_JSON).getEntity());
-		Log.info("HTTP RESPONSE : " + sb.toString());
+		@Override
+		public int read() throws IOException {
+			var b = super.read();
+			if (b >= 0)
+				tee.copy(b);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			var n = super.read(b, off, len);
+			if (n > 0)
+				tee.copy(b, off, n);
+			return n;
+		}
+
+		// Skipped bytes are not seen, so the copy would be wrong
+		@Override
+		public long skip(long n) throws IOException {
+			return n <= 0 ? 0 : Math.max(0, read(new byte[(int) Math.min(n, 8192)]));
+		}
 	}
 
-}
\ No newline at end of file
+	static class TeeOutputStream extends FilterOutputStream {
+		private final Tee tee;
+
+		TeeOutputStream(OutputStream out, Tee tee) {
+			super(out);
+			this.tee = tee;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			tee.copy(b);
+		}
+
+		// FilterOutputStream would write the bytes one at a time
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			tee.copy(b, off, len);
+		}
+	}
+}
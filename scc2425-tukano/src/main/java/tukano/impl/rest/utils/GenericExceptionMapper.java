@@ -1,5 +1,6 @@
 package tukano.impl.rest.utils;
 
+import java.util.NoSuchElementException;
 
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.MediaType;
@@ -7,6 +8,8 @@ import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 import jakarta.ws.rs.ext.ExceptionMapper;
 import jakarta.ws.rs.ext.Provider;
+import redis.clients.jedis.exceptions.JedisException;
+import utils.Limiter;
 
 @Provider
 public class GenericExceptionMapper implements ExceptionMapper<Throwable> {
@@ -18,6 +21,10 @@ public class GenericExceptionMapper implements ExceptionMapper<Throwable> {
 			return ((WebApplicationException) ex).getResponse();
 		}
 
+		// A backend is saturated: the client may retry later
+		if (ex instanceof Limiter.Exhausted || (ex instanceof JedisException && ex.getCause() instanceof NoSuchElementException))
+			return Response.status(Status.SERVICE_UNAVAILABLE).entity(ex.getMessage()).type(MediaType.APPLICATION_JSON).build();
+
 		ex.printStackTrace();
 
 		return Response.status(Status.INTERNAL_SERVER_ERROR).entity(ex.getMessage()).type(MediaType.APPLICATION_JSON).build();
@@ -0,0 +1,150 @@
+package tukano.impl.rest.utils;
+
+import java.io.IOException;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.PreMatching;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+import utils.Metrics;
+
+/**
+ * Records the latency, status and number in flight of the REST requests, per route, in
+ * Metrics. Routes are the templates of the paths (eg, /users/{userId}), not the paths
+ * themselves, so that there is a bounded number of series.
+ *
+ * Requests are timed until their response entity is written, which for blobs and long
+ * lists is most of the time; the writing is also timed on its own.
+ *
+ * Only standard JAX-RS is used, so that this works on Jersey and on RESTEasy alike.
+ * Start must be registered too, to time the requests that match no resource.
+ */
+@Provider
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+	static final String START = MetricsFilter.class.getName() + ".start";
+	static final String ROUTE = MetricsFilter.class.getName() + ".route";
+	static final String METHOD = MetricsFilter.class.getName() + ".method";
+	static final String STATUS = MetricsFilter.class.getName() + ".status";
+
+	static final String UNMATCHED = "unmatched";
+
+	private static final Map<Method, String> routes = new ConcurrentHashMap<>();
+
+	@Context
+	ResourceInfo resourceInfo;
+
+	/**
+	 * Takes the time requests arrive, before they are matched to a resource.
+	 */
+	@Provider
+	@PreMatching
+	public static class Start implements ContainerRequestFilter {
+		@Override
+		public void filter(ContainerRequestContext reqCtx) throws IOException {
+			reqCtx.setProperty(START, System.nanoTime());
+		}
+	}
+
+	@Override
+	public void filter(ContainerRequestContext reqCtx) throws IOException {
+		var method = resourceInfo.getResourceMethod();
+		if (method == null)
+			return;
+
+		var route = routeOf(resourceInfo);
+		reqCtx.setProperty(ROUTE, route);
+		Metrics.HTTP_IN_FLIGHT.labels(reqCtx.getMethod(), route).inc();
+	}
+
+	@Override
+	public void filter(ContainerRequestContext reqCtx, ContainerResponseContext resCtx) throws IOException {
+		var route = (String) reqCtx.getProperty(ROUTE);
+		if (route != null)
+			Metrics.HTTP_IN_FLIGHT.labels(reqCtx.getMethod(), route).dec();
+		else
+			reqCtx.setProperty(ROUTE, UNMATCHED);
+
+		// Otherwise, the request is recorded once its entity is written
+		if (resCtx.hasEntity()) {
+			reqCtx.setProperty(METHOD, reqCtx.getMethod());
+			reqCtx.setProperty(STATUS, resCtx.getStatus());
+		} else
+			record(reqCtx.getProperty(START), reqCtx.getMethod(), reqCtx.getProperty(ROUTE), resCtx.getStatus());
+	}
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext ctx) throws IOException {
+		var status = ctx.getProperty(STATUS);
+		if (status == null) {
+			ctx.proceed();
+			return;
+		}
+
+		var start = System.nanoTime();
+		var method = (String) ctx.getProperty(METHOD);
+		try {
+			ctx.proceed();
+		} finally {
+			var route = (String) ctx.getProperty(ROUTE);
+			Metrics.HTTP_WRITE.labels(method, route).since(start);
+			record(ctx.getProperty(START), method, route, (Integer) status);
+		}
+	}
+
+	private static void record(Object start, String method, Object route, int status) {
+		if (start != null)
+			Metrics.HTTP.labels(method, (String) route, Integer.toString(status)).since((Long) start);
+	}
+
+	/*
+	 * The route of the matched resource method.
+	 */
+	static String routeOf(ResourceInfo info) {
+		return routes.computeIfAbsent(info.getResourceMethod(), m -> routeOf(info.getResourceClass(), m));
+	}
+
+	/*
+	 * The template of the path of the method, from the @Path of its class and its own, or
+	 * those of the interface it implements.
+	 */
+	static String routeOf(Class<?> resource, Method method) {
+		var route = pathOf(resource);
+		if (route == null)
+			for (var i : resource.getInterfaces())
+				if ((route = pathOf(i)) != null)
+					break;
+
+		var sub = pathOf(method);
+		if (sub == null)
+			for (var i : resource.getInterfaces())
+				try {
+					if ((sub = pathOf(i.getMethod(method.getName(), method.getParameterTypes()))) != null)
+						break;
+				} catch (NoSuchMethodException x) {
+				}
+
+		return join(route == null ? "" : route, sub == null ? "" : sub);
+	}
+
+	private static String pathOf(AnnotatedElement e) {
+		var path = e.getAnnotation(Path.class);
+		return path == null ? null : path.value();
+	}
+
+	private static String join(String a, String b) {
+		var path = ("/" + a + "/" + b).replaceAll("/+", "/");
+		return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+	}
+}
@@ -1,5 +1,7 @@
 package tukano.impl.storage;
 
+import java.io.InputStream;
+import java.util.List;
 import java.util.function.Consumer;
 
 import tukano.api.Result;
@@ -7,6 +9,12 @@ import tukano.api.Result;
 public interface BlobStorage {
 		
 	public Result<Void> write(String path, byte[] bytes );
+
+	/**
+	 * Writes the blob as its bytes are read from the stream, without holding it whole in memory.
+	 * Like the byte[] variant, writing the same contents again is OK and different contents is a CONFLICT.
+	 */
+	public Result<Void> write(String path, InputStream in );
 		
 	public Result<Void> delete(String path);
 	
@@ -14,4 +22,24 @@ public interface BlobStorage {
 
 	public Result<Void> read(String path, Consumer<byte[]> sink);
 
+	/**
+	 * Opens the blob for streaming its bytes; the caller must close the returned stream.
+	 */
+	public Result<InputStream> open(String path);
+
+	/**
+	 * Opens up to length bytes of the blob, starting at offset, for streaming.
+	 */
+	public Result<InputStream> open(String path, long offset, long length);
+
+	/**
+	 * Returns the size of the blob, in bytes.
+	 */
+	public Result<Long> size(String path);
+
+	/**
+	 * Returns the paths of the blobs at, or under, the given path.
+	 */
+	public Result<List<String>> list(String path);
+
 }
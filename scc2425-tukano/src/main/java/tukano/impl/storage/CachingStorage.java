@@ -0,0 +1,397 @@
+package tukano.impl.storage;
+
+import static tukano.api.Result.error;
+import static tukano.api.Result.ok;
+import static tukano.api.Result.ErrorCode.BAD_REQUEST;
+import static tukano.api.Result.ErrorCode.INTERNAL_ERROR;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import tukano.api.Result;
+
+/**
+ * Read-through cache of the blobs of another (remote) BlobStorage, on local disk.
+ *
+ * Blobs are fetched whole on their first read and evicted, least recently used first,
+ * when the cache grows over its maximum size. Concurrent misses for the same blob
+ * share a single fetch. Ranged reads of blobs not yet cached are served by the remote
+ * storage, while the blob is fetched in the background. Fetches run on a pool of their
+ * own, of BLOB_CACHE_FETCHERS threads; when its queue is full, blobs are read from
+ * the remote storage without being cached.
+ *
+ * Blobs larger than the whole cache are never fetched: their size is checked first, and
+ * they are remembered (up to OVERSIZED_ENTRIES of them) and read from the remote storage.
+ *
+ * Writes and deletes go to the remote storage; deletes also evict. Blobs changed
+ * through other replicas are not evicted, so only immutable blobs should be cached.
+ */
+public class CachingStorage implements BlobStorage {
+	private static Logger Log = Logger.getLogger(CachingStorage.class.getName());
+
+	static final String DEFAULT_DIR = System.getProperty("BLOB_CACHE_DIR", "/tmp/blob-cache/");
+	static final long DEFAULT_MAX_BYTES = Long.parseLong(System.getProperty("BLOB_CACHE_MAX_BYTES", "1073741824"));
+	static final int CHUNK_SIZE = Integer.parseInt(System.getProperty("BLOB_CHUNK_SIZE", "65536"));
+	static final int FETCHERS = Integer.parseInt(System.getProperty("BLOB_CACHE_FETCHERS", "8"));
+	static final int FETCH_QUEUE = 256;
+	static final int OVERSIZED_ENTRIES = 1024;
+
+	private final BlobStorage remote;
+	private final Path dir;
+	private final long maxBytes;
+	private final Predicate<String> cacheable;
+
+	// Cached blobs and their sizes, least recently used first
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+	private long totalBytes;
+
+	// Blobs too large to be cached, least recently used first
+	private final LinkedHashMap<String, Boolean> oversized = new LinkedHashMap<>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > OVERSIZED_ENTRIES;
+		}
+	};
+
+	private final Map<String, CompletableFuture<Result<Path>>> fetching = new ConcurrentHashMap<>();
+	private final ThreadPoolExecutor fetchers;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder bytesSaved = new LongAdder();
+	private final LongAdder bytesFetched = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public CachingStorage(BlobStorage remote, Predicate<String> cacheable) {
+		this(remote, new File(DEFAULT_DIR), DEFAULT_MAX_BYTES, cacheable);
+	}
+
+	public CachingStorage(BlobStorage remote, File dir, long maxBytes, Predicate<String> cacheable) {
+		this.remote = remote;
+		this.dir = dir.toPath();
+		this.maxBytes = maxBytes;
+		this.cacheable = cacheable;
+
+		this.fetchers = new ThreadPoolExecutor(FETCHERS, FETCHERS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(FETCH_QUEUE), r -> {
+			var t = new Thread(r, "blob-cache-fetcher");
+			t.setDaemon(true);
+			return t;
+		});
+		fetchers.allowCoreThreadTimeOut(true);
+
+		dir.mkdirs();
+		recover();
+	}
+
+	@Override
+	public Result<Void> write(String path, byte[] bytes) {
+		return remote.write(path, bytes);
+	}
+
+	@Override
+	public Result<Void> write(String path, InputStream in) {
+		return remote.write(path, in);
+	}
+
+	@Override
+	public Result<Void> delete(String path) {
+		evictAll(path);
+		return remote.delete(path);
+	}
+
+	@Override
+	public Result<List<String>> list(String path) {
+		return remote.list(path);
+	}
+
+	@Override
+	public Result<byte[]> read(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+		if (!cacheable.test(path) || isOversized(path))
+			return remote.read(path);
+
+		return cached(path, file -> {
+			try {
+				return ok(Files.readAllBytes(file));
+			} catch (IOException e) {
+				e.printStackTrace();
+				return error(INTERNAL_ERROR);
+			}
+		}, () -> remote.read(path), 0, Long.MAX_VALUE);
+	}
+
+	@Override
+	public Result<Void> read(String path, Consumer<byte[]> sink) {
+		if (path == null)
+			return error(BAD_REQUEST);
+		if (!cacheable.test(path) || isOversized(path))
+			return remote.read(path, sink);
+
+		return cached(path, file -> {
+			try (var in = new FileRangeInputStream(file, 0, Long.MAX_VALUE, CHUNK_SIZE)) {
+				byte[] chunk;
+				while ((chunk = in.readNBytes(CHUNK_SIZE)).length > 0)
+					sink.accept(chunk);
+				return ok();
+			} catch (IOException e) {
+				e.printStackTrace();
+				return error(INTERNAL_ERROR);
+			}
+		}, () -> remote.read(path, sink), 0, Long.MAX_VALUE);
+	}
+
+	@Override
+	public Result<InputStream> open(String path) {
+		return open(path, 0, Long.MAX_VALUE);
+	}
+
+	@Override
+	public Result<InputStream> open(String path, long offset, long length) {
+		if (path == null)
+			return error(BAD_REQUEST);
+		if (!cacheable.test(path) || isOversized(path))
+			return remote.open(path, offset, length);
+
+		return cached(path, f -> {
+			try {
+				return ok(new FileRangeInputStream(f, offset, length, CHUNK_SIZE));
+			} catch (IOException e) {
+				e.printStackTrace();
+				return error(INTERNAL_ERROR);
+			}
+		}, () -> remote.open(path, offset, length), offset, length);
+	}
+
+	@Override
+	public Result<Long> size(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		var file = cacheable.test(path) ? lookup(path) : null;
+		return file != null ? ok(file.toFile().length()) : remote.size(path);
+	}
+
+	public long hits() {
+		return hits.sum();
+	}
+
+	public long misses() {
+		return misses.sum();
+	}
+
+	public double hitRatio() {
+		var total = hits() + misses();
+		return total == 0 ? 0 : (double) hits() / total;
+	}
+
+	/**
+	 * Bytes read from the cache, instead of from the remote storage.
+	 */
+	public long bytesSaved() {
+		return bytesSaved.sum();
+	}
+
+	public long bytesFetched() {
+		return bytesFetched.sum();
+	}
+
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	public synchronized long size() {
+		return totalBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CachingStorage[size=%d, hits=%d, misses=%d, hitRatio=%.3f, bytesSaved=%d, bytesFetched=%d, evictions=%d]",
+				size(), hits(), misses(), hitRatio(), bytesSaved(), bytesFetched(), evictions());
+	}
+
+	private interface Reader<T> {
+		Result<T> read(Path file);
+	}
+
+	/*
+	 * Reads the blob, or the range of it, from the cache, fetching it first if needed. Falls
+	 * back to reading from the remote storage if it could not be cached (eg, too large). A
+	 * range that misses is read from the remote storage at once, as seeking should not wait
+	 * for the whole blob, which is fetched in the background.
+	 */
+	private <T> Result<T> cached(String path, Reader<T> reader, Supplier<Result<T>> fallback, long offset, long length) {
+		var file = lookup(path);
+		if (file != null) {
+			var size = file.toFile().length();
+			var res = reader.read(file);
+			if (res.isOK()) {
+				hits.increment();
+				bytesSaved.add(Math.max(0, Math.min(length, size - offset)));
+				return res;
+			}
+			// Evicted meanwhile
+		}
+
+		misses.increment();
+		if (offset > 0 || length < Long.MAX_VALUE) {
+			fetch(path);
+			return fallback.get();
+		}
+
+		var fetched = fetch(path).join();
+		if (!fetched.isOK())
+			return fetched.error() == INTERNAL_ERROR ? fallback.get() : error(fetched.error());
+
+		var res = reader.read(fetched.value());
+		return res.isOK() ? res : fallback.get();
+	}
+
+	private synchronized Path lookup(String path) {
+		return entries.get(path) != null ? fileOf(path) : null;
+	}
+
+	/*
+	 * Fetches the blob into the cache; concurrent fetches of the same blob are shared.
+	 */
+	private CompletableFuture<Result<Path>> fetch(String path) {
+		var mine = new CompletableFuture<Result<Path>>();
+		var inflight = fetching.putIfAbsent(path, mine);
+		if (inflight != null)
+			return inflight;
+
+		try {
+			fetchers.execute(() -> {
+				try {
+					mine.complete(download(path));
+				} catch (Exception x) {
+					mine.complete(error(INTERNAL_ERROR));
+				} finally {
+					fetching.remove(path);
+				}
+			});
+		} catch (RejectedExecutionException x) {
+			fetching.remove(path);
+			mine.complete(error(INTERNAL_ERROR));
+		}
+		return mine;
+	}
+
+	private Result<Path> download(String path) throws IOException {
+		var expected = remote.size(path);
+		if (!expected.isOK())
+			return error(expected.error());
+		if (expected.value() > maxBytes) {
+			oversized(path);
+			return error(INTERNAL_ERROR);
+		}
+
+		var in = remote.open(path);
+		if (!in.isOK())
+			return error(in.error());
+
+		var file = fileOf(path);
+		Files.createDirectories(file.getParent());
+		var tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".part");
+		try (var is = in.value(); var out = new FileOutputStream(tmp.toFile())) {
+			var size = is.transferTo(out);
+			bytesFetched.add(size);
+			if (size > maxBytes) {
+				oversized(path);
+				return error(INTERNAL_ERROR);
+			}
+
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			admit(path, size);
+			Log.fine(() -> String.format("fetched : %s, %d bytes\n", path, size));
+			return ok(file);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private boolean isOversized(String path) {
+		synchronized (oversized) {
+			return oversized.get(path) != null;
+		}
+	}
+
+	private void oversized(String path) {
+		synchronized (oversized) {
+			oversized.put(path, true);
+		}
+		Log.fine(() -> String.format("oversized : %s\n", path));
+	}
+
+	private synchronized void admit(String path, long size) {
+		var previous = entries.put(path, size);
+		totalBytes += size - (previous == null ? 0 : previous);
+
+		var it = entries.entrySet().iterator();
+		while (totalBytes > maxBytes && it.hasNext()) {
+			var eldest = it.next();
+			if (eldest.getKey().equals(path))
+				continue;
+			it.remove();
+			totalBytes -= eldest.getValue();
+			fileOf(eldest.getKey()).toFile().delete();
+			evictions.increment();
+		}
+	}
+
+	private synchronized void evictAll(String path) {
+		synchronized (oversized) {
+			oversized.keySet().removeIf(key -> key.equals(path) || key.startsWith(path + "/"));
+		}
+
+		var it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			var e = it.next();
+			if (e.getKey().equals(path) || e.getKey().startsWith(path + "/")) {
+				it.remove();
+				totalBytes -= e.getValue();
+				fileOf(e.getKey()).toFile().delete();
+			}
+		}
+	}
+
+	/*
+	 * Rebuilds the index from the blobs cached on disk, oldest first.
+	 */
+	private void recover() {
+		try (var files = Files.walk(dir)) {
+			files.filter(Files::isRegularFile)
+					.filter(p -> !p.toString().endsWith(".part"))
+					.sorted(Comparator.comparingLong(p -> p.toFile().lastModified()))
+					.forEach(p -> admit(dir.relativize(p).toString(), p.toFile().length()));
+		} catch (IOException e) {
+			Log.warning(() -> String.format("recover : %s\n", e.getMessage()));
+		}
+	}
+
+	private Path fileOf(String path) {
+		return dir.resolve(path);
+	}
+}
@@ -9,8 +9,12 @@ import static tukano.api.Result.ErrorCode.NOT_FOUND;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
 import java.util.Arrays;
+import java.util.List;
 import java.util.function.Consumer;
 
 
@@ -19,6 +23,11 @@ import com.azure.core.util.BinaryData;
 import com.azure.storage.blob.BlobClient;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobContainerClientBuilder;
+import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.ListBlobsOptions;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.options.BlobInputStreamOptions;
 
 import tukano.api.Result;
 import utils.Hash;
@@ -68,6 +77,35 @@ public class CloudSystemStorage implements BlobStorage {
 		return ok();
 	}
 
+	@Override
+	public Result<Void> write(String path, InputStream in) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		BlobClient blob = containerClient.getBlobClient(path);
+
+		var digest = Hash.newSha256();
+		try (var din = new DigestInputStream(in, digest)) {
+			try {
+				// Uploaded in blocks, failing on commit if the blob already exists
+				blob.upload(din, false);
+				return ok();
+			} catch (BlobStorageException x) {
+				if (x.getStatusCode() != 409)
+					throw x;
+			}
+
+			// Finish hashing the upload and compare it with the existing blob, also streamed
+			din.transferTo(OutputStream.nullOutputStream());
+			try (var existing = blob.openInputStream()) {
+				return Arrays.equals(digest.digest(), Hash.sha256(existing)) ? ok() : error(CONFLICT);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			return error(INTERNAL_ERROR);
+		}
+	}
+
 	@Override
 	public Result<byte[]> read(String path) {
 		if (path == null)
@@ -100,27 +138,12 @@ public class CloudSystemStorage implements BlobStorage {
 				return error(NOT_FOUND);
 			}
 
-			// Use a ByteArrayOutputStream to capture the downloaded blob data
-			try (var outputStream = new java.io.ByteArrayOutputStream()) {
-				// Download the blob content into the output stream
-				blobClient.downloadStream(outputStream);
-
-				// Convert the output stream to a byte array
-				byte[] blobBytes = outputStream.toByteArray();
-
-				// Process the byte array in chunks
-				int offset = 0;
-				while (offset < blobBytes.length) {
-					// Determine the chunk size (remaining bytes or CHUNK_SIZE)
-					int chunkSize = Math.min(CHUNK_SIZE, blobBytes.length - offset);
-					byte[] chunk = Arrays.copyOfRange(blobBytes, offset, offset + chunkSize);
-
-					// Pass each chunk to the consumer
-					sink.accept(chunk);
-
-					// Update the offset for the next chunk
-					offset += chunkSize;
-				}
+			// Stream the blob, in chunks, instead of downloading it whole
+			try (var in = blobClient.openInputStream()) {
+				var buf = new byte[CHUNK_SIZE];
+				int n;
+				while ((n = in.readNBytes(buf, 0, CHUNK_SIZE)) > 0)
+					sink.accept(Arrays.copyOf(buf, n));
 			}
 
 			return ok();
@@ -130,6 +153,62 @@ public class CloudSystemStorage implements BlobStorage {
 		}
 	}
 
+	@Override
+	public Result<InputStream> open(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		try {
+			return ok(containerClient.getBlobClient(path).openInputStream());
+		} catch (BlobStorageException x) {
+			return error(x.getStatusCode() == 404 ? NOT_FOUND : INTERNAL_ERROR);
+		}
+	}
+
+	@Override
+	public Result<InputStream> open(String path, long offset, long length) {
+		if (path == null || offset < 0 || length < 0)
+			return error(BAD_REQUEST);
+
+		try {
+			// Only the requested range is downloaded
+			var range = length == Long.MAX_VALUE ? new BlobRange(offset) : new BlobRange(offset, length);
+			var options = new BlobInputStreamOptions().setRange(range);
+			return ok(containerClient.getBlobClient(path).openInputStream(options));
+		} catch (BlobStorageException x) {
+			return error(x.getStatusCode() == 404 ? NOT_FOUND : INTERNAL_ERROR);
+		}
+	}
+
+	@Override
+	public Result<Long> size(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		try {
+			return ok(containerClient.getBlobClient(path).getProperties().getBlobSize());
+		} catch (BlobStorageException x) {
+			return error(x.getStatusCode() == 404 ? NOT_FOUND : INTERNAL_ERROR);
+		}
+	}
+
+	@Override
+	public Result<List<String>> list(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		try {
+			var options = new ListBlobsOptions().setPrefix(path);
+			return ok(containerClient.listBlobs(options, null).stream()
+					.map(BlobItem::getName)
+					.filter(name -> name.equals(path) || name.startsWith(path + "/"))
+					.toList());
+		} catch (BlobStorageException x) {
+			x.printStackTrace();
+			return error(INTERNAL_ERROR);
+		}
+	}
+
 	@Override
 	public Result<Void> delete(String path) {
 		if (path == null) {
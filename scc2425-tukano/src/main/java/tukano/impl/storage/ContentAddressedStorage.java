@@ -0,0 +1,401 @@
+package tukano.impl.storage;
+
+import static tukano.api.Result.error;
+import static tukano.api.Result.ok;
+import static tukano.api.Result.ErrorCode.BAD_REQUEST;
+import static tukano.api.Result.ErrorCode.CONFLICT;
+import static tukano.api.Result.ErrorCode.INTERNAL_ERROR;
+import static tukano.api.Result.ErrorCode.NOT_FOUND;
+import static tukano.api.Result.ErrorCode.TIMEOUT;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import cache.CacheKey;
+import cache.NearCache;
+import cache.RedisCache;
+import redis.clients.jedis.Jedis;
+import tukano.api.Result;
+import utils.Hash;
+import utils.Hex;
+import utils.Metrics;
+import utils.Metrics.Timer;
+
+/**
+ * Content-addressed, deduplicating layout over another BlobStorage.
+ *
+ * Contents are stored once, under their SHA-256 digest. Each blob path is a small
+ * reference holding the digest of its contents, and the number of references to each
+ * digest is counted in Redis. Writing contents that are already stored only adds a
+ * reference, and writing different contents to an existing path is detected by
+ * comparing digests.
+ *
+ * Contents left without references are deleted after a grace period, so that a
+ * re-upload shortly after a delete does not need to transfer them again. As the counts
+ * in Redis may be lost, each reference is also recorded in the store, under BACKREFS
+ * and the digest, and contents are only deleted if none is left there.
+ *
+ * Paths written before this layout (with no reference) are still read as they are.
+ */
+public class ContentAddressedStorage implements BlobStorage {
+	private static Logger Log = Logger.getLogger(ContentAddressedStorage.class.getName());
+
+	static final String CONTENTS = "sha256/";
+	static final String REFS = "refs/";
+	static final String BACKREFS = "backrefs/";
+
+	static final String REF_COUNTS = "blob_refs";
+	static final String ORPHANS = "blob_orphans";
+	static final String COLLECTING = "blob_gc:";
+	static final String COLLECTED = "blob_gc_done:";
+	static final String DIGEST = CacheKey.BLOB_DIGEST.prefix();
+
+	static final long GRACE_PERIOD = Long.parseLong(System.getProperty("BLOB_GC_GRACE_MS", "600000"));
+	static final long COLLECTING_TTL = 60;
+
+	private static final Timer REF_COUNTING = Metrics.BACKEND.labels("redis", "blob_refs");
+
+	// Returns the new count and whether the contents are being collected
+	private static final String ACQUIRE_SCRIPT = """
+			local n = redis.call('HINCRBY', KEYS[1], ARGV[1], 1)
+			redis.call('ZREM', KEYS[2], ARGV[1])
+			return {n, redis.call('EXISTS', KEYS[3])}""";
+
+	private static final String RELEASE_SCRIPT = """
+			local n = redis.call('HINCRBY', KEYS[1], ARGV[1], -1)
+			if n <= 0 then
+				redis.call('HDEL', KEYS[1], ARGV[1])
+				redis.call('ZADD', KEYS[2], ARGV[2], ARGV[1])
+			end
+			return n""";
+
+	// Claims unreferenced contents for deletion, blocking new references until they are gone,
+	// and clears the signal of the previous collection, if any
+	private static final String COLLECT_SCRIPT = """
+			redis.call('ZREM', KEYS[2], ARGV[1])
+			if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 then
+				return 0
+			end
+			redis.call('SET', KEYS[3], '1', 'EX', ARGV[2])
+			redis.call('DEL', KEYS[4])
+			return 1""";
+
+	private final BlobStorage store;
+	private final NearCache cache = NearCache.getInstance();
+
+	public ContentAddressedStorage(BlobStorage store) {
+		this.store = store;
+
+		var collector = Executors.newSingleThreadScheduledExecutor(r -> {
+			var t = new Thread(r, "blob-collector");
+			t.setDaemon(true);
+			return t;
+		});
+		var period = Math.max(1000, GRACE_PERIOD / 10);
+		collector.scheduleWithFixedDelay(this::collect, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public Result<Void> write(String path, byte[] bytes) {
+		if (path == null || bytes == null)
+			return error(BAD_REQUEST);
+
+		return write(path, Hex.of(Hash.sha256(bytes)), () -> new ByteArrayInputStream(bytes));
+	}
+
+	/*
+	 * The digest is only known at the end of the stream, so it is spooled to a local
+	 * file while hashed, and only transferred to the store if the contents are new.
+	 */
+	@Override
+	public Result<Void> write(String path, InputStream in) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		Path spool = null;
+		try {
+			spool = Files.createTempFile("blob", ".part");
+			var digest = Hash.newSha256();
+			try (var din = new DigestInputStream(in, digest)) {
+				Files.copy(din, spool, StandardCopyOption.REPLACE_EXISTING);
+			}
+			var file = spool.toFile();
+			return write(path, Hex.of(digest.digest()), () -> new FileInputStream(file));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return error(INTERNAL_ERROR);
+		} finally {
+			if (spool != null)
+				spool.toFile().delete();
+		}
+	}
+
+	private interface Contents {
+		InputStream open() throws IOException;
+	}
+
+	private Result<Void> write(String path, String digest, Contents contents) {
+		var current = digestOf(path);
+		if (current != null)
+			return current.equals(digest) ? ok() : error(CONFLICT);
+
+		var acquired = acquire(digest);
+		if (!acquired.isOK())
+			return error(acquired.error());
+
+		try {
+			// Another upload of the same contents may not have stored them (yet), or failed to
+			var stored = store.size(contentsOf(digest)).isOK();
+			if (!stored)
+				try (var in = contents.open()) {
+					var res = store.write(contentsOf(digest), in);
+					if (!res.isOK()) {
+						release(digest);
+						return res;
+					}
+				}
+
+			// The back reference goes first, so that there is never a reference without one
+			var res = store.write(backrefOf(digest, path), digest.getBytes(StandardCharsets.US_ASCII));
+			if (res.isOK())
+				res = store.write(REFS + path, digest.getBytes(StandardCharsets.US_ASCII));
+			if (!res.isOK()) {
+				// Lost a race with another upload to the same path
+				release(digest);
+				if (res.error() == CONFLICT && digest.equals(digestOf(path)))
+					return ok();
+				store.delete(backrefOf(digest, path));
+				return res;
+			}
+			Log.fine(() -> String.format("write : %s -> %s, new contents = %s\n", path, digest, !stored));
+			return ok();
+		} catch (IOException e) {
+			e.printStackTrace();
+			release(digest);
+			return error(INTERNAL_ERROR);
+		}
+	}
+
+	@Override
+	public Result<byte[]> read(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		return store.read(resolve(path));
+	}
+
+	@Override
+	public Result<Void> read(String path, Consumer<byte[]> sink) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		return store.read(resolve(path), sink);
+	}
+
+	@Override
+	public Result<InputStream> open(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		return store.open(resolve(path));
+	}
+
+	@Override
+	public Result<InputStream> open(String path, long offset, long length) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		return store.open(resolve(path), offset, length);
+	}
+
+	@Override
+	public Result<Long> size(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		return store.size(resolve(path));
+	}
+
+	@Override
+	public Result<List<String>> list(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		var refs = store.list(REFS + path);
+		if (!refs.isOK())
+			return refs;
+
+		return ok(refs.value().stream().map(ref -> ref.substring(REFS.length())).toList());
+	}
+
+	/*
+	 * Deletes the references at, or under, the path; contents are collected later. Only
+	 * what is listed is deleted, and NOT_FOUND is returned if there is nothing to delete.
+	 */
+	@Override
+	public Result<Void> delete(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		var paths = list(path);
+		if (!paths.isOK())
+			return error(paths.error());
+
+		var released = new ArrayList<String>();
+		for (var p : paths.value()) {
+			var digest = digestOf(p);
+			if (digest != null && store.delete(REFS + p).isOK()) {
+				store.delete(backrefOf(digest, p));
+				released.add(digest);
+			}
+			cache.invalidate(DIGEST + p);
+		}
+		released.forEach(this::release);
+
+		// Blobs written before this layout, if any
+		var legacy = store.list(path);
+		if (!legacy.isOK())
+			return error(legacy.error());
+		for (var p : legacy.value()) {
+			var res = store.delete(p);
+			if (!res.isOK())
+				return res;
+		}
+		return paths.value().isEmpty() && legacy.value().isEmpty() ? error(NOT_FOUND) : ok();
+	}
+
+	/*
+	 * The digest of the contents of the path, or null if it has none.
+	 * References never change while they exist, so they can be cached.
+	 */
+	private String digestOf(String path) {
+		var key = DIGEST + path;
+		var digest = cache.get(key, String.class);
+		if (digest != null)
+			return digest;
+
+		var ref = store.read(REFS + path);
+		if (!ref.isOK())
+			return null;
+
+		digest = new String(ref.value(), StandardCharsets.US_ASCII);
+		cache.put(key, digest);
+		return digest;
+	}
+
+	private String resolve(String path) {
+		var digest = digestOf(path);
+		return digest != null ? contentsOf(digest) : path;
+	}
+
+	/**
+	 * Whether the path holds contents, which never change while they exist.
+	 */
+	public static boolean isContents(String path) {
+		return path.startsWith(CONTENTS);
+	}
+
+	private static String contentsOf(String digest) {
+		return CONTENTS + digest.substring(0, 2) + "/" + digest;
+	}
+
+	private static String backrefOf(String digest, String path) {
+		return BACKREFS + digest + "/" + path;
+	}
+
+	/*
+	 * Adds a reference to the digest, returning true if it is the only one. If the contents
+	 * are being collected, waits until they are gone, for as long as they can be claimed.
+	 */
+	private Result<Boolean> acquire(String digest) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			@SuppressWarnings("unchecked")
+			var res = (List<Long>) REF_COUNTING.time(() -> jedis.eval(ACQUIRE_SCRIPT, List.of(REF_COUNTS, ORPHANS, COLLECTING + digest), List.of(digest)));
+			if (res.get(1) == 1 && !awaitCollected(jedis, digest)) {
+				release(digest);
+				return error(TIMEOUT);
+			}
+			return ok(res.get(0) == 1);
+		}
+	}
+
+	/*
+	 * Blocks until the collector signals that it is done with the digest, on a list that each
+	 * waiter pushes back into, for the next one.
+	 */
+	private static boolean awaitCollected(Jedis jedis, String digest) {
+		var deadline = System.currentTimeMillis() + COLLECTING_TTL * 1000;
+		while (jedis.exists(COLLECTING + digest)) {
+			var remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+				return false;
+			if (jedis.blpop(remaining / 1000.0, COLLECTED + digest) != null)
+				jedis.rpush(COLLECTED + digest, "1");
+		}
+		return true;
+	}
+
+	private void release(String digest) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			REF_COUNTING.time(() -> jedis.eval(RELEASE_SCRIPT, List.of(REF_COUNTS, ORPHANS), List.of(digest, Long.toString(System.currentTimeMillis()))));
+		}
+	}
+
+	/*
+	 * Deletes the contents that have been unreferenced for longer than the grace period.
+	 */
+	private void collect() {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var expired = jedis.zrangeByScore(ORPHANS, 0, System.currentTimeMillis() - GRACE_PERIOD);
+			for (var digest : expired) {
+				var keys = List.of(REF_COUNTS, ORPHANS, COLLECTING + digest, COLLECTED + digest);
+				if (Long.valueOf(1).equals(jedis.eval(COLLECT_SCRIPT, keys, List.of(digest, Long.toString(COLLECTING_TTL))))) {
+					try {
+						collect(jedis, digest);
+					} finally {
+						var pipeline = jedis.pipelined();
+						pipeline.del(COLLECTING + digest);
+						pipeline.rpush(COLLECTED + digest, "1");
+						pipeline.expire(COLLECTED + digest, COLLECTING_TTL);
+						pipeline.sync();
+					}
+				}
+			}
+		} catch (Exception x) {
+			Log.warning(() -> String.format("collect : %s\n", x.getMessage()));
+		}
+	}
+
+	/*
+	 * Deletes claimed contents, unless the store still has references to them, which
+	 * happens if their count was lost; the count is then restored from them.
+	 */
+	private void collect(Jedis jedis, String digest) {
+		var backrefs = store.list(BACKREFS + digest);
+		if (!backrefs.isOK()) {
+			jedis.zadd(ORPHANS, System.currentTimeMillis(), digest);
+			return;
+		}
+		if (!backrefs.value().isEmpty()) {
+			jedis.hincrBy(REF_COUNTS, digest, backrefs.value().size());
+			Log.warning(() -> String.format("collect : %s still has %d references\n", digest, backrefs.value().size()));
+			return;
+		}
+		var res = store.delete(contentsOf(digest));
+		store.delete(BACKREFS + digest);
+		Log.fine(() -> String.format("collect : %s, %s\n", digest, res));
+	}
+}
@@ -0,0 +1,90 @@
+package tukano.impl.storage;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams a range of a file using positional reads, which do not depend on (or change)
+ * the position of the underlying channel.
+ * 
+ * Sending the range to a file avoids copying it through the heap, as it is transferred
+ * by the kernel; other outputs get it in chunks. Ranges are not memory-mapped: mappings
+ * cannot be released before they are garbage collected, and touching one whose file was
+ * truncated meanwhile crashes the JVM, rather than just ending the stream.
+ */
+class FileRangeInputStream extends InputStream {
+
+	private final FileChannel channel;
+	private final int chunkSize;
+	private final long end;
+	private long position;
+
+	FileRangeInputStream(Path file, long offset, long length, int chunkSize) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.chunkSize = chunkSize;
+		var size = channel.size();
+		this.position = Math.min(offset, size);
+		this.end = length > size - position ? size : position + length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		var b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (position >= end)
+			return -1;
+
+		var n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+		if (n < 0)
+			return -1;
+
+		position += n;
+		return n;
+	}
+
+	@Override
+	public long transferTo(OutputStream out) throws IOException {
+		var start = position;
+		if (out instanceof FileOutputStream fos) {
+			var target = fos.getChannel();
+			long n;
+			while (position < end && (n = channel.transferTo(position, end - position, target)) > 0)
+				position += n;
+		} else {
+			var buf = new byte[(int) Math.min(chunkSize, Math.max(1, end - position))];
+			int n;
+			while ((n = read(buf, 0, buf.length)) > 0)
+				out.write(buf, 0, n);
+		}
+		return position - start;
+	}
+
+	@Override
+	public long skip(long n) {
+		var skipped = Math.max(0, Math.min(n, end - position));
+		position += skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return (int) Math.min(Integer.MAX_VALUE, end - position);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -9,11 +9,18 @@ import static tukano.api.Result.ErrorCode.INTERNAL_ERROR;
 import static tukano.api.Result.ErrorCode.NOT_FOUND;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.function.Consumer;
 
 import tukano.api.Result;
@@ -22,11 +29,15 @@ import utils.IO;
 
 public class FilesystemStorage implements BlobStorage {
 	private final String rootDir;
-	private static final int CHUNK_SIZE = 4096;
+	private static final int CHUNK_SIZE = Integer.parseInt(System.getProperty("BLOB_CHUNK_SIZE", "65536"));
 	private static final String DEFAULT_ROOT_DIR = "/tmp/";
 
 	public FilesystemStorage() {
-		this.rootDir = DEFAULT_ROOT_DIR;
+		this(DEFAULT_ROOT_DIR);
+	}
+
+	public FilesystemStorage(String rootDir) {
+		this.rootDir = rootDir.endsWith("/") ? rootDir : rootDir + "/";
 	}
 	
 	@Override
@@ -47,6 +58,38 @@ public class FilesystemStorage implements BlobStorage {
 		return ok();
 	}
 
+	@Override
+	public Result<Void> write(String path, InputStream in) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		var file = toFile( path );
+		File tmp = null;
+		try {
+			// Written aside, so that a partial or conflicting upload never replaces the blob
+			tmp = File.createTempFile(file.getName(), ".part", file.getParentFile());
+
+			var digest = Hash.newSha256();
+			try (var din = new DigestInputStream(in, digest)) {
+				Files.copy(din, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			// Linking, unlike renaming, fails if the blob already exists
+			try {
+				Files.createLink(file.toPath(), tmp.toPath());
+				return ok();
+			} catch (FileAlreadyExistsException x) {
+				return sameContents(file, digest.digest()) ? ok() : error(CONFLICT);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return error(INTERNAL_ERROR);
+		} finally {
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
 	@Override
 	public Result<byte[]> read(String path) {
 		if (path == null)
@@ -69,10 +112,74 @@ public class FilesystemStorage implements BlobStorage {
 		if( ! file.exists() )
 			return error(NOT_FOUND);
 		
-		IO.read( file, CHUNK_SIZE, sink );
+		// Each chunk is read straight into the array handed to the sink
+		try (var in = new FileRangeInputStream( file.toPath(), 0, Long.MAX_VALUE, CHUNK_SIZE )) {
+			int n;
+			while ((n = in.available()) > 0) {
+				var chunk = new byte[Math.min(n, CHUNK_SIZE)];
+				var read = in.readNBytes(chunk, 0, chunk.length);
+				sink.accept(read == chunk.length ? chunk : Arrays.copyOf(chunk, read));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return error(INTERNAL_ERROR);
+		}
 		return ok();
 	}
 	
+	@Override
+	public Result<InputStream> open(String path) {
+		return open(path, 0, Long.MAX_VALUE);
+	}
+
+	@Override
+	public Result<InputStream> open(String path, long offset, long length) {
+		if (path == null || offset < 0 || length < 0)
+			return error(BAD_REQUEST);
+
+		var file = toFile( path );
+		if( ! file.isFile() )
+			return error(NOT_FOUND);
+
+		try {
+			return ok( new FileRangeInputStream( file.toPath(), offset, length, CHUNK_SIZE ) );
+		} catch (NoSuchFileException e) {
+			return error(NOT_FOUND);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return error(INTERNAL_ERROR);
+		}
+	}
+
+	@Override
+	public Result<Long> size(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		var file = toFile( path );
+		return file.isFile() ? ok( file.length() ) : error(NOT_FOUND);
+	}
+
+	@Override
+	public Result<List<String>> list(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		var file = toFile( path );
+		if( ! file.exists() )
+			return ok( List.of() );
+
+		var root = new File( rootDir ).toPath();
+		try (var files = Files.walk(file.toPath())) {
+			return ok( files.filter(Files::isRegularFile)
+					.map(p -> root.relativize(p).toString())
+					.toList() );
+		} catch (IOException e) {
+			e.printStackTrace();
+			return error(INTERNAL_ERROR);
+		}
+	}
+
 	@Override
 	public Result<Void> delete(String path) {
 		if (path == null)
@@ -91,6 +198,12 @@ public class FilesystemStorage implements BlobStorage {
 		return ok();
 	}
 	
+	private static boolean sameContents(File file, byte[] sha256) throws IOException {
+		try (var in = new FileInputStream(file)) {
+			return Arrays.equals(sha256, Hash.sha256(in));
+		}
+	}
+
 	private File toFile(String path) {
 		var res = new File( rootDir + path );
 		
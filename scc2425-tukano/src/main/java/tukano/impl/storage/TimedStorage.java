@@ -0,0 +1,75 @@
+package tukano.impl.storage;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.Consumer;
+
+import tukano.api.Result;
+import utils.Metrics;
+
+/**
+ * Records how long the calls to another BlobStorage take, in Metrics.BACKEND, with
+ * the name of the method as the op.
+ *
+ * Streams returned by open are only timed until they are opened; reading them is
+ * part of writing the response, which is timed by the REST layer.
+ */
+public class TimedStorage implements BlobStorage {
+
+	private final BlobStorage storage;
+	private final String backend;
+
+	public TimedStorage(BlobStorage storage, String backend) {
+		this.storage = storage;
+		this.backend = backend;
+	}
+
+	@Override
+	public Result<Void> write(String path, byte[] bytes) {
+		return timer("write").time(() -> storage.write(path, bytes));
+	}
+
+	@Override
+	public Result<Void> write(String path, InputStream in) {
+		return timer("write").time(() -> storage.write(path, in));
+	}
+
+	@Override
+	public Result<Void> delete(String path) {
+		return timer("delete").time(() -> storage.delete(path));
+	}
+
+	@Override
+	public Result<byte[]> read(String path) {
+		return timer("read").time(() -> storage.read(path));
+	}
+
+	@Override
+	public Result<Void> read(String path, Consumer<byte[]> sink) {
+		return timer("read").time(() -> storage.read(path, sink));
+	}
+
+	@Override
+	public Result<InputStream> open(String path) {
+		return timer("open").time(() -> storage.open(path));
+	}
+
+	@Override
+	public Result<InputStream> open(String path, long offset, long length) {
+		return timer("open").time(() -> storage.open(path, offset, length));
+	}
+
+	@Override
+	public Result<Long> size(String path) {
+		return timer("size").time(() -> storage.size(path));
+	}
+
+	@Override
+	public Result<List<String>> list(String path) {
+		return timer("list").time(() -> storage.list(path));
+	}
+
+	private Metrics.Timer timer(String op) {
+		return Metrics.BACKEND.labels(backend, op);
+	}
+}
@@ -7,38 +7,47 @@ import java.util.function.Function;
 import org.hibernate.Session;
 
 import tukano.api.Result;
+import utils.Metrics.Timer;
 
 public class DB {
 
+	// Time spent in the database, not waiting for a permit to use it
+	private static final Timer SQL = Metrics.BACKEND.labels("hibernate", "sql");
+	private static final Timer GET = Metrics.BACKEND.labels("hibernate", "get");
+	private static final Timer DELETE = Metrics.BACKEND.labels("hibernate", "delete");
+	private static final Timer UPDATE = Metrics.BACKEND.labels("hibernate", "update");
+	private static final Timer INSERT = Metrics.BACKEND.labels("hibernate", "insert");
+	private static final Timer TRANSACTION = Metrics.BACKEND.labels("hibernate", "transaction");
+
 	public static <T> List<T> sql(String query, Class<T> clazz) {
-		return Hibernate.getInstance().sql(query, clazz);
+		return Limiter.DB.get(() -> SQL.time(() -> Hibernate.getInstance().sql(query, clazz)));
 	}
 	
 	public static <T> List<T> sql(Class<T> clazz, String fmt, Object ... args) {
-		return Hibernate.getInstance().sql(String.format(fmt, args), clazz);
+		return Limiter.DB.get(() -> SQL.time(() -> Hibernate.getInstance().sql(String.format(fmt, args), clazz)));
 	}
 	
 	public static <T> Result<T> getOne(String id, Class<T> clazz) {
-		return Hibernate.getInstance().getOne(id, clazz);
+		return Limiter.DB.call(() -> GET.time(() -> Hibernate.getInstance().getOne(id, clazz)));
 	}
 	
 	public static <T> Result<T> deleteOne(T obj) {
-		return Hibernate.getInstance().deleteOne(obj);
+		return Limiter.DB.call(() -> DELETE.time(() -> Hibernate.getInstance().deleteOne(obj)));
 	}
 	
 	public static <T> Result<T> updateOne(T obj) {
-		return Hibernate.getInstance().updateOne(obj);
+		return Limiter.DB.call(() -> UPDATE.time(() -> Hibernate.getInstance().updateOne(obj)));
 	}
 	
 	public static <T> Result<T> insertOne( T obj) {
-		return Result.errorOrValue(Hibernate.getInstance().persistOne(obj), obj);
+		return Result.errorOrValue(Limiter.DB.call(() -> INSERT.time(() -> Hibernate.getInstance().persistOne(obj))), obj);
 	}
 	
 	public static <T> Result<T> transaction( Consumer<Session> c) {
-		return Hibernate.getInstance().execute( c::accept );
+		return Limiter.DB.call(() -> TRANSACTION.time(() -> Hibernate.getInstance().execute( c::accept )));
 	}
 	
 	public static <T> Result<T> transaction( Function<Session, Result<T>> func) {
-		return Hibernate.getInstance().execute( func );
+		return Limiter.DB.call(() -> TRANSACTION.time(() -> Hibernate.getInstance().execute( func )));
 	}
 }
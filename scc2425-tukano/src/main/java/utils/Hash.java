@@ -1,52 +1,113 @@
 package utils;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Digests and MACs. Digest and MAC instances are not thread-safe, so each thread
+ * keeps its own, reused across calls.
+ */
 public class Hash {
-		static MessageDigest md5;
-		static MessageDigest sha256;
-				
+		private static final String HMAC_SHA256 = "HmacSHA256";
+
+		private static final ThreadLocal<MessageDigest> md5 = ThreadLocal.withInitial(() -> digest("MD5"));
+		private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> digest("SHA-256"));
+		private static final ThreadLocal<KeyedMac> hmacSha256 = new ThreadLocal<>();
+
+		// A MAC, initialized with a key
+		private record KeyedMac(byte[] key, Mac mac) {
+		}
+
 		public static byte[] md5( byte[] data ) {
-			if (md5 == null) {
-				try {
-					md5 = MessageDigest.getInstance("MD5");
-				} catch (NoSuchAlgorithmException e) {
-					e.printStackTrace();
-				}
-			}
-			md5.reset();
-			md5.update( data == null ? new byte[0] : data );
-			return md5.digest();
+			var md = md5.get();
+			md.reset();
+			md.update( data == null ? new byte[0] : data );
+			return md.digest();
 		}
 		
 		public static byte[] sha256( byte[] data ) {
-			if (sha256 == null) {
-				try {
-					sha256 = MessageDigest.getInstance("SHA-256");
-				} catch (NoSuchAlgorithmException e) {
-					e.printStackTrace();
-				}
-			}
-			sha256.reset();
-			sha256.update( data == null ? new byte[0] : data );
-			return sha256.digest();
+			var md = sha256.get();
+			md.reset();
+			md.update( data == null ? new byte[0] : data );
+			return md.digest();
 		}
 		
 		
-		synchronized public static String of(Object ...values) {
-			if (md5 == null) {
-				try {
-					md5 = MessageDigest.getInstance("MD5");
-				} catch (NoSuchAlgorithmException e) {
-					e.printStackTrace();
-				}
+		/**
+		 * Returns a new SHA-256 digest, to hash data incrementally as it flows.
+		 */
+		public static MessageDigest newSha256() {
+			return digest("SHA-256");
+		}
+
+		/**
+		 * Hashes the remaining bytes of the stream, without reading them all into memory.
+		 */
+		public static byte[] sha256( InputStream in ) throws IOException {
+			var digest = newSha256();
+			var buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) > 0)
+				digest.update(buf, 0, n);
+			return digest.digest();
+		}
+
+		/**
+		 * HMAC-SHA256 of the concatenation of the data, with the given key.
+		 * The key is expected to be the same array across calls, as it is only re-applied when it changes.
+		 */
+		public static byte[] hmacSha256( byte[] key, byte[] ...data ) {
+			var keyed = hmacSha256.get();
+			if (keyed == null || keyed.key() != key) {
+				keyed = new KeyedMac(key, mac(HMAC_SHA256, key));
+				hmacSha256.set(keyed);
 			}
-			md5.reset();
+			var mac = keyed.mac();
+			mac.reset();
+			for( var d : data )
+				mac.update( d );
+			return mac.doFinal();
+		}
+
+		/**
+		 * Compares two digests or MACs in time that does not depend on where they differ.
+		 */
+		public static boolean equals( byte[] a, byte[] b ) {
+			return MessageDigest.isEqual(a, b);
+		}
+
+		public static String of(Object ...values) {
+			var md = md5.get();
+			md.reset();
 			for( var o : values )
-				md5.update( o.toString().getBytes() );
+				md.update( o.toString().getBytes() );
 
-			return String.format("%016X", new BigInteger(1, md5.digest()));
+			return String.format("%016X", new BigInteger(1, md.digest()));
 		};
+
+		private static MessageDigest digest(String algorithm) {
+			try {
+				return MessageDigest.getInstance(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		// HMAC pads keys with zeros, so an empty key is the same as a single zero byte, which the JCE accepts
+		private static Mac mac(String algorithm, byte[] key) {
+			try {
+				var mac = Mac.getInstance(algorithm);
+				mac.init(new SecretKeySpec(key.length == 0 ? new byte[1] : key, algorithm));
+				return mac;
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+		}
 }
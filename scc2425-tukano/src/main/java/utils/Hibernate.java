@@ -23,15 +23,17 @@ import tukano.api.Result.ErrorCode;
 public class Hibernate {
 //	private static Logger Log = Logger.getLogger(Hibernate.class.getName());
 
-	private static final String HIBERNATE_CFG_FILE = "hibernate.cfg.xml";
+	// If set, the configuration is read from this file rather than from hibernate.cfg.xml in the classpath
+	private static final String HIBERNATE_CFG_FILE = System.getProperty("HIBERNATE_CFG_FILE");
 	private SessionFactory sessionFactory;
 	private static Hibernate instance;
 
 	private Hibernate() {
 		try {
-			sessionFactory = new Configuration().configure().buildSessionFactory();
+			var cfg = new Configuration();
+			sessionFactory = (HIBERNATE_CFG_FILE == null ? cfg.configure() : cfg.configure(new File(HIBERNATE_CFG_FILE))).buildSessionFactory();
 
-		} catch (Exception e) { /*new File(HIBERNATE_CFG_FILE)*/
+		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
@@ -11,13 +11,15 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.function.Consumer;
+import java.util.logging.Logger;
 
 final public class IO {
+	private static Logger Log = Logger.getLogger(IO.class.getName());
 
 
 	public static void write( File out, byte[] data ) {
 		try {
-			System.out.println("WRITE>>>>" + out);
+			Logs.fine(Log, "write").with("file", out).with("size", data.length).log();
 			
 			Files.write( out.toPath(), data);
 		} catch( Exception x ) {
@@ -27,7 +29,7 @@ final public class IO {
 
 	public static byte[] read( File from) {
 		try {
-			System.out.println("READ>>>>" + from);
+			Logs.fine(Log, "read").with("file", from).log();
 			return Files.readAllBytes( from.toPath() );
 		} catch( Exception x ) {
 			x.printStackTrace();
@@ -1,50 +1,128 @@
 package utils;
 
+import java.io.IOException;
+import java.lang.reflect.Type;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
+/**
+ * JSON encoding and decoding, safe to use from any number of threads without locking.
+ *
+ * The mapper is configured once, here, and never changed afterwards; readers and
+ * writers are immutable and shared, one reader per decoded type.
+ */
 final public class JSON {
 	final static ObjectMapper mapper = new ObjectMapper();
+	final static ObjectWriter writer = mapper.writer();
 
-	synchronized public static final String encode(Object obj) {
+	private static final Map<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
+	private static final Metrics.Timer ENCODE = Metrics.JSON.labels("encode");
+	private static final Metrics.Timer DECODE = Metrics.JSON.labels("decode");
+
+	public static final String encode(Object obj) {
+		var start = System.nanoTime();
 		try {
-			return mapper.writeValueAsString(obj);
+			return writer.writeValueAsString(obj);
 		} catch (JsonProcessingException e) {
 			e.printStackTrace();
 			return "";
+		} finally {
+			ENCODE.since(start);
 		}
 	}
 
-	synchronized public static final <T> T decode(String json, Class<T> classOf) {
+	/**
+	 * Encodes straight into UTF-8 bytes, without a String in between.
+	 */
+	public static final byte[] encodeBytes(Object obj) {
+		var start = System.nanoTime();
 		try {
-			var res = mapper.readValue(json, classOf);
-			return res;
+			return writer.writeValueAsBytes(obj);
+		} catch (JsonProcessingException e) {
+			e.printStackTrace();
+			return new byte[0];
+		} finally {
+			ENCODE.since(start);
+		}
+	}
+
+	public static final <T> T decode(String json, Class<T> classOf) {
+		var start = System.nanoTime();
+		try {
+			return readerFor(classOf).readValue(json);
 		} catch (JsonProcessingException e) {
 			e.printStackTrace();
 			return null;
+		} finally {
+			DECODE.since(start);
 		}
 	}
 
-	synchronized public static final <T> T decode(String json, TypeReference<T> typeOf) {
+	public static final <T> T decode(String json, TypeReference<T> typeOf) {
+		var start = System.nanoTime();
 		try {
-			var res = mapper.readValue(json, typeOf);
-			return res;
+			return readerFor(typeOf.getType()).readValue(json);
 		} catch (JsonProcessingException e) {
 			e.printStackTrace();
 			return null;
+		} finally {
+			DECODE.since(start);
+		}
+	}
+
+	/**
+	 * Decodes UTF-8 bytes, without a String in between.
+	 */
+	public static final <T> T decode(byte[] json, Class<T> classOf) {
+		var start = System.nanoTime();
+		try {
+			return readerFor(classOf).readValue(json);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			DECODE.since(start);
+		}
+	}
+
+	public static final <T> T decode(byte[] json, TypeReference<T> typeOf) {
+		var start = System.nanoTime();
+		try {
+			return readerFor(typeOf.getType()).readValue(json);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			DECODE.since(start);
 		}
 	}
 
 	// New method to decode JSON arrays into List<T> (this method was made with the help of AI)
-	synchronized public static final <T> List<T> decodeList(String json, Class<T> elementClass) {
+	public static final <T> List<T> decodeList(String json, Class<T> elementClass) {
+		var start = System.nanoTime();
 		try {
-			return mapper.readValue(json, mapper.getTypeFactory().constructCollectionType(List.class, elementClass));
+			return readerFor(mapper.getTypeFactory().constructCollectionType(List.class, elementClass)).readValue(json);
 		} catch (JsonProcessingException e) {
 			e.printStackTrace();
 			return null;
+		} finally {
+			DECODE.since(start);
 		}
 	}
-}
\ No newline at end of file
+
+	private static ObjectReader readerFor(Type type) {
+		var reader = readers.get(type);
+		if (reader == null)
+			reader = readers.computeIfAbsent(type, t -> mapper.readerFor(t instanceof JavaType jt ? jt : mapper.constructType(t)));
+		return reader;
+	}
+}
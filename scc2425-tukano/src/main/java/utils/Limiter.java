@@ -0,0 +1,169 @@
+package utils;
+
+import static tukano.api.Result.error;
+import static tukano.api.Result.ErrorCode.TIMEOUT;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import tukano.api.Result;
+
+/**
+ * Bounds how many requests use a backend at the same time, so that many concurrent
+ * requests (eg, on virtual threads) queue here, for a bounded time, instead of
+ * exhausting the connections of the backend.
+ *
+ * Permits are reentrant: nested calls on the same thread use the permit they already hold.
+ * Work that outlives a call, such as writing a stream to a client, holds a Permit instead.
+ */
+public class Limiter {
+	private static Logger Log = Logger.getLogger(Limiter.class.getName());
+
+	static final long MAX_WAIT = Long.parseLong(System.getProperty("LIMIT_WAIT_MS", "5000"));
+
+	public static final Limiter DB = new Limiter("db", Integer.parseInt(System.getProperty("LIMIT_DB", "64")));
+	public static final Limiter BLOBS = new Limiter("blobs", Integer.parseInt(System.getProperty("LIMIT_BLOBS", "64")));
+
+	/**
+	 * Thrown by get when no permit became available in time.
+	 */
+	public static class Exhausted extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Exhausted(String name) {
+			super(String.format("%s: too many concurrent requests", name));
+		}
+	}
+
+	private final String name;
+	private final int permits;
+	private final Semaphore semaphore;
+	private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final Metrics.Timer waits;
+
+	public Limiter(String name, int permits) {
+		this.name = name;
+		this.permits = permits;
+		this.semaphore = new Semaphore(permits);
+		this.waits = Metrics.LIMITER_WAIT.labels(name);
+	}
+
+	/**
+	 * Runs the operation with a permit, or returns TIMEOUT if none became available in time.
+	 */
+	public <T> Result<T> call(Supplier<Result<T>> op) {
+		try {
+			return get(op);
+		} catch (Exhausted x) {
+			return error(TIMEOUT);
+		}
+	}
+
+	/**
+	 * Runs the operation with a permit, or throws Exhausted if none became available in time.
+	 */
+	public <T> T get(Supplier<T> op) {
+		var permit = permit();
+		try {
+			return op.get();
+		} finally {
+			permit.close();
+		}
+	}
+
+	/**
+	 * Starts the asynchronous operation with a permit, given back when it completes, or
+	 * returns TIMEOUT if none became available in time. Callers holding a permit use it.
+	 */
+	public <T> CompletableFuture<Result<T>> callAsync(Supplier<CompletableFuture<Result<T>>> op) {
+		if (depth.get()[0] > 0)
+			return op.get();
+
+		try {
+			acquire();
+		} catch (Exhausted x) {
+			return CompletableFuture.completedFuture(error(TIMEOUT));
+		}
+		calls.increment();
+		try {
+			return op.get().whenComplete((res, x) -> semaphore.release());
+		} catch (RuntimeException x) {
+			semaphore.release();
+			throw x;
+		}
+	}
+
+	/**
+	 * Takes a permit, to be closed by the same thread, or throws Exhausted if none became
+	 * available in time.
+	 */
+	public Permit permit() {
+		var held = depth.get();
+		if (held[0] == 0) {
+			acquire();
+			calls.increment();
+		}
+		held[0]++;
+		return new Permit(held);
+	}
+
+	/**
+	 * A permit, given back when closed.
+	 */
+	public class Permit implements AutoCloseable {
+		private final int[] held;
+		private boolean closed;
+
+		Permit(int[] held) {
+			this.held = held;
+		}
+
+		@Override
+		public void close() {
+			if (closed)
+				return;
+			closed = true;
+			if (--held[0] == 0)
+				semaphore.release();
+		}
+	}
+
+	public int inFlight() {
+		return permits - semaphore.availablePermits();
+	}
+
+	public long calls() {
+		return calls.sum();
+	}
+
+	public long rejected() {
+		return rejected.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Limiter[%s, permits=%d, inFlight=%d, calls=%d, rejected=%d]", name, permits, inFlight(), calls(), rejected());
+	}
+
+	private void acquire() {
+		var start = System.nanoTime();
+		try {
+			if (semaphore.tryAcquire(MAX_WAIT, TimeUnit.MILLISECONDS))
+				return;
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+		} finally {
+			waits.since(start);
+		}
+		rejected.increment();
+		Log.warning(() -> String.format("%s: no permit after %d ms\n", name, MAX_WAIT));
+		throw new Exhausted(name);
+	}
+}
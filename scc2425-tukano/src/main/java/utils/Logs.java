@@ -0,0 +1,230 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Structured log lines, made of an event and key=value fields, that cost next to nothing
+ * when they are not emitted.
+ *
+ * A line is only built if its logger is enabled for its level and, below WARNING, if it
+ * is sampled (LOG_SAMPLE_RATE, 1 by default); otherwise a shared no-op line is returned.
+ * Fields given as suppliers are only computed when the line is formatted, which, once
+ * install has been called, happens on a background thread: they must only capture values
+ * that are not changed afterwards.
+ *
+ *   Logs.info(Log, "upload").with("blobId", blobId).with("size", bytes.length).log();
+ */
+public class Logs {
+
+	static final double SAMPLE_RATE = Double.parseDouble(System.getProperty("LOG_SAMPLE_RATE", "1"));
+	static final int QUEUE_SIZE = Integer.parseInt(System.getProperty("LOG_QUEUE_SIZE", "8192"));
+
+	private static final LongAdder sampledOut = new LongAdder();
+
+	public static Line info(Logger log, String event) {
+		return line(log, Level.INFO, event);
+	}
+
+	public static Line fine(Logger log, String event) {
+		return line(log, Level.FINE, event);
+	}
+
+	public static Line warning(Logger log, String event) {
+		return line(log, Level.WARNING, event);
+	}
+
+	public static Line line(Logger log, Level level, String event) {
+		if (!log.isLoggable(level))
+			return Line.NONE;
+		if (level.intValue() < Level.WARNING.intValue() && SAMPLE_RATE < 1 && ThreadLocalRandom.current().nextDouble() >= SAMPLE_RATE) {
+			sampledOut.increment();
+			return Line.NONE;
+		}
+		return new Line(log, level, event);
+	}
+
+	/**
+	 * Lines not emitted because they were not sampled.
+	 */
+	public static long sampledOut() {
+		return sampledOut.sum();
+	}
+
+	/**
+	 * Makes the handlers of the root logger asynchronous, so that log records are formatted
+	 * and written by a background thread, instead of by the threads that log them.
+	 */
+	synchronized public static void install() {
+		var root = Logger.getLogger("");
+		for (var handler : root.getHandlers())
+			if (!(handler instanceof AsyncHandler)) {
+				root.removeHandler(handler);
+				root.addHandler(new AsyncHandler(handler, QUEUE_SIZE));
+			}
+	}
+
+	public static class Line {
+		static final Line NONE = new Line(null, null, null);
+
+		private final Logger log;
+		private final Level level;
+		private final String event;
+		private Object[] fields;
+		private int size;
+
+		Line(Logger log, Level level, String event) {
+			this.log = log;
+			this.level = level;
+			this.event = event;
+		}
+
+		public Line with(String key, Object value) {
+			if (this == NONE)
+				return this;
+
+			if (fields == null)
+				fields = new Object[8];
+			else if (size == fields.length)
+				fields = Arrays.copyOf(fields, size * 2);
+			fields[size++] = key;
+			fields[size++] = value;
+			return this;
+		}
+
+		/**
+		 * Adds a field whose value is only computed if, and when, the line is formatted.
+		 */
+		public Line with(String key, Supplier<?> value) {
+			return with(key, (Object) value);
+		}
+
+		public void log() {
+			if (this != NONE)
+				log.log(new Record(this));
+		}
+
+		String format() {
+			var sb = new StringBuilder(event);
+			for (int i = 0; i < size; i += 2) {
+				var value = fields[i + 1] instanceof Supplier<?> s ? s.get() : fields[i + 1];
+				sb.append(' ').append(fields[i]).append('=');
+				quote(sb, String.valueOf(value));
+			}
+			return sb.append('\n').toString();
+		}
+
+		private static void quote(StringBuilder sb, String value) {
+			if (value.indexOf(' ') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && !value.isEmpty())
+				sb.append(value);
+			else
+				sb.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+		}
+	}
+
+	/*
+	 * A record whose message is only formatted when first asked for. The source is set up
+	 * front, as otherwise it would be inferred, by walking the stack, on every record.
+	 */
+	static class Record extends LogRecord {
+		private static final long serialVersionUID = 1L;
+
+		private transient Line line;
+
+		Record(Line line) {
+			super(line.level, null);
+			this.line = line;
+			setLoggerName(line.log.getName());
+			setSourceClassName(line.log.getName());
+			setSourceMethodName(line.event);
+		}
+
+		@Override
+		public synchronized String getMessage() {
+			if (line != null) {
+				super.setMessage(line.format());
+				line = null;
+			}
+			return super.getMessage();
+		}
+	}
+
+	/*
+	 * Hands the records to another handler, on a background thread. When the queue is full,
+	 * records below WARNING are dropped, rather than slowing down whoever logs them.
+	 */
+	static class AsyncHandler extends Handler {
+		private final Handler handler;
+		private final BlockingQueue<LogRecord> queue;
+		private final LongAdder dropped = new LongAdder();
+
+		AsyncHandler(Handler handler, int capacity) {
+			this.handler = handler;
+			this.queue = new ArrayBlockingQueue<>(capacity);
+			setLevel(handler.getLevel());
+
+			var writer = new Thread(this::drain, "log-writer");
+			writer.setDaemon(true);
+			writer.start();
+		}
+
+		@Override
+		public void publish(LogRecord record) {
+			if (!isLoggable(record))
+				return;
+
+			// The caller is inferred from the stack, so it must be here, not on the background thread
+			record.getSourceClassName();
+			if (queue.offer(record))
+				return;
+
+			if (record.getLevel().intValue() < Level.WARNING.intValue())
+				dropped.increment();
+			else
+				try {
+					queue.put(record);
+				} catch (InterruptedException x) {
+					Thread.currentThread().interrupt();
+				}
+		}
+
+		@Override
+		public void flush() {
+			LogRecord record;
+			while ((record = queue.poll()) != null)
+				handler.publish(record);
+			handler.flush();
+		}
+
+		@Override
+		public void close() {
+			flush();
+			handler.close();
+		}
+
+		private void drain() {
+			for (;;)
+				try {
+					handler.publish(queue.take());
+					if (queue.isEmpty()) {
+						var n = dropped.sumThenReset();
+						if (n > 0)
+							handler.publish(new LogRecord(Level.WARNING, String.format("log queue full: %d records dropped\n", n)));
+						handler.flush();
+					}
+				} catch (InterruptedException x) {
+					return;
+				} catch (RuntimeException x) {
+					x.printStackTrace();
+				}
+		}
+	}
+}
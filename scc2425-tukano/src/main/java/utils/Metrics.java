@@ -0,0 +1,208 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Latency histograms and gauges, kept in memory, and exposed in the Prometheus text
+ * format (by ControlResource, at /ctrl/metrics).
+ *
+ * Metrics are declared once, as families with a name and the names of their labels;
+ * each combination of label values is a series of its own. Recording is lock-free, and
+ * series used in hot paths should be looked up once and kept, eg, in a static field.
+ */
+public class Metrics {
+
+	// Upper bounds of the buckets of the histograms, in seconds
+	static final double[] BUCKETS = { 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+
+	private static final List<Family<?>> families = new CopyOnWriteArrayList<>();
+
+	public static final Family<Timer> HTTP = timers("tukano_http_request_seconds",
+			"Time to handle REST requests, including writing the response", "method", "route", "status");
+
+	public static final Family<Timer> HTTP_WRITE = timers("tukano_http_response_write_seconds",
+			"Time to serialize and write the entities of REST responses", "method", "route");
+
+	public static final Family<Gauge> HTTP_IN_FLIGHT = gauges("tukano_http_requests_in_flight",
+			"REST requests being handled", "method", "route");
+
+	public static final Family<Timer> BACKEND = timers("tukano_backend_seconds",
+			"Time spent in calls to the database, Redis and the blob storage", "backend", "op");
+
+	public static final Family<Timer> JSON = timers("tukano_json_seconds",
+			"Time spent encoding and decoding JSON", "op");
+
+	public static final Family<Timer> LIMITER_WAIT = timers("tukano_limiter_wait_seconds",
+			"Time spent waiting for a permit to use a backend", "limiter");
+
+	/**
+	 * A metric with a series for each combination of the values of its labels.
+	 */
+	public static class Family<M extends Metric> {
+		private final String name;
+		private final String help;
+		private final String type;
+		private final List<String> labelNames;
+		private final Supplier<M> factory;
+		private final Map<List<String>, M> series = new ConcurrentHashMap<>();
+
+		Family(String name, String help, String type, List<String> labelNames, Supplier<M> factory) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+			this.labelNames = labelNames;
+			this.factory = factory;
+		}
+
+		/**
+		 * The series with the given label values, in the order of the label names.
+		 */
+		public M labels(String... values) {
+			if (values.length != labelNames.size())
+				throw new IllegalArgumentException(String.format("%s: expected labels %s", name, labelNames));
+			return series.computeIfAbsent(List.of(values), __ -> factory.get());
+		}
+
+		void write(StringBuilder sb) {
+			sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+			sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+			series.forEach((values, metric) -> {
+				var labels = new ArrayList<String>();
+				for (int i = 0; i < values.size(); i++)
+					labels.add(String.format("%s=\"%s\"", labelNames.get(i), escape(values.get(i))));
+				metric.write(sb, name, labels);
+			});
+		}
+	}
+
+	public interface Metric {
+		void write(StringBuilder sb, String name, List<String> labels);
+	}
+
+	/**
+	 * A histogram of durations.
+	 */
+	public static class Timer implements Metric {
+		private static final long[] BOUNDS = Arrays.stream(BUCKETS).mapToLong(s -> Math.round(s * 1e9)).toArray();
+
+		private final LongAdder[] counts = new LongAdder[BOUNDS.length + 1];
+		private final LongAdder sum = new LongAdder();
+
+		Timer() {
+			for (int i = 0; i < counts.length; i++)
+				counts[i] = new LongAdder();
+		}
+
+		public void record(long nanos) {
+			int i = 0;
+			while (i < BOUNDS.length && nanos > BOUNDS[i])
+				i++;
+			counts[i].increment();
+			sum.add(nanos);
+		}
+
+		/**
+		 * Records the time since the given start, as returned by System.nanoTime.
+		 */
+		public void since(long start) {
+			record(System.nanoTime() - start);
+		}
+
+		public <T> T time(Supplier<T> op) {
+			var start = System.nanoTime();
+			try {
+				return op.get();
+			} finally {
+				since(start);
+			}
+		}
+
+		public void time(Runnable op) {
+			var start = System.nanoTime();
+			try {
+				op.run();
+			} finally {
+				since(start);
+			}
+		}
+
+		@Override
+		public void write(StringBuilder sb, String name, List<String> labels) {
+			long cumulative = 0;
+			for (int i = 0; i < counts.length; i++) {
+				cumulative += counts[i].sum();
+				var le = i < BUCKETS.length ? Double.toString(BUCKETS[i]) : "+Inf";
+				line(sb, name + "_bucket", with(labels, "le=\"" + le + "\""), Long.toString(cumulative));
+			}
+			line(sb, name + "_sum", labels, Double.toString(sum.sum() / 1e9));
+			line(sb, name + "_count", labels, Long.toString(cumulative));
+		}
+	}
+
+	/**
+	 * A value that goes up and down, eg, the number of requests in flight.
+	 */
+	public static class Gauge implements Metric {
+		private final LongAdder value = new LongAdder();
+
+		public void inc() {
+			value.increment();
+		}
+
+		public void dec() {
+			value.decrement();
+		}
+
+		@Override
+		public void write(StringBuilder sb, String name, List<String> labels) {
+			line(sb, name, labels, Long.toString(value.sum()));
+		}
+	}
+
+	public static Family<Timer> timers(String name, String help, String... labelNames) {
+		return register(new Family<>(name, help, "histogram", List.of(labelNames), Timer::new));
+	}
+
+	public static Family<Gauge> gauges(String name, String help, String... labelNames) {
+		return register(new Family<>(name, help, "gauge", List.of(labelNames), Gauge::new));
+	}
+
+	/**
+	 * All the metrics, in the Prometheus text exposition format (version 0.0.4).
+	 */
+	public static String prometheus() {
+		var sb = new StringBuilder();
+		for (var family : families)
+			family.write(sb);
+		return sb.toString();
+	}
+
+	private static <M extends Metric> Family<M> register(Family<M> family) {
+		families.add(family);
+		return family;
+	}
+
+	private static void line(StringBuilder sb, String name, List<String> labels, String value) {
+		sb.append(name);
+		if (!labels.isEmpty())
+			sb.append('{').append(String.join(",", labels)).append('}');
+		sb.append(' ').append(value).append('\n');
+	}
+
+	private static List<String> with(List<String> labels, String label) {
+		var all = new ArrayList<>(labels);
+		all.add(label);
+		return all;
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -1,6 +1,8 @@
 package utils;
 
+import java.util.Collection;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A collection of convenience methods for dealing with threads.
@@ -29,4 +31,29 @@ final public class Queues {
 			} catch (InterruptedException e) {
 			}
 	}
+
+	/**
+	 * Moves up to max elements from the queue into the collection, waiting at most
+	 * timeout milliseconds for them to become available.
+	 * 
+	 * @return the number of elements moved
+	 */
+	static public <T> int drainInto(BlockingQueue<T> queue, Collection<? super T> into, int max, long timeout) {
+		var deadline = System.currentTimeMillis() + timeout;
+		int n = queue.drainTo(into, max);
+		while (n < max) {
+			var remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+				break;
+			try {
+				var val = queue.poll(remaining, TimeUnit.MILLISECONDS);
+				if (val == null)
+					break;
+				into.add(val);
+				n += 1 + queue.drainTo(into, max - n - 1);
+			} catch (InterruptedException e) {
+			}
+		}
+		return n;
+	}
 }
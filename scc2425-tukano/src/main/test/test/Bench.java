@@ -0,0 +1,53 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A minimal throughput harness: runs an operation from many threads, for a while,
+ * and prints how many times per second it completed.
+ */
+public class Bench {
+
+	/**
+	 * Runs the operation, which returns false on failure, once to warm up and then measured.
+	 */
+	public static void run(String name, int threads, int seconds, BooleanSupplier op) throws InterruptedException {
+		measure(threads, 1, op);
+		var ops = measure(threads, seconds, op);
+		System.out.printf("%-16s threads=%d ops/s=%,d%n", name, threads, ops / seconds);
+	}
+
+	private static long measure(int threads, int seconds, BooleanSupplier op) throws InterruptedException {
+		var ops = new LongAdder();
+		var start = new CountDownLatch(1);
+		var deadline = new long[1];
+
+		var workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			var t = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException x) {
+					return;
+				}
+				while (System.nanoTime() < deadline[0]) {
+					if (!op.getAsBoolean())
+						throw new IllegalStateException("operation failed");
+					ops.increment();
+				}
+			});
+			t.start();
+			workers.add(t);
+		}
+
+		deadline[0] = System.nanoTime() + seconds * 1_000_000_000L;
+		start.countDown();
+		for (var t : workers)
+			t.join();
+
+		return ops.sum();
+	}
+}
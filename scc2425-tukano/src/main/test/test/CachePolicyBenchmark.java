@@ -0,0 +1,127 @@
+package test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import cache.CacheKey;
+
+/**
+ * Compares cache policies (no TTL, fixed TTL, jittered TTL) by simulating a Redis with
+ * a maxmemory limit and LRU eviction, under a Zipf-distributed stream of lookups that
+ * starts with a cold cache, eg, after a deploy. No Redis is needed.
+ *
+ * For each policy, it prints the hit ratio, the memory used, the evictions, the peak
+ * number of database loads in any one second and, for staleness, the age of the oldest
+ * value served.
+ *
+ * Usage: CachePolicyBenchmark [keys] [lookups/s] [minutes] [maxmemory MB]
+ */
+public class CachePolicyBenchmark {
+
+	record Policy(String name, long ttl, double jitter) {
+	}
+
+	record Entry(int size, long expires, long loaded) {
+	}
+
+	public static void main(String[] args) {
+		var keys = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+		var rate = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+		var minutes = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+		var maxMemory = (args.length > 3 ? Long.parseLong(args[3]) : 64) << 20;
+
+		var ttl = CacheKey.SHORT.baseTtl();
+		var policies = new Policy[] {
+				new Policy("no-ttl", Long.MAX_VALUE, 0),
+				new Policy("ttl", ttl, 0),
+				new Policy("ttl+jitter", ttl, 0.1),
+		};
+
+		System.out.printf("keys=%,d lookups/s=%,d minutes=%d maxmemory=%dMB ttl=%ds%n", keys, rate, minutes, maxMemory >> 20, ttl / 1000);
+		System.out.printf("%-12s %8s %10s %12s %14s %12s%n", "policy", "hits", "memory MB", "evictions", "peak loads/s", "max age s");
+		for (var policy : policies)
+			simulate(policy, keys, rate, minutes, maxMemory);
+	}
+
+	static void simulate(Policy policy, int keys, int rate, int minutes, long maxMemory) {
+		// Same workload for every policy
+		var random = new Random(1);
+		var zipf = zipf(keys, 0.99);
+		var sizes = new int[keys];
+		for (int k = 0; k < keys; k++)
+			sizes[k] = 200 + random.nextInt(4 * 1024);
+
+		var lru = new LinkedHashMap<Integer, Entry>(keys, 0.75f, true);
+		var expiries = new PriorityQueue<long[]>((a, b) -> Long.compare(a[0], b[0]));
+		long memory = 0, memorySum = 0, hits = 0, lookups = 0, evictions = 0, peakLoads = 0, maxAge = 0;
+
+		for (long second = 0; second < minutes * 60L; second++) {
+			long loads = 0;
+			for (int i = 0; i < rate; i++) {
+				var now = second * 1000 + i * 1000L / rate;
+
+				// Active expiry, as Redis does in the background
+				while (!expiries.isEmpty() && expiries.peek()[0] <= now) {
+					var k = (int) expiries.poll()[1];
+					var e = lru.get(k);
+					if (e != null && e.expires() <= now) {
+						lru.remove(k);
+						memory -= e.size();
+					}
+				}
+
+				var k = key(zipf, random.nextDouble());
+				lookups++;
+				var e = lru.get(k);
+				if (e != null && e.expires() > now) {
+					hits++;
+					maxAge = Math.max(maxAge, now - e.loaded());
+					continue;
+				}
+
+				loads++;
+				if (e != null)
+					memory -= e.size();
+				var expires = policy.ttl() == Long.MAX_VALUE ? Long.MAX_VALUE
+						: now + Math.round(policy.ttl() * (1 + policy.jitter() * (2 * random.nextDouble() - 1)));
+				lru.put(k, new Entry(sizes[k], expires, now));
+				memory += sizes[k];
+				if (expires != Long.MAX_VALUE)
+					expiries.add(new long[] { expires, k });
+
+				// LRU eviction at maxmemory
+				var it = lru.values().iterator();
+				while (memory > maxMemory && it.hasNext()) {
+					memory -= it.next().size();
+					it.remove();
+					evictions++;
+				}
+			}
+			peakLoads = Math.max(peakLoads, second >= 60 ? loads : 0);
+			memorySum += memory;
+		}
+
+		System.out.printf("%-12s %7.1f%% %10.1f %,12d %,14d %12d%n", policy.name(), 100.0 * hits / lookups,
+				memorySum / (minutes * 60.0) / (1 << 20), evictions, peakLoads, maxAge / 1000);
+	}
+
+	/*
+	 * The cumulative distribution of a Zipf distribution with exponent s over n keys.
+	 */
+	static double[] zipf(int n, double s) {
+		var cdf = new double[n];
+		double sum = 0;
+		for (int k = 0; k < n; k++)
+			cdf[k] = sum += 1 / Math.pow(k + 1, s);
+		for (int k = 0; k < n; k++)
+			cdf[k] /= sum;
+		return cdf;
+	}
+
+	static int key(double[] cdf, double p) {
+		var k = Arrays.binarySearch(cdf, p);
+		return Math.min(cdf.length - 1, k >= 0 ? k : -k - 1);
+	}
+}
@@ -0,0 +1,233 @@
+package test;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import tukano.api.Result;
+import tukano.impl.storage.BlobStorage;
+import tukano.impl.storage.CachingStorage;
+import tukano.impl.storage.FilesystemStorage;
+import utils.Sleep;
+
+/**
+ * Exercises CachingStorage with a FilesystemStorage, made slower, standing in for the
+ * remote storage: contents served from the cache, single-flight fetching of concurrent
+ * misses, ranged reads, blobs too large to be cached, eviction and, under a Zipf-distributed workload, the hit ratio.
+ *
+ * Exits with 1 if any check fails.
+ *
+ * Usage: CachingStorageTest [blobs] [blob KB] [cache KB] [reads] [remote latency ms]
+ */
+public class CachingStorageTest {
+
+	static int failures;
+
+	public static void main(String[] args) throws Exception {
+		var blobs = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		var blobSize = (args.length > 1 ? Integer.parseInt(args[1]) : 64) << 10;
+		var cacheSize = (long) (args.length > 2 ? Integer.parseInt(args[2]) : 4096) << 10;
+		var reads = args.length > 3 ? Integer.parseInt(args[3]) : 20_000;
+		var latency = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+		var remoteDir = Files.createTempDirectory("remote").toString();
+		var cacheDir = Files.createTempDirectory("cache").toFile();
+		var remote = new SlowStorage(new FilesystemStorage(remoteDir), latency);
+		var cache = new CachingStorage(remote, cacheDir, cacheSize, path -> true);
+
+		var random = new Random(1);
+		var contents = new byte[blobs][];
+		for (int i = 0; i < blobs; i++) {
+			contents[i] = new byte[blobSize];
+			random.nextBytes(contents[i]);
+			check("write", cache.write(path(i), contents[i]).isOK());
+		}
+
+		// Concurrent misses of the same blob share a single fetch
+		var threads = 16;
+		var pool = Executors.newFixedThreadPool(threads);
+		var start = new CountDownLatch(1);
+		var same = new AtomicInteger();
+		var futures = new ArrayList<Future<?>>();
+		for (int t = 0; t < threads; t++)
+			futures.add(pool.submit(() -> {
+				start.await();
+				if (Arrays.equals(contents[0], cache.read(path(0)).value()))
+					same.incrementAndGet();
+				return null;
+			}));
+		start.countDown();
+		for (var f : futures)
+			f.get();
+		check("concurrent misses read the blob", same.get() == threads);
+		check("concurrent misses fetch once, opens = " + remote.opens.get(), remote.opens.get() == 1);
+
+		// Served from the cache from then on
+		var opens = remote.opens.get();
+		check("hit read", Arrays.equals(contents[0], cache.read(path(0)).value()));
+		check("hit open", Arrays.equals(contents[0], readAll(cache.open(path(0)))));
+		check("hits do not go remote", remote.opens.get() == opens);
+
+		// Ranged reads: a miss is served by the remote storage, while the blob is fetched
+		var saved = cache.bytesSaved();
+		var fetched = cache.bytesFetched();
+		check("ranged miss", Arrays.equals(Arrays.copyOfRange(contents[1], 100, 1100), readAll(cache.open(path(1), 100, 1000))));
+		for (int i = 0; i < 500 && cache.bytesFetched() < fetched + blobSize; i++)
+			Sleep.ms(10);
+		check("ranged hit", Arrays.equals(Arrays.copyOfRange(contents[1], 100, 1100), readAll(cache.open(path(1), 100, 1000))));
+		check("ranged hit saves only its range, saved = " + (cache.bytesSaved() - saved), cache.bytesSaved() - saved == 1000);
+
+		// Blobs larger than the cache are read from the remote storage once per read, and never fetched
+		var large = new byte[(int) Math.min(Integer.MAX_VALUE - 8, cacheSize + 1)];
+		random.nextBytes(large);
+		check("write large", cache.write("large", large).isOK());
+		opens = remote.opens.get();
+		fetched = cache.bytesFetched();
+		check("large read", Arrays.equals(large, cache.read("large").value()));
+		check("large read again", Arrays.equals(large, cache.read("large").value()));
+		check("large reads go remote once each, opens = " + (remote.opens.get() - opens), remote.opens.get() - opens == 2);
+		check("large is not fetched", cache.bytesFetched() == fetched);
+
+		// Zipf-distributed reads, from several threads, over more blobs than fit
+		var zipf = zipf(blobs, 0.99);
+		var mismatches = new AtomicInteger();
+		var t0 = System.nanoTime();
+		futures.clear();
+		for (int t = 0; t < threads; t++) {
+			var seed = t;
+			futures.add(pool.submit(() -> {
+				var r = new Random(seed);
+				for (int i = 0; i < reads / threads; i++) {
+					var k = sample(zipf, r);
+					if (!Arrays.equals(contents[k], cache.read(path(k)).value()))
+						mismatches.incrementAndGet();
+				}
+				return null;
+			}));
+		}
+		for (var f : futures)
+			f.get();
+		var elapsed = (System.nanoTime() - t0) / 1e9;
+		pool.shutdown();
+
+		check("zipf reads match, mismatches = " + mismatches.get(), mismatches.get() == 0);
+		check("cache stays within its size, size = " + cache.size(), cache.size() <= cacheSize);
+		check("blobs are evicted", blobs * (long) blobSize <= cacheSize || cache.evictions() > 0);
+
+		// Deletes evict
+		check("delete", cache.delete(path(0)).isOK());
+		check("deleted is gone", cache.read(path(0)).error() == Result.ErrorCode.NOT_FOUND);
+
+		System.out.printf("%d reads in %.2fs (%.0f reads/s), remote opens = %d%n", reads, elapsed, reads / elapsed, remote.opens.get());
+		System.out.println(cache);
+		System.out.println(failures == 0 ? "OK" : failures + " checks failed");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	static void check(String what, boolean ok) {
+		if (!ok) {
+			failures++;
+			System.out.println("FAILED: " + what);
+		}
+	}
+
+	static String path(int i) {
+		return "blobs/" + i;
+	}
+
+	static byte[] readAll(Result<InputStream> in) throws Exception {
+		try (var is = in.value()) {
+			return is.readAllBytes();
+		}
+	}
+
+	static double[] zipf(int n, double s) {
+		var cdf = new double[n];
+		double sum = 0;
+		for (int k = 0; k < n; k++)
+			cdf[k] = sum += 1 / Math.pow(k + 1, s);
+		for (int k = 0; k < n; k++)
+			cdf[k] /= sum;
+		return cdf;
+	}
+
+	static int sample(double[] cdf, Random random) {
+		var i = Arrays.binarySearch(cdf, random.nextDouble());
+		return Math.min(cdf.length - 1, i < 0 ? -i - 1 : i);
+	}
+
+	/*
+	 * Adds latency to the reads of another storage, and counts them.
+	 */
+	static class SlowStorage implements BlobStorage {
+		final BlobStorage storage;
+		final int latency;
+		final AtomicInteger opens = new AtomicInteger();
+
+		SlowStorage(BlobStorage storage, int latency) {
+			this.storage = storage;
+			this.latency = latency;
+		}
+
+		@Override
+		public Result<Void> write(String path, byte[] bytes) {
+			return storage.write(path, bytes);
+		}
+
+		@Override
+		public Result<Void> write(String path, InputStream in) {
+			return storage.write(path, in);
+		}
+
+		@Override
+		public Result<Void> delete(String path) {
+			return storage.delete(path);
+		}
+
+		@Override
+		public Result<byte[]> read(String path) {
+			opens.incrementAndGet();
+			Sleep.ms(latency);
+			return storage.read(path);
+		}
+
+		@Override
+		public Result<Void> read(String path, Consumer<byte[]> sink) {
+			opens.incrementAndGet();
+			Sleep.ms(latency);
+			return storage.read(path, sink);
+		}
+
+		@Override
+		public Result<InputStream> open(String path) {
+			opens.incrementAndGet();
+			Sleep.ms(latency);
+			return storage.open(path);
+		}
+
+		@Override
+		public Result<InputStream> open(String path, long offset, long length) {
+			opens.incrementAndGet();
+			Sleep.ms(latency);
+			return storage.open(path, offset, length);
+		}
+
+		@Override
+		public Result<Long> size(String path) {
+			return storage.size(path);
+		}
+
+		@Override
+		public Result<List<String>> list(String path) {
+			return storage.list(path);
+		}
+	}
+}
@@ -0,0 +1,594 @@
+package test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * An in-process stand-in for Redis, speaking its protocol (RESP2) on a local port, so
+ * that the caches can be exercised through Jedis, unmodified, without a Redis server.
+ *
+ * It implements the commands used by this code base: strings with TTLs, lists, sets, hashes,
+ * sorted sets and pub/sub, executed one at a time, as Redis does. Lua is not interpreted:
+ * EVAL runs the Java port of the script registered with the same source, if any.
+ *
+ * Values are kept as ISO-8859-1 strings, which map bytes one to one.
+ */
+public class FakeRedis implements Closeable {
+
+	/**
+	 * The Java port of a Lua script; calls to redis.call become calls to FakeRedis.call.
+	 */
+	public interface Script {
+		Object run(FakeRedis redis, List<String> keys, List<String> args);
+	}
+
+	// Replies that are neither bulk strings, integers, arrays nor nil
+	record Status(String text) {
+	}
+
+	record Error(String text) {
+	}
+
+	static final Status OK = new Status("OK");
+
+	private static final Comparator<Map.Entry<String, Double>> BY_SCORE = Map.Entry.<String, Double>comparingByValue()
+			.thenComparing(Map.Entry.comparingByKey());
+
+	private static class SortedSet {
+		final Map<String, Double> scores = new HashMap<>();
+		final TreeSet<Map.Entry<String, Double>> ordered = new TreeSet<>(BY_SCORE);
+
+		boolean add(String member, double score) {
+			var old = scores.put(member, score);
+			if (old != null)
+				ordered.remove(Map.entry(member, old));
+			ordered.add(Map.entry(member, score));
+			return old == null;
+		}
+
+		boolean remove(String member) {
+			var old = scores.remove(member);
+			if (old != null)
+				ordered.remove(Map.entry(member, old));
+			return old != null;
+		}
+
+		List<Map.Entry<String, Double>> list() {
+			return new ArrayList<>(ordered);
+		}
+	}
+
+	private final ServerSocket server;
+	private final Map<String, Object> data = new HashMap<>();
+	private final Map<String, Long> expires = new HashMap<>();
+	private final Map<String, Script> scripts = new ConcurrentHashMap<>();
+	private final Map<String, Set<Connection>> channels = new ConcurrentHashMap<>();
+
+	/**
+	 * Starts listening on the given port (0 for any free port).
+	 */
+	public FakeRedis(int port) throws IOException {
+		server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+		var acceptor = new Thread(this::accept, "fake-redis");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public int port() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Registers the Java port of the Lua script with the given source.
+	 */
+	public FakeRedis script(String source, Script script) {
+		scripts.put(source, script);
+		return this;
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+	}
+
+	/**
+	 * Executes a command, as redis.call does in a script.
+	 */
+	public synchronized Object call(String... command) {
+		return execute(Arrays.asList(command));
+	}
+
+	private void accept() {
+		while (!server.isClosed())
+			try {
+				var socket = server.accept();
+				socket.setTcpNoDelay(true);
+				var connection = new Connection(socket);
+				var t = new Thread(connection::serve, "fake-redis-" + socket.getPort());
+				t.setDaemon(true);
+				t.start();
+			} catch (IOException x) {
+				// closed
+			}
+	}
+
+	private class Connection {
+		final Socket socket;
+		final Set<String> subscriptions = new LinkedHashSet<>();
+		OutputStream out;
+
+		Connection(Socket socket) {
+			this.socket = socket;
+		}
+
+		void serve() {
+			try (socket) {
+				var in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+				out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+				for (;;) {
+					var command = readCommand(in);
+					switch (command.get(0).toUpperCase()) {
+					case "QUIT" -> {
+						send(OK, true);
+						return;
+					}
+					case "SUBSCRIBE" -> {
+						for (var channel : command.subList(1, command.size())) {
+							subscriptions.add(channel);
+							channels.computeIfAbsent(channel, c -> new CopyOnWriteArraySet<>()).add(this);
+							send(List.of("subscribe", channel, (long) subscriptions.size()), false);
+						}
+					}
+					case "UNSUBSCRIBE" -> {
+						var unsubscribed = command.size() > 1 ? command.subList(1, command.size()) : List.copyOf(subscriptions);
+						for (var channel : unsubscribed) {
+							subscriptions.remove(channel);
+							channels.getOrDefault(channel, Set.of()).remove(this);
+							send(List.of("unsubscribe", channel, (long) subscriptions.size()), false);
+						}
+					}
+					case "BLPOP" -> send(blpop(command.subList(1, command.size())), false);
+					default -> {
+						Object reply;
+						synchronized (FakeRedis.this) {
+							reply = execute(command);
+						}
+						send(reply, false);
+					}
+					}
+					if (in.available() == 0)
+						flush();
+				}
+			} catch (EOFException x) {
+				// client went away
+			} catch (IOException x) {
+				// client went away
+			} finally {
+				for (var channel : subscriptions)
+					channels.getOrDefault(channel, Set.of()).remove(this);
+			}
+		}
+
+		synchronized void send(Object reply, boolean flush) throws IOException {
+			write(out, reply);
+			if (flush)
+				out.flush();
+		}
+
+		synchronized void flush() throws IOException {
+			out.flush();
+		}
+	}
+
+	/*
+	 * Reads a command, sent as an array of bulk strings.
+	 */
+	private static List<String> readCommand(InputStream in) throws IOException {
+		var type = in.read();
+		if (type < 0)
+			throw new EOFException();
+		if (type != '*')
+			throw new IOException("unexpected: " + (char) type);
+
+		var n = (int) readLong(in);
+		var command = new ArrayList<String>(n);
+		for (int i = 0; i < n; i++) {
+			if (in.read() != '$')
+				throw new IOException("bulk string expected");
+			var bytes = in.readNBytes((int) readLong(in));
+			in.skip(2);
+			command.add(new String(bytes, StandardCharsets.ISO_8859_1));
+		}
+		return command;
+	}
+
+	private static long readLong(InputStream in) throws IOException {
+		long value = 0;
+		var negative = false;
+		int c;
+		while ((c = in.read()) != '\r') {
+			if (c < 0)
+				throw new EOFException();
+			if (c == '-')
+				negative = true;
+			else
+				value = value * 10 + (c - '0');
+		}
+		in.read();
+		return negative ? -value : value;
+	}
+
+	private static void write(OutputStream out, Object reply) throws IOException {
+		if (reply == null)
+			out.write("$-1\r\n".getBytes(StandardCharsets.ISO_8859_1));
+		else if (reply instanceof Status s)
+			out.write(("+" + s.text() + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		else if (reply instanceof Error e)
+			out.write(("-" + e.text() + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		else if (reply instanceof Long l)
+			out.write((":" + l + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		else if (reply instanceof String s) {
+			var bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+			out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+			out.write(bytes);
+			out.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+		} else if (reply instanceof List<?> list) {
+			out.write(("*" + list.size() + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+			for (var item : list)
+				write(out, item);
+		} else
+			throw new IllegalArgumentException("unexpected reply: " + reply);
+	}
+
+	/*
+	 * Executes a command, holding the lock, and returns its reply.
+	 */
+	private Object execute(List<String> command) {
+		var args = command.subList(1, command.size());
+		try {
+			return switch (command.get(0).toUpperCase()) {
+			case "PING" -> args.isEmpty() ? new Status("PONG") : args.get(0);
+			case "AUTH", "SELECT", "CLIENT", "READONLY" -> OK;
+			case "FLUSHALL", "FLUSHDB" -> {
+				data.clear();
+				expires.clear();
+				yield OK;
+			}
+			case "GET" -> string(args.get(0));
+			case "SET" -> set(args);
+			case "MGET" -> args.stream().map(this::string).toList();
+			case "DEL", "UNLINK" -> args.stream().filter(key -> remove(key) != null).count();
+			case "EXISTS" -> args.stream().filter(key -> lookup(key) != null).count();
+			case "PEXPIRE" -> expire(args.get(0), Long.parseLong(args.get(1)));
+			case "EXPIRE" -> expire(args.get(0), 1000 * Long.parseLong(args.get(1)));
+			case "PTTL" -> ttl(args.get(0));
+			case "TTL" -> {
+				var ttl = ttl(args.get(0));
+				yield ttl < 0 ? ttl : ttl / 1000;
+			}
+			case "INCR" -> incrBy(args.get(0), 1);
+			case "INCRBY" -> incrBy(args.get(0), Long.parseLong(args.get(1)));
+			case "DECRBY" -> incrBy(args.get(0), -Long.parseLong(args.get(1)));
+			case "RPUSH" -> rpush(args.get(0), args.subList(1, args.size()));
+			case "LPOP" -> lpop(args.get(0));
+			case "LLEN" -> (long) list(args.get(0), false).size();
+			case "SADD" -> args.subList(1, args.size()).stream().filter(set(args.get(0), true)::add).count();
+			case "SREM" -> srem(args.get(0), args.subList(1, args.size()));
+			case "SISMEMBER" -> integer(set(args.get(0), false).contains(args.get(1)));
+			case "SMISMEMBER" -> args.subList(1, args.size()).stream().map(member -> integer(set(args.get(0), false).contains(member))).toList();
+			case "SMEMBERS" -> List.copyOf(set(args.get(0), false));
+			case "SCARD" -> (long) set(args.get(0), false).size();
+			case "SPOP" -> spop(args.get(0), args.size() > 1 ? Integer.parseInt(args.get(1)) : -1);
+			case "SINTER" -> sinter(args);
+			case "HINCRBY" -> hincrBy(args.get(0), args.get(1), Long.parseLong(args.get(2)));
+			case "HGET" -> hash(args.get(0), false).get(args.get(1));
+			case "HEXISTS" -> integer(hash(args.get(0), false).containsKey(args.get(1)));
+			case "HDEL" -> args.subList(1, args.size()).stream().filter(field -> hash(args.get(0), false).remove(field) != null).count();
+			case "ZADD" -> zadd(args.get(0), args.subList(1, args.size()));
+			case "ZREM" -> args.subList(1, args.size()).stream().filter(zset(args.get(0), false)::remove).count();
+			case "ZCARD" -> (long) zset(args.get(0), false).scores.size();
+			case "ZRANGE" -> zrange(args, false);
+			case "ZREVRANGE" -> zrange(args, true);
+			case "ZRANGEBYSCORE" -> zrangeByScore(args.get(0), score(args.get(1)), score(args.get(2)));
+			case "ZREMRANGEBYRANK" -> zremRangeByRank(args.get(0), Integer.parseInt(args.get(1)), Integer.parseInt(args.get(2)));
+			case "PUBLISH" -> publish(args.get(0), args.get(1));
+			case "EVAL" -> eval(args);
+			default -> new Error("ERR unknown command '" + command.get(0) + "'");
+			};
+		} catch (ClassCastException x) {
+			return new Error("WRONGTYPE Operation against a key holding the wrong kind of value");
+		} catch (RuntimeException x) {
+			return new Error("ERR " + x);
+		}
+	}
+
+	private Object lookup(String key) {
+		var expiry = expires.get(key);
+		if (expiry != null && expiry <= System.currentTimeMillis())
+			remove(key);
+		return data.get(key);
+	}
+
+	private Object remove(String key) {
+		expires.remove(key);
+		return data.remove(key);
+	}
+
+	private String string(String key) {
+		var value = lookup(key);
+		return value instanceof String s ? s : null;
+	}
+
+	private Object set(List<String> args) {
+		var key = args.get(0);
+		long ttl = -1;
+		boolean nx = false, xx = false;
+		for (int i = 2; i < args.size(); i++)
+			switch (args.get(i).toUpperCase()) {
+			case "PX" -> ttl = Long.parseLong(args.get(++i));
+			case "EX" -> ttl = 1000 * Long.parseLong(args.get(++i));
+			case "NX" -> nx = true;
+			case "XX" -> xx = true;
+			default -> throw new IllegalArgumentException("syntax error");
+			}
+
+		var exists = lookup(key) != null;
+		if ((nx && exists) || (xx && !exists))
+			return null;
+
+		remove(key);
+		data.put(key, args.get(1));
+		if (ttl >= 0)
+			expires.put(key, System.currentTimeMillis() + ttl);
+		return OK;
+	}
+
+	private long expire(String key, long ms) {
+		if (lookup(key) == null)
+			return 0;
+		expires.put(key, System.currentTimeMillis() + ms);
+		return 1;
+	}
+
+	private long ttl(String key) {
+		if (lookup(key) == null)
+			return -2;
+		var expiry = expires.get(key);
+		return expiry == null ? -1 : expiry - System.currentTimeMillis();
+	}
+
+	private long incrBy(String key, long delta) {
+		var value = string(key);
+		var result = (value == null ? 0 : Long.parseLong(value)) + delta;
+		data.put(key, Long.toString(result));
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private ArrayDeque<String> list(String key, boolean create) {
+		var value = (ArrayDeque<String>) lookup(key);
+		if (value == null) {
+			value = new ArrayDeque<>();
+			if (create)
+				data.put(key, value);
+		}
+		return value;
+	}
+
+	private long rpush(String key, List<String> values) {
+		var list = list(key, true);
+		list.addAll(values);
+		notifyAll();
+		return list.size();
+	}
+
+	private String lpop(String key) {
+		var list = list(key, false);
+		var value = list.poll();
+		if (list.isEmpty())
+			remove(key);
+		return value;
+	}
+
+	/*
+	 * Pops from the first of the lists that is not empty, waiting up to the timeout (in
+	 * seconds, 0 for ever) for a push if all are. Other connections go on meanwhile.
+	 */
+	private synchronized Object blpop(List<String> args) {
+		var keys = args.subList(0, args.size() - 1);
+		var timeout = Math.round(1000 * Double.parseDouble(args.get(args.size() - 1)));
+		var deadline = System.currentTimeMillis() + timeout;
+		try {
+			for (;;) {
+				for (var key : keys) {
+					var value = lpop(key);
+					if (value != null)
+						return List.of(key, value);
+				}
+				var remaining = deadline - System.currentTimeMillis();
+				if (timeout > 0 && remaining <= 0)
+					return null;
+				wait(timeout > 0 ? remaining : 0);
+			}
+		} catch (InterruptedException x) {
+			return null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Set<String> set(String key, boolean create) {
+		var value = (Set<String>) lookup(key);
+		if (value == null) {
+			value = new LinkedHashSet<>();
+			if (create)
+				data.put(key, value);
+		}
+		return value;
+	}
+
+	private long srem(String key, List<String> members) {
+		var set = set(key, false);
+		var removed = members.stream().filter(set::remove).count();
+		if (set.isEmpty())
+			remove(key);
+		return removed;
+	}
+
+	private Object spop(String key, int count) {
+		var set = set(key, false);
+		var popped = new ArrayList<String>();
+		for (var it = set.iterator(); it.hasNext() && (count < 0 ? popped.isEmpty() : popped.size() < count);) {
+			popped.add(it.next());
+			it.remove();
+		}
+		if (set.isEmpty())
+			remove(key);
+		return count < 0 ? (popped.isEmpty() ? null : popped.get(0)) : popped;
+	}
+
+	private List<String> sinter(List<String> keys) {
+		var result = new LinkedHashSet<>(set(keys.get(0), false));
+		for (var key : keys.subList(1, keys.size()))
+			result.retainAll(set(key, false));
+		return List.copyOf(result);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, String> hash(String key, boolean create) {
+		var value = (Map<String, String>) lookup(key);
+		if (value == null) {
+			value = new HashMap<>();
+			if (create)
+				data.put(key, value);
+		}
+		return value;
+	}
+
+	private long hincrBy(String key, String field, long delta) {
+		var hash = hash(key, true);
+		var result = Long.parseLong(hash.getOrDefault(field, "0")) + delta;
+		hash.put(field, Long.toString(result));
+		return result;
+	}
+
+	private SortedSet zset(String key, boolean create) {
+		var value = (SortedSet) lookup(key);
+		if (value == null) {
+			value = new SortedSet();
+			if (create)
+				data.put(key, value);
+		}
+		return value;
+	}
+
+	private long zadd(String key, List<String> scoresAndMembers) {
+		var zset = zset(key, true);
+		long added = 0;
+		for (int i = 0; i < scoresAndMembers.size(); i += 2)
+			if (zset.add(scoresAndMembers.get(i + 1), score(scoresAndMembers.get(i))))
+				added++;
+		return added;
+	}
+
+	private List<String> zrange(List<String> args, boolean reverse) {
+		var entries = zset(args.get(0), false).list();
+		if (reverse)
+			Collections.reverse(entries);
+		var withScores = args.size() > 3 && args.get(3).equalsIgnoreCase("WITHSCORES");
+
+		var result = new ArrayList<String>();
+		for (var e : slice(entries, Integer.parseInt(args.get(1)), Integer.parseInt(args.get(2)))) {
+			result.add(e.getKey());
+			if (withScores)
+				result.add(format(e.getValue()));
+		}
+		return result;
+	}
+
+	private List<String> zrangeByScore(String key, double min, double max) {
+		return zset(key, false).list().stream()
+				.filter(e -> e.getValue() >= min && e.getValue() <= max)
+				.map(Map.Entry::getKey)
+				.toList();
+	}
+
+	private long zremRangeByRank(String key, int start, int stop) {
+		var zset = zset(key, false);
+		var removed = slice(zset.list(), start, stop);
+		removed.forEach(e -> zset.remove(e.getKey()));
+		if (zset.scores.isEmpty())
+			remove(key);
+		return removed.size();
+	}
+
+	private long publish(String channel, String message) {
+		var subscribers = channels.getOrDefault(channel, Set.of());
+		for (var subscriber : subscribers)
+			try {
+				subscriber.send(List.of("message", channel, message), true);
+			} catch (IOException x) {
+				subscribers.remove(subscriber);
+			}
+		return subscribers.size();
+	}
+
+	private Object eval(List<String> args) {
+		var script = scripts.get(args.get(0));
+		if (script == null)
+			return new Error("NOSCRIPT No Java port registered for this script");
+
+		var numKeys = Integer.parseInt(args.get(1));
+		var reply = script.run(this, args.subList(2, 2 + numKeys), args.subList(2 + numKeys, args.size()));
+		return reply instanceof Integer i ? (Object) i.longValue() : reply;
+	}
+
+	/*
+	 * The elements from start to stop, inclusive, counting from the end if negative, as Redis does.
+	 */
+	private static <T> List<T> slice(List<T> list, int start, int stop) {
+		var n = list.size();
+		start = Math.max(0, start < 0 ? n + start : start);
+		stop = Math.min(n - 1, stop < 0 ? n + stop : stop);
+		return start > stop ? List.of() : List.copyOf(list.subList(start, stop + 1));
+	}
+
+	private static long integer(boolean b) {
+		return b ? 1 : 0;
+	}
+
+	private static double score(String s) {
+		return switch (s.toLowerCase()) {
+		case "-inf" -> Double.NEGATIVE_INFINITY;
+		case "+inf", "inf" -> Double.POSITIVE_INFINITY;
+		default -> Double.parseDouble(s);
+		};
+	}
+
+	private static String format(double score) {
+		if (Double.isInfinite(score))
+			return score > 0 ? "inf" : "-inf";
+		return score == Math.rint(score) ? Long.toString((long) score) : Double.toString(score);
+	}
+}
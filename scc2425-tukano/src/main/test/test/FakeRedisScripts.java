@@ -0,0 +1,81 @@
+package test;
+
+import java.util.List;
+
+import cache.SingleFlight;
+import tukano.impl.feed.Timelines;
+import tukano.impl.likes.LikeCounters;
+import tukano.impl.storage.ContentAddressedStorage;
+
+/**
+ * Java ports of the Lua scripts run by this code base, for FakeRedis.
+ *
+ * The sources of the scripts are read from the classes that run them, so that a script
+ * that is changed without its port being changed fails with NOSCRIPT, instead of
+ * silently doing something else.
+ */
+public class FakeRedisScripts {
+
+	public static void register(FakeRedis redis) {
+		redis.script(source(SingleFlight.class, "UNLOCK_SCRIPT"), (r, keys, args) -> {
+			return args.get(0).equals(r.call("GET", keys.get(0))) ? r.call("DEL", keys.get(0)) : 0L;
+		});
+
+		redis.script(source(LikeCounters.class, "ADD_SCRIPT"), (r, keys, args) -> {
+			if (r.call("EXISTS", keys.get(0)).equals(1L))
+				r.call("INCRBY", keys.get(0), args.get(0));
+			return r.call("INCR", keys.get(1));
+		});
+
+		redis.script(source(LikeCounters.class, "RECONCILE_SCRIPT"), (r, keys, args) -> {
+			var flag = r.call("GET", keys.get(1));
+			if (!args.get(0).equals(flag == null ? "" : flag))
+				return 0L;
+			r.call("SET", keys.get(0), args.get(1), "PX", args.get(2));
+			r.call("DEL", keys.get(1));
+			return 1L;
+		});
+
+		redis.script(source(Timelines.class, "PUSH_SCRIPT"), (r, keys, args) -> {
+			if (!r.call("EXISTS", keys.get(0)).equals(1L))
+				return 0L;
+			r.call("ZADD", keys.get(0), args.get(0), args.get(1));
+			r.call("ZREMRANGEBYRANK", keys.get(0), "0", Long.toString(-(Long.parseLong(args.get(2)) + 1)));
+			return 1L;
+		});
+
+		redis.script(source(ContentAddressedStorage.class, "ACQUIRE_SCRIPT"), (r, keys, args) -> {
+			var n = r.call("HINCRBY", keys.get(0), args.get(0), "1");
+			r.call("ZREM", keys.get(1), args.get(0));
+			return List.of(n, r.call("EXISTS", keys.get(2)));
+		});
+
+		redis.script(source(ContentAddressedStorage.class, "RELEASE_SCRIPT"), (r, keys, args) -> {
+			var n = (Long) r.call("HINCRBY", keys.get(0), args.get(0), "-1");
+			if (n <= 0) {
+				r.call("HDEL", keys.get(0), args.get(0));
+				r.call("ZADD", keys.get(1), args.get(1), args.get(0));
+			}
+			return n;
+		});
+
+		redis.script(source(ContentAddressedStorage.class, "COLLECT_SCRIPT"), (r, keys, args) -> {
+			r.call("ZREM", keys.get(1), args.get(0));
+			if (r.call("HEXISTS", keys.get(0), args.get(0)).equals(1L))
+				return 0L;
+			r.call("SET", keys.get(2), "1", "EX", args.get(1));
+			r.call("DEL", keys.get(3));
+			return 1L;
+		});
+	}
+
+	private static String source(Class<?> owner, String field) {
+		try {
+			var f = owner.getDeclaredField(field);
+			f.setAccessible(true);
+			return (String) f.get(null);
+		} catch (ReflectiveOperationException x) {
+			throw new IllegalStateException("script not found: " + owner.getSimpleName() + "." + field, x);
+		}
+	}
+}
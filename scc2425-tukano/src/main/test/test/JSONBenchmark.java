@@ -0,0 +1,44 @@
+package test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tukano.api.Short;
+import utils.JSON;
+
+/**
+ * Compares the throughput of encoding and decoding a short, round-trip, through
+ * a single synchronized mapper (as utils.JSON used to) and through utils.JSON.
+ *
+ * Usage: JSONBenchmark [threads] [seconds]
+ */
+public class JSONBenchmark {
+
+	static final ObjectMapper mapper = new ObjectMapper();
+
+	synchronized static Short roundTripSynchronized(Short shrt) {
+		try {
+			return mapper.readValue(mapper.writeValueAsString(shrt), Short.class);
+		} catch (Exception x) {
+			throw new RuntimeException(x);
+		}
+	}
+
+	static Short roundTripString(Short shrt) {
+		return JSON.decode(JSON.encode(shrt), Short.class);
+	}
+
+	static Short roundTripBytes(Short shrt) {
+		return JSON.decode(JSON.encodeBytes(shrt), Short.class);
+	}
+
+	public static void main(String[] args) throws Exception {
+		var threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		var seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		var shrt = new Short("wales+5d3a10ec-8d2c-4e0c-b2ab-8a8b9e3c4f21", "wales", "http://localhost:8080/rest/blobs/wales+5d3a10ec-8d2c-4e0c-b2ab-8a8b9e3c4f21", System.currentTimeMillis(), 42);
+
+		Bench.run("synchronized", threads, seconds, () -> roundTripSynchronized(shrt) != null);
+		Bench.run("string", threads, seconds, () -> roundTripString(shrt) != null);
+		Bench.run("bytes", threads, seconds, () -> roundTripBytes(shrt) != null);
+	}
+}
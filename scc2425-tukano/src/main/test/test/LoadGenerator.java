@@ -0,0 +1,368 @@
+package test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import tukano.api.Result;
+import tukano.api.Short;
+import tukano.api.User;
+import tukano.api.rest.RestBlobs;
+import tukano.clients.rest.RestBlobsClient;
+import tukano.clients.rest.RestShortsClient;
+import tukano.clients.rest.RestUsersClient;
+import utils.JSON;
+
+/**
+ * Replays the weighted mix of scenarios of the Artillery suite (realistic_flow.yaml)
+ * against a running server, through the REST clients, and reports the latency of each
+ * endpoint.
+ *
+ * In closed-loop mode, a fixed number of users run scenarios back to back (or paced
+ * by LOAD_THINK_MS); in open-loop mode, scenarios start at a fixed rate, whether or not
+ * earlier ones completed, as real users would arrive. Either way, latencies are measured
+ * from when a scenario was meant to start, not from when it did, so that a stalled server
+ * is not hidden by the requests it kept from being sent (coordinated omission).
+ *
+ * The server is first seeded with LOAD_INITIAL_USERS users, with one short each; the first
+ * LOAD_WARMUP_S seconds of load are not measured. The report is printed and written, as
+ * JSON, to the given file.
+ *
+ * Usage: LoadGenerator <serverURI> [closed <users> | open <scenarios/s>] [seconds] [report.json]
+ */
+public class LoadGenerator {
+
+	static final int INITIAL_USERS = Integer.parseInt(System.getProperty("LOAD_INITIAL_USERS", "100"));
+	static final long WARMUP = Long.parseLong(System.getProperty("LOAD_WARMUP_S", "10"));
+	static final long THINK_TIME = Long.parseLong(System.getProperty("LOAD_THINK_MS", "0"));
+	static final int BLOB_SIZE = Integer.parseInt(System.getProperty("LOAD_BLOB_SIZE", "65536"));
+	static final int MAX_IN_FLIGHT = Integer.parseInt(System.getProperty("LOAD_MAX_IN_FLIGHT", "1000"));
+
+	record Account(String userId, String pwd) {
+	}
+
+	record Posted(String shortId, Account owner) {
+	}
+
+	interface Scenario {
+		void run(long start);
+	}
+
+	record Weighted(String name, int weight, Scenario scenario) {
+	}
+
+	record Endpoint(LatencyHistogram latency, LongAdder errors) {
+	}
+
+	public record EndpointReport(long requests, long errors, LatencyHistogram.Summary latencyMs) {
+	}
+
+	public record Report(String serverURI, String mode, int load, long seconds, long requests, double requestsPerSecond,
+			Map<String, Long> scenarios, Map<String, EndpointReport> endpoints) {
+	}
+
+	private final String serverURI;
+	private final RestUsersClient users;
+	private final RestShortsClient shorts;
+	private final RestBlobsClient blobs;
+
+	private final List<Account> accounts = new CopyOnWriteArrayList<>();
+	private final List<Posted> posted = new CopyOnWriteArrayList<>();
+
+	private final List<Weighted> mix;
+	private final int totalWeight;
+	private final Map<String, LongAdder> scenarios = new ConcurrentHashMap<>();
+	private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+	private volatile boolean measuring;
+
+	LoadGenerator(String serverURI) {
+		this.serverURI = serverURI;
+		this.users = new RestUsersClient(serverURI);
+		this.shorts = new RestShortsClient(serverURI);
+		this.blobs = new RestBlobsClient(serverURI);
+
+		// As in realistic_flow.yaml
+		this.mix = List.of(
+				new Weighted("Register user", 10, this::register),
+				new Weighted("Get User's Shorts", 50, this::getShorts),
+				new Weighted("Upload short", 10, this::upload),
+				new Weighted("Download short", 100, this::download),
+				new Weighted("View feed", 200, this::feed),
+				new Weighted("Like short", 50, this::like),
+				new Weighted("Get Short Likes", 25, this::likes),
+				new Weighted("Get User Follows", 20, this::followers),
+				new Weighted("Follow user", 50, this::follow));
+		this.totalWeight = mix.stream().mapToInt(Weighted::weight).sum();
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: LoadGenerator <serverURI> [closed <users> | open <scenarios/s>] [seconds] [report.json]");
+			System.exit(1);
+		}
+		var serverURI = args[0];
+		var mode = args.length > 1 ? args[1] : "closed";
+		var load = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		var seconds = args.length > 3 ? Long.parseLong(args[3]) : 60;
+		var reportFile = args.length > 4 ? args[4] : "load-report.json";
+
+		var generator = new LoadGenerator(serverURI);
+		generator.seed();
+
+		var elapsed = switch (mode) {
+		case "closed" -> generator.closedLoop(load, seconds);
+		case "open" -> generator.openLoop(load, seconds);
+		default -> throw new IllegalArgumentException("mode must be open or closed: " + mode);
+		};
+
+		var report = generator.report(mode, load, elapsed);
+		print(report);
+		Files.writeString(new File(reportFile).toPath(), JSON.encode(report));
+		System.out.printf("report written to %s%n", reportFile);
+		System.exit(0);
+	}
+
+	/*
+	 * Registers the initial users, each with a short and its blob.
+	 */
+	void seed() {
+		System.out.printf("seeding %d users...%n", INITIAL_USERS);
+		IntStream.range(0, INITIAL_USERS).parallel().forEach(i -> {
+			register(System.nanoTime());
+			var account = accounts.isEmpty() ? null : any(accounts);
+			if (account != null)
+				upload(account, System.nanoTime());
+		});
+		if (accounts.isEmpty())
+			throw new IllegalStateException("could not register any user at " + serverURI);
+	}
+
+	/*
+	 * Each user runs a scenario after another, either back to back or, with a think time,
+	 * at a fixed pace; a scenario that ran late makes the next one late too.
+	 */
+	long closedLoop(int numUsers, long seconds) throws InterruptedException {
+		var start = System.nanoTime();
+		var measured = start + TimeUnit.SECONDS.toNanos(WARMUP);
+		var deadline = measured + TimeUnit.SECONDS.toNanos(seconds);
+		var pace = TimeUnit.MILLISECONDS.toNanos(THINK_TIME);
+
+		var threads = new ArrayList<Thread>();
+		for (int i = 0; i < numUsers; i++) {
+			var t = new Thread(() -> {
+				var next = System.nanoTime();
+				while (next < deadline) {
+					var intended = pace > 0 ? next : System.nanoTime();
+					pick().run(intended);
+					next = pace > 0 ? next + pace : System.nanoTime();
+					sleepUntil(next);
+				}
+			}, "user-" + i);
+			t.setDaemon(true);
+			threads.add(t);
+		}
+		threads.forEach(Thread::start);
+		startMeasuring(measured);
+		for (var t : threads)
+			t.join();
+		return System.nanoTime() - measured;
+	}
+
+	/*
+	 * Scenarios start at a fixed rate, each in a thread of its own, with at most MAX_IN_FLIGHT
+	 * at a time; if that many are in flight, the next ones start late, and count as such.
+	 */
+	long openLoop(int rate, long seconds) throws InterruptedException {
+		var start = System.nanoTime();
+		var measured = start + TimeUnit.SECONDS.toNanos(WARMUP);
+		var deadline = measured + TimeUnit.SECONDS.toNanos(seconds);
+		var interval = TimeUnit.SECONDS.toNanos(1) / rate;
+
+		var inFlight = new Semaphore(MAX_IN_FLIGHT);
+		var executor = Executors.newCachedThreadPool(r -> {
+			var t = new Thread(r);
+			t.setDaemon(true);
+			return t;
+		});
+
+		var scheduler = new Thread(() -> {
+			for (long intended = start; intended < deadline; intended += interval) {
+				sleepUntil(intended);
+				inFlight.acquireUninterruptibly();
+				var scenario = pick();
+				var at = intended;
+				executor.execute(() -> {
+					try {
+						scenario.run(at);
+					} finally {
+						inFlight.release();
+					}
+				});
+			}
+		}, "arrivals");
+		scheduler.start();
+		startMeasuring(measured);
+		scheduler.join();
+
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+		return System.nanoTime() - measured;
+	}
+
+	private void startMeasuring(long at) {
+		sleepUntil(at);
+		measuring = true;
+	}
+
+	private Scenario pick() {
+		var r = ThreadLocalRandom.current().nextInt(totalWeight);
+		for (var w : mix)
+			if ((r -= w.weight()) < 0) {
+				if (measuring)
+					scenarios.computeIfAbsent(w.name(), __ -> new LongAdder()).increment();
+				return w.scenario();
+			}
+		throw new IllegalStateException();
+	}
+
+	/*
+	 * Calls the endpoint, recording its latency since the given start (in nanos).
+	 */
+	private <T> Result<T> call(String endpoint, long start, Supplier<Result<T>> op) {
+		var res = op.get();
+		if (measuring) {
+			var e = endpoints.computeIfAbsent(endpoint, __ -> new Endpoint(new LatencyHistogram(), new LongAdder()));
+			e.latency().record((System.nanoTime() - start) / 1000);
+			if (!res.isOK())
+				e.errors().increment();
+		}
+		return res;
+	}
+
+	private void register(long start) {
+		var userId = "load-" + UUID.randomUUID().toString().substring(0, 13);
+		var account = new Account(userId, UUID.randomUUID().toString().substring(0, 8));
+		var res = call("POST /users", start, () -> users.createUser(new User(userId, account.pwd(), userId + "@tukano.pt", userId)));
+		if (res.isOK())
+			accounts.add(account);
+	}
+
+	private void getShorts(long start) {
+		call("GET /shorts/{userId}/shorts", start, () -> shorts.getShorts(any(accounts).userId(), null, -1));
+	}
+
+	private void upload(long start) {
+		upload(any(accounts), start);
+	}
+
+	private void upload(Account account, long start) {
+		var res = call("POST /shorts/{userId}", start, () -> shorts.createShort(account.userId(), account.pwd()));
+		if (res.isOK()) {
+			var shrt = res.value();
+			var bytes = new byte[BLOB_SIZE];
+			ThreadLocalRandom.current().nextBytes(bytes);
+			var blob = call("POST /blobs/{blobId}", System.nanoTime(), () -> blobs.upload(blobURL(shrt), bytes, token(shrt)));
+			if (blob.isOK())
+				posted.add(new Posted(shrt.getShortId(), account));
+		}
+	}
+
+	private void download(long start) {
+		if (posted.isEmpty())
+			return;
+		var res = call("GET /shorts/{shortId}", start, () -> shorts.getShort(any(posted).shortId()));
+		if (res.isOK())
+			call("GET /blobs/{blobId}", System.nanoTime(), () -> blobs.download(blobURL(res.value()), token(res.value())));
+	}
+
+	private void feed(long start) {
+		var account = any(accounts);
+		call("GET /shorts/{userId}/feed", start, () -> shorts.getFeed(account.userId(), account.pwd(), null, -1));
+	}
+
+	private void like(long start) {
+		if (posted.isEmpty())
+			return;
+		var account = any(accounts);
+		call("POST /shorts/{shortId}/{userId}/likes", start, () -> shorts.like(any(posted).shortId(), account.userId(), true, account.pwd()));
+	}
+
+	private void likes(long start) {
+		if (posted.isEmpty())
+			return;
+		var p = any(posted);
+		call("GET /shorts/{shortId}/likes", start, () -> shorts.likes(p.shortId(), p.owner().pwd(), null, -1));
+	}
+
+	private void followers(long start) {
+		var account = any(accounts);
+		call("GET /shorts/{userId}/followers", start, () -> shorts.followers(account.userId(), account.pwd(), null, -1));
+	}
+
+	private void follow(long start) {
+		var follower = any(accounts);
+		var followee = any(accounts);
+		call("POST /shorts/{userId1}/{userId2}/followers", start, () -> shorts.follow(follower.userId(), followee.userId(), true, follower.pwd()));
+	}
+
+	/*
+	 * The blob URL of the short, at the server under test, and the token that comes with it.
+	 */
+	private String blobURL(Short shrt) {
+		var url = shrt.getBlobUrl();
+		var blobId = url.substring(url.lastIndexOf('/') + 1, url.contains("?") ? url.indexOf('?') : url.length());
+		return String.format("%s%s/%s", serverURI, RestBlobs.PATH, blobId);
+	}
+
+	private static String token(Short shrt) {
+		var url = shrt.getBlobUrl();
+		var i = url.indexOf("token=");
+		return i < 0 ? "" : url.substring(i + "token=".length());
+	}
+
+	Report report(String mode, int load, long elapsed) {
+		var seconds = elapsed / 1e9;
+		var byEndpoint = new TreeMap<String, EndpointReport>();
+		endpoints.forEach((name, e) -> byEndpoint.put(name, new EndpointReport(e.latency().count(), e.errors().sum(), e.latency().summary())));
+		var byScenario = new TreeMap<String, Long>();
+		scenarios.forEach((name, n) -> byScenario.put(name, n.sum()));
+
+		var requests = byEndpoint.values().stream().mapToLong(EndpointReport::requests).sum();
+		return new Report(serverURI, mode, load, Math.round(seconds), requests, requests / seconds, byScenario, byEndpoint);
+	}
+
+	static void print(Report report) {
+		System.out.printf("%s %s load=%d: %,d requests in %ds, %.1f req/s%n", report.serverURI(), report.mode(), report.load(), report.requests(),
+				report.seconds(), report.requestsPerSecond());
+		System.out.printf("%-42s %9s %7s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "mean ms", "p50", "p99", "p99.9", "max");
+		report.endpoints().forEach((name, e) -> {
+			var l = e.latencyMs();
+			System.out.printf("%-42s %,9d %,7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, e.requests(), e.errors(), l.mean(), l.p50(), l.p99(), l.p999(),
+					l.max());
+		});
+	}
+
+	private static <T> T any(List<T> list) {
+		return list.get(ThreadLocalRandom.current().nextInt(list.size()));
+	}
+
+	private static void sleepUntil(long nanos) {
+		long delay;
+		while ((delay = nanos - System.nanoTime()) > 0)
+			LockSupport.parkNanos(delay);
+	}
+}
@@ -0,0 +1,227 @@
+package test;
+
+import static tukano.api.Result.ErrorCode.CONFLICT;
+import static tukano.api.Result.ErrorCode.NOT_FOUND;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import tukano.api.Blobs;
+import tukano.api.Result;
+import tukano.api.Short;
+import tukano.api.Shorts;
+import tukano.api.User;
+import tukano.api.Users;
+import tukano.impl.JavaBlobs;
+import tukano.impl.JavaShorts;
+import tukano.impl.JavaUsers;
+import tukano.impl.Token;
+import utils.Hash;
+import utils.JSON;
+
+/**
+ * Measures the throughput of the hot paths of the services (JavaUsers, JavaShorts and
+ * JavaBlobs) and of the utilities they lean on (JSON, Hash and Token), in-process, so
+ * that changes to the caches or the database access can be compared before and after.
+ *
+ * Hibernate runs against the configured database: the file given by HIBERNATE_CFG_FILE
+ * or, failing that, hibernate.cfg.xml in the classpath. If there is neither, or if
+ * BENCHMARK_HSQLDB is set to true, it runs against an in-memory HSQLDB instead. Redis is
+ * replaced by FakeRedis and blobs are stored by FilesystemStorage on tmpfs (/dev/shm,
+ * if there is one). The absolute numbers are thus not those of a deployment, but the
+ * differences between two builds are meaningful.
+ *
+ * The database is seeded with users, their shorts, follows and likes, through the
+ * services themselves, before anything is measured. The users are named after the run,
+ * so that a configured database can be seeded again; what is seeded is left there.
+ *
+ * Usage: ServiceBenchmark [threads] [seconds] [name filter] [users]
+ */
+public class ServiceBenchmark {
+
+	static final String PWD = "pwd";
+	static final int SHORTS_PER_USER = 5;
+	static final int FOLLOWEES_PER_USER = 20;
+	static final int LIKES_PER_USER = 20;
+	static final int BLOB_SIZE = 4 * 1024;
+
+	static final String[] SERVICES = { "getUser", "searchUsers", "getShort", "hydrateShorts", "getShorts", "followers", "getFeed", "like",
+			"createShort", "download", "upload" };
+
+	// The database configured for the services, if any, unless told otherwise
+	static final boolean HSQLDB = Boolean.parseBoolean(System.getProperty("BENCHMARK_HSQLDB", Boolean.toString(!configured())));
+
+	record Benchmark(String name, BooleanSupplier op) {
+	}
+
+	public static void main(String[] args) throws Exception {
+		var threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		var seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		var filter = args.length > 2 ? args[2] : "";
+		var numUsers = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+		// The services log every call, which would be measured too
+		Logger.getLogger("").setLevel(Level.WARNING);
+		for (var handler : Logger.getLogger("").getHandlers())
+			handler.setLevel(Level.WARNING);
+
+		var shrt = new Short("wales+5d3a10ec-8d2c-4e0c-b2ab-8a8b9e3c4f21", "wales", "http://localhost:8080/rest/blobs/wales+5d3a10ec-8d2c-4e0c-b2ab-8a8b9e3c4f21", System.currentTimeMillis(), 42);
+		var blob = randomBytes(BLOB_SIZE);
+		Token.setSecret("benchmark");
+
+		run(filter, threads, seconds, List.of(
+				new Benchmark("json", () -> JSON.decode(JSON.encodeBytes(shrt), Short.class) != null),
+				new Benchmark("sha256", () -> Hash.sha256(blob).length == 32),
+				new Benchmark("token", () -> Token.isValid(Token.get(shrt.getShortId()), shrt.getShortId()))));
+
+		// The services, and their stand-ins, are only set up if any of them is to be measured
+		if (Arrays.stream(SERVICES).noneMatch(name -> name.contains(filter)))
+			System.exit(0);
+
+		var redis = standIns();
+
+		var users = JavaUsers.getInstance();
+		var shorts = JavaShorts.getInstance();
+		var blobs = JavaBlobs.getInstance();
+
+		System.out.printf("seeding %,d users...%n", numUsers);
+		var run = "bench" + Long.toString(System.currentTimeMillis(), 36) + "u";
+		var userIds = IntStream.range(0, numUsers).mapToObj(i -> run + i).toList();
+		var shortIds = seed(users, shorts, blobs, userIds);
+		System.out.printf("seeded %,d users, %,d shorts (%s, redis on port %d)%n", userIds.size(), shortIds.size(),
+				HSQLDB ? "hsqldb" : "configured database", redis.port());
+
+		run(filter, threads, seconds, List.of(
+				new Benchmark("getUser", () -> users.getUser(any(userIds), PWD).isOK()),
+				new Benchmark("searchUsers", () -> users.searchUsers(run + "1").isOK()),
+				new Benchmark("getShort", () -> shorts.getShort(any(shortIds)).isOK()),
+				new Benchmark("hydrateShorts", () -> shorts.hydrateShorts(IntStream.range(0, 10).mapToObj(i -> any(shortIds)).toList()).isOK()),
+				new Benchmark("getShorts", () -> shorts.getShorts(any(userIds), null, -1).isOK()),
+				new Benchmark("followers", () -> shorts.followers(any(userIds), PWD, null, -1).isOK()),
+				new Benchmark("getFeed", () -> shorts.getFeed(any(userIds), PWD, null, -1).isOK()),
+				new Benchmark("like", () -> {
+					var isLiked = ThreadLocalRandom.current().nextBoolean();
+					return okOr(shorts.like(any(shortIds), any(userIds), isLiked, PWD), isLiked ? CONFLICT : NOT_FOUND);
+				}),
+				new Benchmark("createShort", () -> shorts.createShort(any(userIds), PWD).isOK()),
+				new Benchmark("download", () -> {
+					var id = any(shortIds);
+					return blobs.download(id, Token.get(id)).isOK();
+				}),
+				new Benchmark("upload", () -> {
+					var id = any(userIds) + "+" + UUID.randomUUID();
+					return blobs.upload(id, randomBytes(BLOB_SIZE), Token.get(id)).isOK();
+				})));
+
+		System.exit(0);
+	}
+
+	static void run(String filter, int threads, int seconds, List<Benchmark> benchmarks) throws InterruptedException {
+		for (var b : benchmarks)
+			if (b.name().contains(filter))
+				Bench.run(b.name(), threads, seconds, b.op());
+	}
+
+	/*
+	 * Starts the stand-ins for Redis, the database (unless one is configured) and the blob
+	 * storage, and points the services at them. Must run before any of the services is loaded.
+	 */
+	static FakeRedis standIns() throws Exception {
+		var redis = new FakeRedis(0);
+		System.setProperty("REDIS_HOSTNAME", "localhost");
+		System.setProperty("REDIS_PORT", Integer.toString(redis.port()));
+		System.setProperty("REDIS_USE_TLS", "false");
+		FakeRedisScripts.register(redis);
+
+		if (HSQLDB) {
+			var cfg = File.createTempFile("hibernate-benchmark", ".cfg.xml");
+			cfg.deleteOnExit();
+			Files.writeString(cfg.toPath(), HSQLDB_CFG);
+			System.setProperty("HIBERNATE_CFG_FILE", cfg.getAbsolutePath());
+		}
+
+		var tmpfs = new File("/dev/shm");
+		var blobs = Files.createTempDirectory(tmpfs.isDirectory() ? tmpfs.toPath() : new File(System.getProperty("java.io.tmpdir")).toPath(), "tukano-blobs");
+		blobs.toFile().deleteOnExit();
+		System.setProperty("BLOB_STORAGE_DIR", blobs.toString());
+
+		return redis;
+	}
+
+	static List<String> seed(Users users, Shorts shorts, Blobs blobs, List<String> userIds) {
+		userIds.parallelStream()
+				.forEach(userId -> orThrow(users.createUser(new User(userId, PWD, userId + "@tukano.pt", userId))));
+
+		var shortIds = userIds.parallelStream()
+				.flatMap(userId -> IntStream.range(0, SHORTS_PER_USER).mapToObj(i -> orThrow(shorts.createShort(userId, PWD)).getShortId()))
+				.toList();
+
+		shortIds.parallelStream()
+				.forEach(shortId -> orThrow(blobs.upload(shortId, randomBytes(BLOB_SIZE), Token.get(shortId))));
+
+		userIds.parallelStream().forEach(userId -> {
+			var followees = new ArrayList<String>();
+			for (int i = 0; i < FOLLOWEES_PER_USER; i++)
+				followees.add(any(userIds));
+			followees.stream().distinct().filter(f -> !f.equals(userId))
+					.forEach(followee -> orThrow(shorts.follow(userId, followee, true, PWD)));
+			ThreadLocalRandom.current().ints(0, shortIds.size()).distinct().limit(Math.min(LIKES_PER_USER, shortIds.size()))
+					.forEach(i -> orThrow(shorts.like(shortIds.get(i), userId, true, PWD)));
+		});
+		return shortIds;
+	}
+
+	static <T> T any(List<T> list) {
+		return list.get(ThreadLocalRandom.current().nextInt(list.size()));
+	}
+
+	static byte[] randomBytes(int size) {
+		var bytes = new byte[size];
+		ThreadLocalRandom.current().nextBytes(bytes);
+		return bytes;
+	}
+
+	static boolean okOr(Result<?> res, Result.ErrorCode tolerated) {
+		return res.isOK() || res.error() == tolerated;
+	}
+
+	static boolean configured() {
+		return System.getProperty("HIBERNATE_CFG_FILE") != null || ServiceBenchmark.class.getClassLoader().getResource("hibernate.cfg.xml") != null;
+	}
+
+	static <T> T orThrow(Result<T> res) {
+		if (!res.isOK())
+			throw new IllegalStateException("seeding failed: " + res.error());
+		return res.value();
+	}
+
+	static final String HSQLDB_CFG = """
+			<!DOCTYPE hibernate-configuration PUBLIC "-//Hibernate/Hibernate Configuration DTD 3.0//EN" "http://www.hibernate.org/dtd/hibernate-configuration-3.0.dtd">
+			<hibernate-configuration>
+				<session-factory>
+					<property name="hibernate.dialect">org.hibernate.dialect.HSQLDialect</property>
+					<property name="hibernate.connection.driver_class">org.hsqldb.jdbc.JDBCDriver</property>
+					<property name="hibernate.connection.url">jdbc:hsqldb:mem:tukano;sql.syntax_pgs=true</property>
+					<property name="hibernate.connection.username">sa</property>
+					<property name="hibernate.connection.password"></property>
+					<property name="connection.pool_size">64</property>
+					<property name="show_sql">false</property>
+					<property name="current_session_context_class">thread</property>
+					<property name="hbm2ddl.auto">create-drop</property>
+					<mapping class="tukano.api.User" />
+					<mapping class="tukano.api.Short" />
+					<mapping class="tukano.impl.data.Following" />
+					<mapping class="tukano.impl.data.Likes" />
+				</session-factory>
+			</hibernate-configuration>
+			""";
+}
@@ -68,19 +68,19 @@ public class Test {
 		var s2id = s2.value().getShortId();
 		
 		show(shorts.follow("liskov", "wales", true, "54321"));
-		show(shorts.followers("wales", "12345"));
+		show(shorts.followers("wales", "12345", null, 0));
 		
 		show(shorts.like(s2id, "liskov", true, "54321"));
 		show(shorts.like(s2id, "liskov", true, "54321"));
-		show(shorts.likes(s2id , "54321"));
-		show(shorts.getFeed("liskov", "12345"));
+		show(shorts.likes(s2id , "54321", null, 0));
+		show(shorts.getFeed("liskov", "12345", null, 0));
 		show(shorts.getShort( s2id ));
 		
-		show(shorts.getShorts( "wales" ));
+		show(shorts.getShorts( "wales", null, 0 ));
 		
-		show(shorts.followers("wales", "12345"));
+		show(shorts.followers("wales", "12345", null, 0));
 
-		show(shorts.getFeed("liskov", "12345"));
+		show(shorts.getFeed("liskov", "12345", null, 0));
 
 		show(shorts.getShort( s2id ));
 //
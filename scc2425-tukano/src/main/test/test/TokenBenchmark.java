@@ -0,0 +1,53 @@
+package test;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+
+import tukano.impl.Token;
+import utils.Hash;
+
+/**
+ * Compares the throughput of verifying blob tokens: signed with a single, synchronized
+ * MD5 digest (as Token used to), with per-thread HMAC-SHA256, and with Token.isValid,
+ * which remembers the tokens it verified.
+ *
+ * Usage: TokenBenchmark [threads] [seconds]
+ */
+public class TokenBenchmark {
+
+	static final String SECRET = "secret";
+	static final String BLOB_ID = "wales+5d3a10ec-8d2c-4e0c-b2ab-8a8b9e3c4f21";
+
+	static MessageDigest md5;
+
+	synchronized static String md5Synchronized(Object... values) throws Exception {
+		if (md5 == null)
+			md5 = MessageDigest.getInstance("MD5");
+		md5.reset();
+		for (var o : values)
+			md5.update(o.toString().getBytes());
+		return String.format("%016X", new BigInteger(1, md5.digest()));
+	}
+
+	public static void main(String[] args) throws Exception {
+		var threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		var seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		Token.setSecret(SECRET);
+		var token = Token.get(BLOB_ID);
+		var timestamp = System.currentTimeMillis();
+		var expected = md5Synchronized(BLOB_ID, timestamp, SECRET);
+		var key = SECRET.getBytes();
+		var signature = Hash.hmacSha256(key, BLOB_ID.getBytes());
+
+		Bench.run("md5-synchronized", threads, seconds, () -> {
+			try {
+				return md5Synchronized(BLOB_ID, timestamp, SECRET).equals(expected);
+			} catch (Exception x) {
+				return false;
+			}
+		});
+		Bench.run("hmac-sha256", threads, seconds, () -> Hash.equals(Hash.hmacSha256(key, BLOB_ID.getBytes()), signature));
+		Bench.run("token-cached", threads, seconds, () -> Token.isValid(token, BLOB_ID));
+	}
+}
@@ -1,7 +1,13 @@
 package tukano.clients.rest;
 
+import static tukano.api.Result.error;
+import static tukano.api.Result.ok;
+
+import java.io.InputStream;
+
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response.Status;
 import tukano.api.Blobs;
 import tukano.api.Result;
 import tukano.api.rest.RestBlobs;
@@ -29,6 +35,63 @@ public class RestBlobsClient extends RestClient implements Blobs {
 				.get(), byte[].class);
 	}
 
+	private Result<Void> _upload(String blobURL, InputStream in, String token) {
+		return super.toJavaResult(
+				client.target( blobURL )
+				.queryParam(RestBlobs.TOKEN, token)
+				.request()
+				.post( Entity.entity(in, MediaType.APPLICATION_OCTET_STREAM_TYPE)));
+	}
+
+	// The response is closed with the returned stream
+	private Result<InputStream> _open(String blobURL, String token) {
+		var r = client.target( blobURL )
+				.queryParam(RestBlobs.TOKEN, token)
+				.request()
+				.accept(MediaType.APPLICATION_OCTET_STREAM_TYPE)
+				.get();
+
+		var status = r.getStatusInfo().toEnum();
+		if (status == Status.OK && r.hasEntity())
+			return ok(r.readEntity(InputStream.class));
+
+		r.close();
+		return error(getErrorCodeFrom(status.getStatusCode()));
+	}
+
+	private Result<InputStream> _open(String blobURL, long offset, long length, String token) {
+		var r = client.target( blobURL )
+				.queryParam(RestBlobs.TOKEN, token)
+				.request()
+				.header(RestBlobs.RANGE, String.format("bytes=%d-%d", offset, offset + length - 1))
+				.accept(MediaType.APPLICATION_OCTET_STREAM_TYPE)
+				.get();
+
+		var status = r.getStatusInfo().toEnum();
+		if ((status == Status.PARTIAL_CONTENT || status == Status.OK) && r.hasEntity())
+			return ok(r.readEntity(InputStream.class));
+
+		r.close();
+		return error(getErrorCodeFrom(status.getStatusCode()));
+	}
+
+	// The size is the total in the Content-Range of a response for the first byte
+	private Result<Long> _size(String blobURL, String token) {
+		try (var r = client.target( blobURL )
+				.queryParam(RestBlobs.TOKEN, token)
+				.request()
+				.header(RestBlobs.RANGE, "bytes=0-0")
+				.get()) {
+
+			var status = r.getStatusInfo().toEnum();
+			var contentRange = r.getHeaderString("Content-Range");
+			if (contentRange != null && (status == Status.PARTIAL_CONTENT || status == Status.REQUESTED_RANGE_NOT_SATISFIABLE))
+				return ok(Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1)));
+
+			return error(getErrorCodeFrom(status.getStatusCode()));
+		}
+	}
+
 	private Result<Void> _delete(String blobURL, String token) {
 		return super.toJavaResult(
 				client.target( blobURL )
@@ -56,6 +119,27 @@ public class RestBlobsClient extends RestClient implements Blobs {
 		return super.reTry( () -> _download(blobId, token));
 	}
 
+	// Not retried, as the stream may have been partially consumed
+	@Override
+	public Result<Void> upload(String blobId, InputStream in, String token) {
+		return _upload(blobId, in, token);
+	}
+
+	@Override
+	public Result<InputStream> open(String blobId, String token) {
+		return super.reTry( () -> _open(blobId, token));
+	}
+
+	@Override
+	public Result<InputStream> open(String blobId, long offset, long length, String token) {
+		return super.reTry( () -> _open(blobId, offset, length, token));
+	}
+
+	@Override
+	public Result<Long> size(String blobId, String token) {
+		return super.reTry( () -> _size(blobId, token));
+	}
+
 	@Override
 	public Result<Void> delete(String blobId, String token) {
 		return super.reTry( () -> _delete(blobId, token));
@@ -5,6 +5,7 @@ import java.util.List;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.GenericType;
 import jakarta.ws.rs.core.MediaType;
+import tukano.api.Page;
 import tukano.api.Result;
 import tukano.api.Short;
 import tukano.api.Shorts;
@@ -43,14 +44,25 @@ public class RestShortsClient extends RestClient implements Shorts{
 				.get(), Short.class);
 	}
 
-	public Result<List<String>> _getShorts(String userId) {
+	public Result<Page<String>> _getShorts(String userId, String cursor, int pageSize) {
 		return super.toJavaResult(
 				target
 				.path(userId)
 				.path(RestShorts.SHORTS)
+				.queryParam(RestShorts.CURSOR, cursor )
+				.queryParam(RestShorts.SIZE, pageSize )
 				.request()
 				.accept( MediaType.APPLICATION_JSON)
-				.get(), new GenericType<List<String>>() {});
+				.get(), new GenericType<Page<String>>() {});
+	}
+
+	public Result<List<Short>> _hydrateShorts(List<String> shortIds) {
+		return super.toJavaResult(
+				target
+				.queryParam(RestShorts.ID, shortIds.toArray())
+				.request()
+				.accept(MediaType.APPLICATION_JSON)
+				.get(), new GenericType<List<Short>>() {});
 	}
 
 	public Result<Void> _follow(String userId1, String userId2, boolean isFollowing, String password) {
@@ -64,15 +76,17 @@ public class RestShortsClient extends RestClient implements Shorts{
 				.post( Entity.entity(isFollowing, MediaType.APPLICATION_JSON)));
 	}
 
-	public Result<List<String>> _followers(String userId, String password) {
+	public Result<Page<String>> _followers(String userId, String password, String cursor, int pageSize) {
 		return super.toJavaResult(
 				target
 				.path(userId)
 				.path(RestShorts.FOLLOWERS)
 				.queryParam(RestShorts.PWD, password )
+				.queryParam(RestShorts.CURSOR, cursor )
+				.queryParam(RestShorts.SIZE, pageSize )
 				.request()
 				.accept( MediaType.APPLICATION_JSON)
-				.get(), new GenericType<List<String>>() {});
+				.get(), new GenericType<Page<String>>() {});
 	}
 
 	public Result<Void> _like(String shortId, String userId, boolean isLiked, String password) {
@@ -86,26 +100,30 @@ public class RestShortsClient extends RestClient implements Shorts{
 				.post( Entity.entity(isLiked, MediaType.APPLICATION_JSON)));
 	}
 
-	public Result<List<String>> _likes(String shortId, String password) {
+	public Result<Page<String>> _likes(String shortId, String password, String cursor, int pageSize) {
 		return super.toJavaResult(
 				target
 				.path(shortId)
 				.path(RestShorts.LIKES)
 				.queryParam(RestShorts.PWD, password )
+				.queryParam(RestShorts.CURSOR, cursor )
+				.queryParam(RestShorts.SIZE, pageSize )
 				.request()
 				.accept( MediaType.APPLICATION_JSON)
-				.get(), new GenericType<List<String>>() {});
+				.get(), new GenericType<Page<String>>() {});
 	}
 
-	public Result<List<String>> _getFeed(String userId, String password) {
+	public Result<Page<String>> _getFeed(String userId, String password, String cursor, int pageSize) {
 		return super.toJavaResult(
 				target
 				.path(userId)
 				.path(RestShorts.FEED)
 				.queryParam(RestShorts.PWD, password )
+				.queryParam(RestShorts.CURSOR, cursor )
+				.queryParam(RestShorts.SIZE, pageSize )
 				.request()
 				.accept( MediaType.APPLICATION_JSON)
-				.get(), new GenericType<List<String>>() {});
+				.get(), new GenericType<Page<String>>() {});
 	}
 
 	public Result<Void> _deleteAllShorts(String userId, String password, String token) {
@@ -143,8 +161,13 @@ public class RestShortsClient extends RestClient implements Shorts{
 	}
 
 	@Override
-	public Result<List<String>> getShorts(String userId) {
-		return super.reTry( () -> _getShorts(userId));
+	public Result<List<Short>> hydrateShorts(List<String> shortIds) {
+		return super.reTry( () -> _hydrateShorts(shortIds));
+	}
+
+	@Override
+	public Result<Page<String>> getShorts(String userId, String cursor, int pageSize) {
+		return super.reTry( () -> _getShorts(userId, cursor, pageSize));
 	}
 
 	@Override
@@ -153,8 +176,8 @@ public class RestShortsClient extends RestClient implements Shorts{
 	}
 
 	@Override
-	public Result<List<String>> followers(String userId, String password) {
-		return super.reTry( () -> _followers(userId, password));
+	public Result<Page<String>> followers(String userId, String password, String cursor, int pageSize) {
+		return super.reTry( () -> _followers(userId, password, cursor, pageSize));
 	}
 
 	@Override
@@ -163,13 +186,13 @@ public class RestShortsClient extends RestClient implements Shorts{
 	}
 
 	@Override
-	public Result<List<String>> likes(String shortId, String password) {
-		return super.reTry( () -> _likes(shortId, password));
+	public Result<Page<String>> likes(String shortId, String password, String cursor, int pageSize) {
+		return super.reTry( () -> _likes(shortId, password, cursor, pageSize));
 	}
 
 	@Override
-	public Result<List<String>> getFeed(String userId, String password) {
-		return super.reTry( () -> _getFeed(userId, password));
+	public Result<Page<String>> getFeed(String userId, String password, String cursor, int pageSize) {
+		return super.reTry( () -> _getFeed(userId, password, cursor, pageSize));
 	}
 
 	@Override